@@ -0,0 +1,123 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.tools.SimpleJavaFileObject;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.runner.AnalyzedCompilation;
+
+/**
+ * A Java compilation unit that has been parsed and attributed, such that bug checkers can be
+ * applied to it repeatedly.
+ *
+ * <p>Types referenced by the compilation unit are resolved using the classpath of the current JVM.
+ */
+public final class AnalyzedSource {
+  private final AnalyzedCompilation compilation;
+
+  private AnalyzedSource(AnalyzedCompilation compilation) {
+    this.compilation = compilation;
+  }
+
+  /**
+   * Parses and attributes the given Java source code.
+   *
+   * @param className The fully qualified name of the single top-level class defined by the source
+   *     code.
+   * @param source The source code to compile.
+   * @param errorProneArgs The Error Prone flags, such as {@code -XepOpt:Refaster:NamePattern=.*},
+   *     with which bug checkers are applied to the compilation unit.
+   * @return A non-{@code null} analyzed source.
+   * @throws IllegalStateException If the source code does not compile.
+   */
+  public static AnalyzedSource create(
+      String className, String source, ImmutableList<String> errorProneArgs) {
+    try {
+      /* The compilation is retained for the remainder of the benchmark, and is thus not closed. */
+      AnalyzedCompilation compilation =
+          AnalyzedCompilation.create(
+              ImmutableList.of("-classpath", System.getProperty("java.class.path"), "-proc:none"),
+              fileManager -> ImmutableList.of(new SourceFile(className, source)),
+              ErrorProneOptions.processArgs(errorProneArgs));
+      checkState(
+          compilation.errors().isEmpty(), "Source code does not compile: %s", compilation.errors());
+      return new AnalyzedSource(compilation);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to compile source code", e);
+    }
+  }
+
+  /**
+   * Returns the analyzed compilation unit.
+   *
+   * @return The non-{@code null} compilation unit.
+   */
+  public CompilationUnitTree compilationUnit() {
+    return Iterables.getOnlyElement(compilation.compilationUnits());
+  }
+
+  /**
+   * Returns the Error Prone options with which bug checkers are applied to the compilation unit.
+   *
+   * @return The non-{@code null} options.
+   */
+  public ErrorProneOptions errorProneOptions() {
+    return compilation.errorProneOptions();
+  }
+
+  /**
+   * Creates a {@link VisitorState} with which to apply a bug checker to the compilation unit.
+   *
+   * @param listener The listener to which matches are reported.
+   * @return A non-{@code null} visitor state, positioned at the compilation unit.
+   */
+  public VisitorState createState(DescriptionListener listener) {
+    return compilation.createState(compilationUnit(), listener);
+  }
+
+  /**
+   * Returns the number of tree nodes in the compilation unit.
+   *
+   * @return The number of nodes, including the compilation unit itself.
+   */
+  public long countNodes() {
+    AtomicLong count = new AtomicLong();
+    new TreeScanner<@Nullable Void, @Nullable Void>() {
+      @Override
+      public @Nullable Void scan(@Nullable Tree tree, @Nullable Void unused) {
+        if (tree != null) {
+          count.incrementAndGet();
+        }
+        return super.scan(tree, null);
+      }
+    }.scan(compilationUnit(), null);
+    return count.get();
+  }
+
+  /** An in-memory Java source file. */
+  private static final class SourceFile extends SimpleJavaFileObject {
+    private final String source;
+
+    SourceFile(String className, String source) {
+      super(URI.create("string:///" + className.replace('.', '/') + ".java"), Kind.SOURCE);
+      this.source = source;
+    }
+
+    @Override
+    public String getCharContent(boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package tech.picnic.errorprone.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The entry point of the self-contained benchmarks JAR, which runs the selected JMH benchmarks in
+ * forked JVMs that have access to the compiler internals used by Error Prone.
+ *
+ * <p>This class accepts the same command line arguments as JMH's own {@link Main}. Any {@code
+ * -jvmArgsAppend} arguments are passed on to the forked JVMs in addition to {@link #JVM_ARGUMENTS}.
+ */
+public final class BenchmarkRunner {
+  /** The JVM arguments that grant access to the compiler internals used by Error Prone. */
+  public static final ImmutableList<String> JVM_ARGUMENTS =
+      ImmutableList.of(
+          "--add-exports=jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.code=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.file=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.main=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.model=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.parser=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.processing=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.tree=ALL-UNNAMED",
+          "--add-exports=jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED",
+          "--add-opens=jdk.compiler/com.sun.tools.javac.comp=ALL-UNNAMED");
+
+  private BenchmarkRunner() {}
+
+  /**
+   * Runs the benchmarks selected by the given command line arguments.
+   *
+   * @param args The JMH command line arguments.
+   * @throws CommandLineOptionException If the command line arguments are invalid.
+   * @throws IOException If the requested information cannot be written.
+   * @throws RunnerException If the benchmarks cannot be run.
+   */
+  public static void main(String... args)
+      throws CommandLineOptionException, IOException, RunnerException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp()
+        || options.shouldList()
+        || options.shouldListWithParams()
+        || options.shouldListProfilers()
+        || options.shouldListResultFormats()) {
+      /* No benchmarks are run; JMH itself provides the requested information. */
+      Main.main(args);
+      return;
+    }
+
+    List<String> jvmArguments =
+        new ArrayList<>(options.getJvmArgsAppend().orElse(ImmutableList.of()));
+    jvmArguments.addAll(JVM_ARGUMENTS);
+    new Runner(
+            new OptionsBuilder()
+                .parent(options)
+                .jvmArgsAppend(jvmArguments.toArray(String[]::new))
+                .build())
+        .run();
+  }
+}
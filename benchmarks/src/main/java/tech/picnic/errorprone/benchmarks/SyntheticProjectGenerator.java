@@ -0,0 +1,320 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * A generator of Maven projects of configurable size, for use in offline scalability testing of the
+ * bug checkers and Refaster rules defined by this project.
+ *
+ * <p>The generated project contains a mix of Reactor, AssertJ, Guava, {@code java.time} and {@link
+ * java.util.stream.Stream} code. A configurable fraction of the generated methods contains code
+ * that is flagged by the Refaster rules defined by this project; the remaining methods contain
+ * equivalent code that is not flagged. Generation is deterministic, such that the results of
+ * repeated runs can be compared.
+ *
+ * <p>The generated project's {@code error-prone} profile enables Error Prone and Error Prone
+ * Support. The versions of these artifacts, and of the Maven plugins used to build the project, are
+ * those used by this build; they are specified in the generated project's {@code .mvn/maven.config}
+ * file. All other dependency versions are taken from the installed Error Prone Support parent POM,
+ * so once this project has been installed, the generated project can be built without network
+ * access.
+ */
+public final class SyntheticProjectGenerator {
+  private static final String PROPERTIES_RESOURCE = "synthetic-project.properties";
+  private static final String POM =
+      """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <project xmlns="http://maven.apache.org/POM/4.0.0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 https://maven.apache.org/xsd/maven-4.0.0.xsd">
+          <modelVersion>4.0.0</modelVersion>
+
+          <groupId>tech.picnic.error-prone-support.synthetic</groupId>
+          <artifactId>synthetic-project</artifactId>
+          <version>1.0.0-SNAPSHOT</version>
+
+          <properties>
+              <error-prone.flags />
+              <maven.compiler.release>17</maven.compiler.release>
+              <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>
+          </properties>
+
+          <dependencyManagement>
+              <dependencies>
+                  <dependency>
+                      <groupId>tech.picnic.error-prone-support</groupId>
+                      <artifactId>error-prone-support</artifactId>
+                      <version>${error-prone-support.version}</version>
+                      <type>pom</type>
+                      <scope>import</scope>
+                  </dependency>
+              </dependencies>
+          </dependencyManagement>
+
+          <dependencies>
+              <dependency>
+                  <groupId>com.google.guava</groupId>
+                  <artifactId>guava</artifactId>
+              </dependency>
+              <dependency>
+                  <groupId>io.projectreactor</groupId>
+                  <artifactId>reactor-core</artifactId>
+              </dependency>
+              <dependency>
+                  <groupId>org.assertj</groupId>
+                  <artifactId>assertj-core</artifactId>
+              </dependency>
+          </dependencies>
+
+          <build>
+              <plugins>
+                  <plugin>
+                      <groupId>org.apache.maven.plugins</groupId>
+                      <artifactId>maven-clean-plugin</artifactId>
+                      <version>${version.maven-clean-plugin}</version>
+                  </plugin>
+                  <plugin>
+                      <groupId>org.apache.maven.plugins</groupId>
+                      <artifactId>maven-compiler-plugin</artifactId>
+                      <version>${version.maven-compiler-plugin}</version>
+                  </plugin>
+                  <plugin>
+                      <groupId>org.apache.maven.plugins</groupId>
+                      <artifactId>maven-resources-plugin</artifactId>
+                      <version>${version.maven-resources-plugin}</version>
+                  </plugin>
+              </plugins>
+          </build>
+
+          <profiles>
+              <profile>
+                  <id>error-prone</id>
+                  <build>
+                      <plugins>
+                          <plugin>
+                              <groupId>org.apache.maven.plugins</groupId>
+                              <artifactId>maven-compiler-plugin</artifactId>
+                              <configuration>
+                                  <compilerArgs>
+                                      <arg>-XDcompilePolicy=simple</arg>
+                                      <arg>-Xplugin:ErrorProne ${error-prone.flags}</arg>
+                                      <arg>-Xmaxwarns</arg>
+                                      <arg>1000000</arg>
+                                  </compilerArgs>
+                                  <annotationProcessorPaths>
+                                      <path>
+                                          <groupId>com.google.errorprone</groupId>
+                                          <artifactId>error_prone_core</artifactId>
+                                          <version>${error-prone.version}</version>
+                                      </path>
+                                      <path>
+                                          <groupId>tech.picnic.error-prone-support</groupId>
+                                          <artifactId>error-prone-contrib</artifactId>
+                                          <version>${error-prone-support.version}</version>
+                                      </path>
+                                      <path>
+                                          <groupId>tech.picnic.error-prone-support</groupId>
+                                          <artifactId>refaster-runner</artifactId>
+                                          <version>${error-prone-support.version}</version>
+                                      </path>
+                                  </annotationProcessorPaths>
+                              </configuration>
+                          </plugin>
+                      </plugins>
+                  </build>
+              </profile>
+          </profiles>
+      </project>
+      """;
+  private static final String HEADER =
+      """
+      package pkg;
+
+      import static org.assertj.core.api.Assertions.assertThat;
+
+      import com.google.common.collect.ImmutableList;
+      import java.time.Clock;
+      import java.time.Instant;
+      import java.util.List;
+      import reactor.core.publisher.Flux;
+
+      """;
+
+  /**
+   * Pairs of method templates, one of which contains code flagged by a Refaster rule, and one of
+   * which contains equivalent code that is not flagged.
+   */
+  private static final ImmutableList<Template> TEMPLATES =
+      ImmutableList.of(
+          new Template(
+              """
+                Flux<Integer> method%1$d() {
+                  return Flux.range(%1$d, 1);
+                }
+              """,
+              """
+                Flux<Integer> method%1$d() {
+                  return Flux.just(%1$d);
+                }
+              """),
+          new Template(
+              """
+                void method%1$d(String s) {
+                  assertThat(s.isEmpty()).isTrue();
+                }
+              """,
+              """
+                void method%1$d(String s) {
+                  assertThat(s).isEmpty();
+                }
+              """),
+          new Template(
+              """
+                ImmutableList<String> method%1$d(List<String> list) {
+                  return ImmutableList.<String>builder().addAll(list).build();
+                }
+              """,
+              """
+                ImmutableList<String> method%1$d(List<String> list) {
+                  return ImmutableList.copyOf(list);
+                }
+              """),
+          new Template(
+              """
+                Instant method%1$d() {
+                  return Instant.now(Clock.systemUTC());
+                }
+              """,
+              """
+                Instant method%1$d() {
+                  return Clock.systemUTC().instant();
+                }
+              """),
+          new Template(
+              """
+                boolean method%1$d(List<String> list) {
+                  return list.stream().filter(String::isEmpty).findAny().isPresent();
+                }
+              """,
+              """
+                boolean method%1$d(List<String> list) {
+                  return list.stream().anyMatch(String::isEmpty);
+                }
+              """));
+
+  private SyntheticProjectGenerator() {}
+
+  /**
+   * Generates a Maven project.
+   *
+   * @param args The directory in which to generate the project, the number of source files to
+   *     generate, the number of methods per source file, and the fraction of methods (between
+   *     {@code 0} and {@code 1}) that should contain code flagged by a Refaster rule.
+   * @throws IOException If the project cannot be written.
+   */
+  public static void main(String... args) throws IOException {
+    checkArgument(
+        args.length == 4,
+        "Usage: %s <output_directory> <file_count> <methods_per_file> <rule_density>",
+        SyntheticProjectGenerator.class.getName());
+
+    generate(
+        Path.of(args[0]),
+        Integer.parseInt(args[1]),
+        Integer.parseInt(args[2]),
+        Double.parseDouble(args[3]));
+  }
+
+  /**
+   * Generates a Maven project.
+   *
+   * @param directory The directory in which to generate the project.
+   * @param fileCount The number of source files to generate.
+   * @param methodsPerFile The number of methods to generate per source file.
+   * @param ruleDensity The fraction of methods, between {@code 0} and {@code 1}, that should
+   *     contain code flagged by a Refaster rule.
+   * @throws IOException If the project cannot be written.
+   */
+  public static void generate(Path directory, int fileCount, int methodsPerFile, double ruleDensity)
+      throws IOException {
+    checkArgument(fileCount >= 0, "File count must be non-negative");
+    checkArgument(methodsPerFile >= 0, "Method count must be non-negative");
+    checkArgument(ruleDensity >= 0 && ruleDensity <= 1, "Rule density must be between 0 and 1");
+
+    Files.createDirectories(directory.resolve(".mvn"));
+    Files.writeString(directory.resolve("pom.xml"), POM, UTF_8);
+    Files.writeString(directory.resolve(".mvn").resolve("maven.config"), getMavenConfig(), UTF_8);
+    Files.writeString(
+        directory.resolve(".mvn").resolve("jvm.config"),
+        String.join("\n", BenchmarkRunner.JVM_ARGUMENTS) + "\n",
+        UTF_8);
+
+    Path sourceDirectory = directory.resolve(Path.of("src", "main", "java", "pkg"));
+    Files.createDirectories(sourceDirectory);
+    for (int file = 0; file < fileCount; file++) {
+      StringBuilder source =
+          new StringBuilder(HEADER).append("final class Synthetic").append(file).append(" {\n");
+      for (int method = 0; method < methodsPerFile; method++) {
+        int index = file * methodsPerFile + method;
+        Template template = TEMPLATES.get(index % TEMPLATES.size());
+        source
+            .append('\n')
+            .append(String.format(Locale.ROOT, template.get(isFlagged(index, ruleDensity)), index));
+      }
+      Files.writeString(
+          sourceDirectory.resolve("Synthetic" + file + ".java"),
+          source.append("}\n").toString(),
+          UTF_8);
+    }
+  }
+
+  /**
+   * Returns the content of a {@code .mvn/maven.config} file that defines the properties listed in
+   * the {@value #PROPERTIES_RESOURCE} resource.
+   */
+  private static String getMavenConfig() throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in =
+        SyntheticProjectGenerator.class.getResourceAsStream(PROPERTIES_RESOURCE)) {
+      checkState(in != null, "Resource '%s' not found", PROPERTIES_RESOURCE);
+      properties.load(in);
+    }
+
+    return properties.stringPropertyNames().stream()
+        .sorted()
+        .map(name -> String.format(Locale.ROOT, "-D%s=%s\n", name, properties.getProperty(name)))
+        .collect(joining());
+  }
+
+  /**
+   * Tells whether the method with the given index should contain flagged code, such that for any
+   * prefix of methods the fraction of flagged methods approximates the given density.
+   */
+  private static boolean isFlagged(int index, double ruleDensity) {
+    return Math.floor((index + 1) * ruleDensity) > Math.floor(index * ruleDensity);
+  }
+
+  /** A pair of method templates, parameterized by a unique method index. */
+  private static final class Template {
+    private final String flagged;
+    private final String unflagged;
+
+    Template(String flagged, String unflagged) {
+      this.flagged = flagged;
+      this.unflagged = unflagged;
+    }
+
+    String get(boolean isFlagged) {
+      return isFlagged ? flagged : unflagged;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package tech.picnic.errorprone.benchmarks;
+
+import java.util.Locale;
+
+/**
+ * A generator of Java source code of configurable size, containing a mix of idioms that are flagged
+ * by the bug checkers and Refaster rules defined by this project.
+ */
+public final class SyntheticSource {
+  /** The fully qualified name of the class defined by the generated source code. */
+  public static final String CLASS_NAME = "pkg.Synthetic";
+
+  private static final String HEADER =
+      """
+      package pkg;
+
+      import static java.util.Optional.empty;
+      import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+      import com.google.common.base.Preconditions;
+      import com.google.common.collect.ImmutableList;
+      import java.time.Duration;
+      import java.util.List;
+      import java.util.Optional;
+      import java.util.stream.Collectors;
+      import java.util.stream.Stream;
+      import org.junit.jupiter.params.ParameterizedTest;
+      import org.junit.jupiter.params.provider.Arguments;
+      import org.junit.jupiter.params.provider.MethodSource;
+
+      final class Synthetic {
+      """;
+
+  private SyntheticSource() {}
+
+  /**
+   * Generates the source code of a class with the given number of methods.
+   *
+   * @param methodCount The number of methods to generate; each method contains a handful of
+   *     statements, and is accompanied by a parameterized JUnit test.
+   * @return Java source code defining the class named {@value #CLASS_NAME}.
+   */
+  public static String generate(int methodCount) {
+    StringBuilder source = new StringBuilder(HEADER);
+    for (int i = 0; i < methodCount; i++) {
+      source.append('\n').append(generateMethod(i));
+    }
+    return source.append("}\n").toString();
+  }
+
+  /** Generates a method and an associated parameterized test, distinguished by the given index. */
+  private static String generateMethod(int index) {
+    return String.format(
+        Locale.ROOT,
+        """
+            @SuppressWarnings("unused")
+            @Deprecated
+            boolean method%1$d(String s, List<String> list, Optional<String> optional, Duration d) {
+              Preconditions.checkArgument(!s.isBlank(), "Invalid value: " + s);
+              if (s.length() == 0 || list.size() == 0) {
+                return !optional.or(() -> empty()).isPresent();
+              }
+              String description = "Value: " + s.toString() + String.valueOf(d);
+              ImmutableList<String> copy = ImmutableList.<String>builder().addAll(list).build();
+              String joined = list.stream().collect(Collectors.joining(","));
+              long count = list.stream().filter(e -> !e.isEmpty()).count();
+              boolean anyMatch = list.stream().filter(String::isEmpty).findAny().isPresent();
+              return copy.isEmpty()
+                  || joined.equals("%1$d")
+                  || d.compareTo(Duration.ZERO) == 0
+                  || (optional.map(String::length).orElse(0) == count
+                      && anyMatch
+                      && !Optional.ofNullable(description).isPresent());
+            }
+
+            private static Stream<Arguments> method%1$dTestCases() {
+              return Stream.of(arguments(0), arguments(%1$d));
+            }
+
+            @MethodSource("method%1$dTestCases")
+            @ParameterizedTest
+            void method%1$dTest(int value) {}
+          """,
+        index);
+  }
+}
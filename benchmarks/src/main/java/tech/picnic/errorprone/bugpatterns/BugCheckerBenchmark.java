@@ -0,0 +1,119 @@
+package tech.picnic.errorprone.bugpatterns;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.scanner.ErrorProneScanner;
+import com.sun.source.util.TreePath;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.picnic.errorprone.benchmarks.AnalyzedSource;
+import tech.picnic.errorprone.benchmarks.SyntheticSource;
+
+/**
+ * Benchmarks the application of a single {@link BugChecker} to compilation units of various sizes,
+ * by means of an {@link ErrorProneScanner}.
+ *
+ * <p>Besides the time taken per scan, the time taken per tree node is reported by means of the
+ * {@code nodes} counter; this allows checkers whose cost grows super-linearly with the size of the
+ * compilation unit to be identified. Allocation rates are reported when the benchmark is run with
+ * {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("Nopen" /* JMH generates subclasses of benchmark classes. */)
+@Warmup(iterations = 3)
+public class BugCheckerBenchmark {
+  /** The simple name of the bug checker to apply. */
+  @Param({
+    "FormatStringConcatenation",
+    "JUnitValueSource",
+    "LexicographicalAnnotationListing",
+    "NonStaticImport",
+    "RedundantStringConversion",
+    "StaticImport"
+  })
+  String checker;
+
+  /** The number of methods in the compilation unit to which the bug checker is applied. */
+  @Param({"10", "100", "1000"})
+  int methodCount;
+
+  private ErrorProneScanner scanner;
+  private TreePath compilationUnit;
+  private VisitorState state;
+  private long nodeCount;
+  private int descriptionCount;
+
+  /**
+   * Compiles the synthetic compilation unit, and instantiates the selected bug checker.
+   *
+   * @throws ReflectiveOperationException If the bug checker cannot be instantiated.
+   */
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    AnalyzedSource source =
+        AnalyzedSource.create(
+            SyntheticSource.CLASS_NAME, SyntheticSource.generate(methodCount), ImmutableList.of());
+    scanner =
+        new ErrorProneScanner(
+            Class.forName(getClass().getPackageName() + '.' + checker)
+                .asSubclass(BugChecker.class)
+                .getConstructor()
+                .newInstance());
+    compilationUnit = new TreePath(source.compilationUnit());
+    state = source.createState(description -> descriptionCount++);
+    nodeCount = source.countNodes();
+  }
+
+  /**
+   * Applies the selected bug checker to the synthetic compilation unit.
+   *
+   * @param nodes The tree node counter, by which the time per tree node is derived.
+   * @return The number of reported matches.
+   */
+  @Benchmark
+  public int scan(Nodes nodes) {
+    descriptionCount = 0;
+    scanner.scan(compilationUnit, state);
+    nodes.nodes += nodeCount;
+    return descriptionCount;
+  }
+
+  /**
+   * Tracks the number of tree nodes scanned, such that the time per tree node is reported by the
+   * {@code nodes} counter.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  @SuppressWarnings("Nopen" /* JMH generates subclasses of state classes. */)
+  public static class Nodes {
+    /** The number of tree nodes scanned. */
+    @SuppressWarnings({
+      "java:S1104",
+      "VisibilityModifier"
+    } /* JMH requires auxiliary counters to be public fields. */)
+    public long nodes;
+
+    /** Resets the counter prior to each iteration. */
+    @Setup(Level.Iteration)
+    public void reset() {
+      nodes = 0;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.errorprone.CodeTransformer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the cold loading of all Refaster rules on the classpath, by means of {@link
+ * CodeTransformers#getAllCodeTransformers()}.
+ *
+ * <p>As loaded rules are cached for the remainder of the JVM's lifetime, each measurement is
+ * performed in a fresh JVM. Besides the time taken, the amount of heap memory retained by the
+ * loaded rules is reported.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(10)
+@Measurement(iterations = 1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("Nopen" /* JMH generates subclasses of benchmark classes. */)
+@Warmup(iterations = 0)
+public class CodeTransformersBenchmark {
+  /**
+   * Loads the index of all Refaster rules, without deserializing the rules themselves.
+   *
+   * @param heapUsage The heap usage tracker; unused, but required for its measurements.
+   * @return The loaded rules.
+   */
+  @Benchmark
+  public ImmutableListMultimap<String, CodeTransformer> loadRules(HeapUsage heapUsage) {
+    return CodeTransformers.getAllCodeTransformers();
+  }
+
+  /**
+   * Loads and deserializes all Refaster rules.
+   *
+   * @param heapUsage The heap usage tracker; unused, but required for its measurements.
+   * @param blackhole The sink that consumes the deserialized rules.
+   * @return The loaded rules.
+   */
+  @Benchmark
+  public ImmutableListMultimap<String, CodeTransformer> loadAndDeserializeRules(
+      HeapUsage heapUsage, Blackhole blackhole) {
+    ImmutableListMultimap<String, CodeTransformer> transformers =
+        CodeTransformers.getAllCodeTransformers();
+    for (CodeTransformer transformer : transformers.values()) {
+      if (transformer instanceof LazyCodeTransformer lazyTransformer) {
+        blackhole.consume(lazyTransformer.getDelegate());
+      }
+    }
+    return transformers;
+  }
+
+  /**
+   * Tracks the amount of heap memory retained by the result of a benchmark, as reported by the
+   * {@code retainedHeapBytes} counter.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  @SuppressWarnings("Nopen" /* JMH generates subclasses of state classes. */)
+  public static class HeapUsage {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /** The number of bytes of heap memory retained by the result of the benchmark. */
+    @SuppressWarnings({
+      "java:S1104",
+      "VisibilityModifier"
+    } /* JMH requires auxiliary counters to be public fields. */)
+    public long retainedHeapBytes;
+
+    private long baselineHeapBytes;
+
+    /** Records the heap memory in use prior to the benchmark. */
+    @Setup(Level.Iteration)
+    public void recordBaseline() {
+      baselineHeapBytes = getUsedHeapBytes();
+    }
+
+    /** Records the heap memory retained by the benchmark's result. */
+    @TearDown(Level.Iteration)
+    public void recordRetainedHeap() {
+      retainedHeapBytes = getUsedHeapBytes() - baselineHeapBytes;
+    }
+
+    @SuppressWarnings("java:S1215" /* Garbage collection is required for accurate results. */)
+    private static long getUsedHeapBytes() {
+      System.gc();
+      return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+  }
+}
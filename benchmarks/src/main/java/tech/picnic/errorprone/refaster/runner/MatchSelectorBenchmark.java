@@ -0,0 +1,97 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.fixes.IndexedPosition;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Position;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the selection of non-overlapping Refaster matches, by means of {@link
+ * MatchSelector#select}, in the face of many mutually overlapping suggested fixes.
+ *
+ * <p>The matches are organized in groups of ten, such that within each group every match overlaps
+ * every other match. Every third match suggests a shorter replacement of the same code as its
+ * predecessor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("Nopen" /* JMH generates subclasses of benchmark classes. */)
+@Warmup(iterations = 3)
+public class MatchSelectorBenchmark {
+  private static final int GROUP_SIZE = 10;
+  private static final int GROUP_LENGTH = 100;
+  private static final EndPosTable END_POSITIONS = new NoEndPositions();
+
+  /** The number of matches from which to select. */
+  @Param({"100", "1000", "10000"})
+  int matchCount;
+
+  private ImmutableList<Description> matches;
+
+  /** Generates the matches from which to select. */
+  @Setup
+  public void setUp() {
+    ImmutableList.Builder<Description> descriptions = ImmutableList.builder();
+    for (int i = 0; i < matchCount; i++) {
+      int offset = i % GROUP_SIZE;
+      int start = (i / GROUP_SIZE) * GROUP_LENGTH + offset;
+      int end = start + GROUP_LENGTH - 2 * offset;
+      descriptions.add(description(start, end, i % 3 == 0 ? "x" : "xyz"));
+    }
+    matches = descriptions.build();
+  }
+
+  /**
+   * Selects the non-overlapping matches.
+   *
+   * @return The selected matches.
+   */
+  @Benchmark
+  public ImmutableList<Description> select() {
+    return MatchSelector.select(matches, END_POSITIONS);
+  }
+
+  @SuppressWarnings("RestrictedApi" /* This is a benchmark. */)
+  private static Description description(int start, int end, String replacement) {
+    return Description.builder(new IndexedPosition(start, end), "Rule", null, "Message")
+        .addFix(SuggestedFix.replace(start, end, replacement))
+        .build();
+  }
+
+  /**
+   * An {@link EndPosTable} that does not track any end positions; the suggested fixes evaluated by
+   * this benchmark specify their end positions explicitly.
+   */
+  private static final class NoEndPositions implements EndPosTable {
+    @Override
+    public int getEndPos(JCTree tree) {
+      return Position.NOPOS;
+    }
+
+    @Override
+    public void storeEnd(JCTree tree, int endpos) {}
+
+    @Override
+    public int replaceTree(JCTree oldtree, JCTree newtree) {
+      return Position.NOPOS;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Description;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.picnic.errorprone.benchmarks.AnalyzedSource;
+import tech.picnic.errorprone.benchmarks.SyntheticSource;
+
+/**
+ * Benchmarks the application of the Refaster rules defined by this project to compilation units of
+ * various sizes, by means of {@link Refaster#matchCompilationUnit}.
+ *
+ * <p>The {@code namePattern} parameter controls which rules are loaded, such that the cost of
+ * applying all rules can be compared to that of applying only a subset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("Nopen" /* JMH generates subclasses of benchmark classes. */)
+@Warmup(iterations = 3)
+public class RefasterBenchmark {
+  /** The number of methods in the compilation unit to which the rules are applied. */
+  @Param({"10", "100", "1000"})
+  int methodCount;
+
+  /** The pattern passed using {@value Refaster#INCLUDED_RULES_PATTERN_FLAG}. */
+  @Param({".*", "StringRules\\$.*"})
+  String namePattern;
+
+  private Refaster refaster;
+  private AnalyzedSource source;
+  private VisitorState state;
+
+  /** Compiles the synthetic compilation unit, and loads the selected Refaster rules. */
+  @Setup
+  public void setUp() {
+    source =
+        AnalyzedSource.create(
+            SyntheticSource.CLASS_NAME,
+            SyntheticSource.generate(methodCount),
+            ImmutableList.of(
+                "-XepOpt:" + Refaster.INCLUDED_RULES_PATTERN_FLAG + '=' + namePattern));
+    refaster = new Refaster(source.errorProneOptions().getFlags());
+    state = source.createState(description -> {});
+  }
+
+  /**
+   * Applies the selected Refaster rules to the synthetic compilation unit, and selects and reports
+   * the resultant non-overlapping matches.
+   *
+   * @return The result of the bug checker invocation.
+   */
+  @Benchmark
+  public Description matchCompilationUnit() {
+    return refaster.matchCompilationUnit(source.compilationUnit(), state);
+  }
+}
@@ -0,0 +1,81 @@
+package tech.picnic.errorprone.benchmarks;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.annotations.Var;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LineMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import tech.picnic.errorprone.refaster.runner.AnalyzedCompilation;
+import tech.picnic.errorprone.refaster.runner.Refaster;
+
+final class SyntheticProjectGeneratorTest {
+  private static Stream<Arguments> generateTestCases() {
+    /* { ruleDensity, expectedFlaggedMethodCount } */
+    return Stream.of(arguments(0.0, 0), arguments(0.3, 6), arguments(1.0, 20));
+  }
+
+  /**
+   * Verifies that the generated project compiles, and that the fraction of methods flagged by the
+   * Refaster rules defined by this project matches the requested density.
+   */
+  @MethodSource("generateTestCases")
+  @ParameterizedTest
+  void generate(double ruleDensity, int expectedFlaggedMethodCount, @TempDir Path directory)
+      throws IOException {
+    SyntheticProjectGenerator.generate(directory, 2, 10, ruleDensity);
+
+    assertThat(directory.resolve("pom.xml")).isRegularFile();
+    assertThat(Files.readAllLines(directory.resolve(".mvn").resolve("jvm.config")))
+        .containsExactlyElementsOf(BenchmarkRunner.JVM_ARGUMENTS);
+    /* The parent build must have substituted all versions. */
+    assertThat(Files.readAllLines(directory.resolve(".mvn").resolve("maven.config")))
+        .isNotEmpty()
+        .allMatch(line -> line.matches("-D[\\w.-]+=[^@\\s]+"));
+
+    Path sourceDirectory = directory.resolve(Path.of("src", "main", "java", "pkg"));
+    try (AnalyzedCompilation compilation =
+        AnalyzedCompilation.create(
+            ImmutableList.of("-classpath", System.getProperty("java.class.path"), "-proc:none"),
+            fileManager ->
+                fileManager.getJavaFileObjects(
+                    sourceDirectory.resolve("Synthetic0.java"),
+                    sourceDirectory.resolve("Synthetic1.java")),
+            ErrorProneOptions.empty())) {
+      assertThat(compilation.errors()).isEmpty();
+      assertThat(compilation.compilationUnits()).hasSize(2);
+
+      Refaster refaster = new Refaster(ErrorProneFlags.empty());
+      @Var int flaggedMethodCount = 0;
+      for (CompilationUnitTree compilationUnit : compilation.compilationUnits()) {
+        List<Description> matches = new ArrayList<>();
+        refaster.matchCompilationUnit(
+            compilationUnit, compilation.createState(compilationUnit, matches::add));
+        /* Each flagged method contains a single flagged line. */
+        LineMap lineMap = compilationUnit.getLineMap();
+        ImmutableSet<Long> flaggedLines =
+            matches.stream()
+                .map(d -> lineMap.getLineNumber(d.position.getStartPosition()))
+                .collect(toImmutableSet());
+        flaggedMethodCount += flaggedLines.size();
+      }
+      assertThat(flaggedMethodCount).isEqualTo(expectedFlaggedMethodCount);
+    }
+  }
+}
@@ -14,9 +14,11 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.auto.service.AutoService;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.annotations.Immutable;
 import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.suppliers.Supplier;
 import com.google.errorprone.util.ASTHelpers;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.ExpressionTree;
@@ -41,6 +43,18 @@ import tech.picnic.errorprone.documentation.BugPatternTestExtractor.BugPatternTe
 @AutoService(Extractor.class)
 @SuppressWarnings("rawtypes" /* See https://github.com/google/auto/issues/870. */)
 public final class BugPatternTestExtractor implements Extractor<BugPatternTestCases> {
+  private static final ImmutableSet<String> TEST_HELPER_TYPES =
+      ImmutableSet.of(
+          "com.google.errorprone.BugCheckerRefactoringTestHelper",
+          "com.google.errorprone.CompilationTestHelper");
+
+  /**
+   * Tells whether any of the {@link #TEST_HELPER_TYPES} is available. As the classpath does not
+   * change during a compilation, this is determined only once per compilation.
+   */
+  private static final Supplier<Boolean> IS_TEST_HELPER_AVAILABLE =
+      VisitorState.memoize(BugPatternTestExtractor::isTestHelperAvailable);
+
   /** Instantiates a new {@link BugPatternTestExtractor} instance. */
   public BugPatternTestExtractor() {}
 
@@ -51,6 +65,14 @@ public final class BugPatternTestExtractor implements Extractor<BugPatternTestCa
 
   @Override
   public Optional<BugPatternTestCases> tryExtract(ClassTree tree, VisitorState state) {
+    if (!IS_TEST_HELPER_AVAILABLE.get(state)) {
+      /*
+       * Without any of the test helper types on the classpath, the class cannot contain bug pattern
+       * tests, so there is no need to scan it.
+       */
+      return Optional.empty();
+    }
+
     BugPatternTestCollector collector = new BugPatternTestCollector();
 
     collector.scan(tree, state);
@@ -65,6 +87,10 @@ public final class BugPatternTestExtractor implements Extractor<BugPatternTestCa
                     tests));
   }
 
+  private static boolean isTestHelperAvailable(VisitorState state) {
+    return TEST_HELPER_TYPES.stream().anyMatch(type -> state.getTypeFromString(type) != null);
+  }
+
   private static final class BugPatternTestCollector
       extends TreeScanner<@Nullable Void, VisitorState> {
     private static final Matcher<ExpressionTree> COMPILATION_HELPER_DO_TEST =
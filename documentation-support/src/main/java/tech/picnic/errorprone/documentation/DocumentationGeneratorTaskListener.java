@@ -20,6 +20,9 @@ import javax.tools.JavaFileObject;
 /**
  * A {@link TaskListener} that identifies and extracts relevant content for documentation generation
  * and writes it to disk.
+ *
+ * <p>Files whose content is unchanged are not rewritten, such that documentation can be regenerated
+ * incrementally for only the classes whose documentation changed.
  */
 // XXX: Find a better name for this class; it doesn't generate documentation per se.
 final class DocumentationGeneratorTaskListener implements TaskListener {
@@ -32,6 +35,7 @@ final class DocumentationGeneratorTaskListener implements TaskListener {
 
   private final Context context;
   private final Path docsPath;
+  private boolean docsDirectoryCreated;
 
   DocumentationGeneratorTaskListener(Context context, Path path) {
     this.context = context;
@@ -40,8 +44,9 @@ final class DocumentationGeneratorTaskListener implements TaskListener {
 
   @Override
   public void started(TaskEvent taskEvent) {
-    if (taskEvent.getKind() == Kind.ANALYZE) {
+    if (taskEvent.getKind() == Kind.ANALYZE && !docsDirectoryCreated) {
       createDocsDirectory();
+      docsDirectoryCreated = true;
     }
   }
 
@@ -82,7 +87,7 @@ final class DocumentationGeneratorTaskListener implements TaskListener {
   }
 
   private <T> void writeToFile(String identifier, String className, T data) {
-    Json.write(docsPath.resolve(String.format("%s-%s.json", identifier, className)), data);
+    Json.writeIfChanged(docsPath.resolve(String.format("%s-%s.json", identifier, className)), data);
   }
 
   private static String getSimpleClassName(URI path) {
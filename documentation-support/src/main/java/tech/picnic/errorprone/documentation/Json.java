@@ -5,9 +5,13 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.FormatMethod;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -30,9 +34,26 @@ final class Json {
     }
   }
 
-  static <T> void write(Path path, T object) {
+  /**
+   * Writes the given object to the given path, unless the file at said path already contains the
+   * exact same JSON.
+   *
+   * <p>Leaving up-to-date files untouched preserves their modification time, such that tools that
+   * process these files incrementally only reprocess files whose content changed.
+   *
+   * @return {@code true} iff the file was (over)written.
+   */
+  @CanIgnoreReturnValue
+  static <T> boolean writeIfChanged(Path path, T object) {
     try {
-      OBJECT_MAPPER.writeValue(path.toFile(), object);
+      byte[] content = OBJECT_MAPPER.writeValueAsBytes(object);
+      if (Files.isRegularFile(path)
+          && MoreFiles.asByteSource(path).contentEquals(ByteSource.wrap(content))) {
+        return false;
+      }
+
+      Files.write(path, content);
+      return true;
     } catch (IOException e) {
       throw failure(e, "Failure writing to '%s'", path);
     }
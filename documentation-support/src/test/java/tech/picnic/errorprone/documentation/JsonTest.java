@@ -9,8 +9,10 @@ import com.google.auto.value.AutoValue;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -19,20 +21,27 @@ final class JsonTest {
   private static final String TEST_JSON = "{\"string\":\"foo\",\"number\":42}";
 
   @Test
-  void write(@TempDir Path directory) {
+  void writeIfChanged(@TempDir Path directory) throws IOException {
     Path file = directory.resolve("test.json");
 
-    Json.write(file, TEST_OBJECT);
-
+    assertThat(Json.writeIfChanged(file, TEST_OBJECT)).isTrue();
     assertThat(file).content(UTF_8).isEqualTo(TEST_JSON);
+
+    FileTime lastModified = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(file, lastModified);
+    assertThat(Json.writeIfChanged(file, TEST_OBJECT)).isFalse();
+    assertThat(Files.getLastModifiedTime(file)).isEqualTo(lastModified);
+
+    assertThat(Json.writeIfChanged(file, new AutoValue_JsonTest_TestObject("bar", 42))).isTrue();
+    assertThat(file).content(UTF_8).isEqualTo(TEST_JSON.replace("foo", "bar"));
   }
 
   @Test
-  void writeFailure(@TempDir Path directory) {
-    assertThatThrownBy(() -> Json.write(directory, TEST_OBJECT))
+  void writeIfChangedFailure(@TempDir Path directory) {
+    assertThatThrownBy(() -> Json.writeIfChanged(directory, TEST_OBJECT))
         .isInstanceOf(UncheckedIOException.class)
         .hasMessageContaining("Failure writing to '%s'", directory)
-        .hasCauseInstanceOf(FileNotFoundException.class);
+        .hasCauseInstanceOf(FileSystemException.class);
   }
 
   @Test
@@ -1,15 +1,42 @@
 #!/usr/bin/env bash
 
+# Generates the website's pages. Pages whose content is unchanged are left
+# untouched, such that incremental website builds only reprocess pages that
+# actually changed. When invoked with `--watch`, additionally regenerates the
+# homepage whenever the content of `README.md` changes, until interrupted. (The
+# other pages are not generated by this script, and are thus not watched.)
+
 set -e -u -o pipefail
 
 REPOSITORY_ROOT="$(git rev-parse --show-toplevel)"
 WEBSITE_ROOT="${REPOSITORY_ROOT}/website"
 
+if [ "${#}" -gt 1 ] || { [ "${#}" -eq 1 ] && [ "${1}" != '--watch' ]; }; then
+    >&2 echo "Usage: ${0} [--watch]"
+    exit 1
+fi
+
+# Copies the content of the given file to the given destination, unless the
+# destination already has the same content, and then removes the file. The
+# content is copied rather than moved, such that the destination retains its
+# permissions.
+update_if_changed() {
+    local source="${1}"
+    local destination="${2}"
+
+    if ! cmp -s "${source}" "${destination}"; then
+        echo "Updating ${destination}..."
+        cat "${source}" > "${destination}"
+    fi
+    rm -- "${source}"
+}
+
 generate_homepage() {
     local homepage="${WEBSITE_ROOT}/index.md"
+    local candidate
+    candidate="$(mktemp)"
 
-    echo "Generating ${homepage}..."
-    cat - "${REPOSITORY_ROOT}/README.md" > "${homepage}" << EOF
+    cat - "${REPOSITORY_ROOT}/README.md" > "${candidate}" << EOF
 ---
 layout: default
 title: Home
@@ -19,9 +46,26 @@ EOF
 
     local macos_compat=""
     [[ "${OSTYPE}" == "darwin"* ]] && macos_compat="yes"
-    sed -i ${macos_compat:+".bak"} 's/src="website\//src="/g' "${homepage}"
-    sed -i ${macos_compat:+".bak"} 's/srcset="website\//srcset="/g' "${homepage}"
+    sed -i ${macos_compat:+".bak"} 's/src="website\//src="/g' "${candidate}"
+    sed -i ${macos_compat:+".bak"} 's/srcset="website\//srcset="/g' "${candidate}"
+    rm -f -- "${candidate}.bak"
+
+    update_if_changed "${candidate}" "${homepage}"
 }
 
 # Generate the website.
 generate_homepage
+
+if [ "${#}" -eq 1 ]; then
+    echo "Watching for changes; press Ctrl+C to stop."
+    # The file's content is compared rather than its modification time, as the
+    # latter is not portably available with sub-second resolution.
+    last_readme_checksum="$(cksum < "${REPOSITORY_ROOT}/README.md")"
+    while sleep 1; do
+        readme_checksum="$(cksum < "${REPOSITORY_ROOT}/README.md")"
+        if [ "${readme_checksum}" != "${last_readme_checksum}" ]; then
+            last_readme_checksum="${readme_checksum}"
+            generate_homepage
+        fi
+    done
+fi
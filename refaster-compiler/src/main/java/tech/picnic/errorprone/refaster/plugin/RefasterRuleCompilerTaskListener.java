@@ -1,9 +1,16 @@
 package tech.picnic.errorprone.refaster.plugin;
 
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.comparingInt;
+
 import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import com.google.errorprone.CodeTransformer;
 import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
 import com.google.errorprone.refaster.UTemplater;
@@ -21,27 +28,47 @@ import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Symbol.PackageSymbol;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.util.Context;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import javax.tools.FileObject;
 import javax.tools.JavaFileManager;
 import javax.tools.StandardLocation;
 import org.jspecify.annotations.Nullable;
 import tech.picnic.errorprone.refaster.AnnotatedCompositeCodeTransformer;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RefasterRuleMetadata;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization.ClassDescriptorTable;
+import tech.picnic.errorprone.refaster.RuleCost;
 
 /**
- * A variant of {@code com.google.errorprone.refaster.RefasterRuleCompilerAnalyzer} that stores
- * compiled Refaster rules in a {@code .refaster} file next to the compiled {@code .class} file,
- * rather than at a fixed location.
+ * A variant of {@code com.google.errorprone.refaster.RefasterRuleCompilerAnalyzer} that stores all
+ * Refaster rules compiled into the class output directory in a {@link RefasterRuleBundle}, rather
+ * than storing a single rule at a user-specified location.
+ *
+ * <p>This {@link TaskListener} thus supports compilation of multiple Refaster rules. When only a
+ * subset of the sources in the class output directory is recompiled, the rules compiled from those
+ * sources are merged into the existing bundle, replacing any rules previously compiled from the
+ * same classes.
  *
- * <p>This {@link TaskListener} thus supports compilation of multiple Refaster rules.
+ * <p>Along with each rule, its {@link RuleCost estimated cost} is stored as part of its {@link
+ * RefasterRuleMetadata}. The rules compiled from a single class are ordered cheapest-first.
  */
 final class RefasterRuleCompilerTaskListener implements TaskListener {
   private final Context context;
+  private final Map<String, AnnotatedCompositeCodeTransformer> compiledRules = new TreeMap<>();
+  private final Set<String> compiledClasses = new HashSet<>();
 
   RefasterRuleCompilerTaskListener(Context context) {
     this.context = context;
@@ -49,35 +76,53 @@ final class RefasterRuleCompilerTaskListener implements TaskListener {
 
   @Override
   public void finished(TaskEvent taskEvent) {
-    if (taskEvent.getKind() != Kind.ANALYZE || JavaCompiler.instance(context).errorCount() > 0) {
+    if (JavaCompiler.instance(context).errorCount() > 0) {
       return;
     }
 
+    if (taskEvent.getKind() == Kind.ANALYZE) {
+      collectRefasterRules(taskEvent);
+    } else if (taskEvent.getKind() == Kind.COMPILATION) {
+      try {
+        updateBundle(context.get(JavaFileManager.class));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to persist compiled Refaster rules", e);
+      }
+    }
+  }
+
+  private void collectRefasterRules(TaskEvent taskEvent) {
+    if (taskEvent.getTypeElement() instanceof ClassSymbol symbol) {
+      /* Rules previously compiled from this class are superseded, even if it now defines none. */
+      compiledClasses.add(symbol.flatName().toString());
+    }
+
     ClassTree tree = JavacTrees.instance(context).getTree(taskEvent.getTypeElement());
     if (tree == null || !containsRefasterRules(tree)) {
       return;
     }
 
-    ImmutableMap<ClassTree, CodeTransformer> rules = compileRefasterRules(tree);
-    for (Map.Entry<ClassTree, CodeTransformer> rule : rules.entrySet()) {
-      try {
-        outputCodeTransformer(rule.getValue(), getOutputFile(taskEvent, rule.getKey()));
-      } catch (IOException e) {
-        throw new UncheckedIOException("Failed to persist compiled Refaster rules", e);
-      }
+    ImmutableMap<ClassTree, AnnotatedCompositeCodeTransformer> rules = compileRefasterRules(tree);
+    for (Map.Entry<ClassTree, AnnotatedCompositeCodeTransformer> rule : rules.entrySet()) {
+      compiledRules.put(ASTHelpers.getSymbol(rule.getKey()).flatName().toString(), rule.getValue());
     }
   }
 
-  private ImmutableMap<ClassTree, CodeTransformer> compileRefasterRules(ClassTree tree) {
-    ImmutableMap.Builder<ClassTree, CodeTransformer> rules = ImmutableMap.builder();
+  private ImmutableMap<ClassTree, AnnotatedCompositeCodeTransformer> compileRefasterRules(
+      ClassTree tree) {
+    ImmutableMap.Builder<ClassTree, AnnotatedCompositeCodeTransformer> rules =
+        ImmutableMap.builder();
     new TreeScanner<@Nullable Void, ImmutableClassToInstanceMap<Annotation>>() {
       @Override
       public @Nullable Void visitClass(
           ClassTree node, ImmutableClassToInstanceMap<Annotation> annotations) {
         ClassSymbol symbol = ASTHelpers.getSymbol(node);
 
+        /* Delegates are ordered cheapest-first, such that inexpensive rules are applied first. */
         ImmutableList<CodeTransformer> transformers =
-            ImmutableList.copyOf(RefasterRuleBuilderScanner.extractRules(node, context));
+            ImmutableList.sortedCopyOf(
+                comparingInt(RuleCost::estimate),
+                RefasterRuleBuilderScanner.extractRules(node, context));
         if (!transformers.isEmpty()) {
           rules.put(
               node,
@@ -91,15 +136,107 @@ final class RefasterRuleCompilerTaskListener implements TaskListener {
     return rules.buildOrThrow();
   }
 
-  private FileObject getOutputFile(TaskEvent taskEvent, ClassTree tree) throws IOException {
-    ClassSymbol symbol = ASTHelpers.getSymbol(tree);
+  /**
+   * Writes a bundle containing the rules compiled as part of this compilation, as well as any rules
+   * previously bundled in the class output directory that were compiled from classes not recompiled
+   * as part of this compilation.
+   *
+   * <p>The rules compiled as part of this compilation share a single {@link ClassDescriptorTable};
+   * previously bundled rules retain theirs. Bundles listed in the class output directory's index
+   * that are superseded by the new bundle are deleted.
+   */
+  private void updateBundle(JavaFileManager fileManager) throws IOException {
+    ImmutableSet<String> previousBundles = readIndex(fileManager);
+    List<RefasterRuleBundle.Entry> entries = new ArrayList<>();
+    /* Rules are serialized by name, such that the table is independent of the compilation order. */
+    ClassDescriptorTable classDescriptors = new ClassDescriptorTable();
+    for (Map.Entry<String, AnnotatedCompositeCodeTransformer> rule : compiledRules.entrySet()) {
+      byte[] codeTransformer =
+          RefasterRuleSerialization.serialize(rule.getValue(), classDescriptors);
+      entries.add(
+          RefasterRuleBundle.Entry.create(
+              rule.getKey(),
+              RefasterRuleMetadata.extract(rule.getValue()),
+              ByteSource.wrap(codeTransformer),
+              classDescriptors));
+    }
+    for (String previousBundle : previousBundles) {
+      for (RefasterRuleBundle.Entry entry : readBundle(fileManager, previousBundle)) {
+        if (!compiledClasses.contains(getTopLevelClassName(entry.name()))) {
+          entries.add(entry);
+        }
+      }
+    }
 
-    JavaFileManager fileManager = context.get(JavaFileManager.class);
-    return fileManager.getFileForOutput(
-        StandardLocation.CLASS_OUTPUT,
-        toPackageName(symbol),
-        toSimpleFlatName(symbol) + ".refaster",
-        taskEvent.getSourceFile());
+    if (entries.isEmpty()) {
+      for (String previousBundle : previousBundles) {
+        getOutputFile(fileManager, RefasterRuleBundle.RESOURCE_DIRECTORY + previousBundle).delete();
+      }
+      if (!previousBundles.isEmpty()) {
+        getOutputFile(fileManager, RefasterRuleBundle.INDEX_RESOURCE_NAME).delete();
+      }
+      return;
+    }
+
+    /* The entries are sorted, such that the bundle does not depend on the compilation order. */
+    entries.sort(comparing(RefasterRuleBundle.Entry::name));
+    ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(entries, bundle);
+    byte[] bundleContent = bundle.toByteArray();
+    String bundleName = RefasterRuleBundle.getResourceName(bundleContent);
+    writeIfChanged(
+        bundleContent,
+        getOutputFile(fileManager, RefasterRuleBundle.RESOURCE_DIRECTORY + bundleName));
+
+    for (String previousBundle : previousBundles) {
+      if (!previousBundle.equals(bundleName)) {
+        getOutputFile(fileManager, RefasterRuleBundle.RESOURCE_DIRECTORY + previousBundle).delete();
+      }
+    }
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    RefasterRuleBundle.writeIndex(ImmutableList.of(bundleName), index);
+    writeIfChanged(
+        index.toByteArray(), getOutputFile(fileManager, RefasterRuleBundle.INDEX_RESOURCE_NAME));
+  }
+
+  private static ImmutableSet<String> readIndex(JavaFileManager fileManager) throws IOException {
+    FileObject index = getInputFile(fileManager, RefasterRuleBundle.INDEX_RESOURCE_NAME);
+    if (index == null) {
+      return ImmutableSet.of();
+    }
+
+    try (InputStream in = index.openInputStream()) {
+      return RefasterRuleBundle.readIndex(in);
+    }
+  }
+
+  private static ImmutableList<RefasterRuleBundle.Entry> readBundle(
+      JavaFileManager fileManager, String bundleName) throws IOException {
+    FileObject bundle =
+        getInputFile(fileManager, RefasterRuleBundle.RESOURCE_DIRECTORY + bundleName);
+    if (bundle == null) {
+      return ImmutableList.of();
+    }
+
+    try (InputStream in = bundle.openInputStream()) {
+      return RefasterRuleBundle.read(in);
+    }
+  }
+
+  private static @Nullable FileObject getInputFile(JavaFileManager fileManager, String name)
+      throws IOException {
+    return fileManager.getFileForInput(StandardLocation.CLASS_OUTPUT, "", name);
+  }
+
+  private static FileObject getOutputFile(JavaFileManager fileManager, String name)
+      throws IOException {
+    return fileManager.getFileForOutput(StandardLocation.CLASS_OUTPUT, "", name, null);
+  }
+
+  private static String getTopLevelClassName(String flatName) {
+    int firstDollar = flatName.indexOf('$');
+    return firstDollar < 0 ? flatName : flatName.substring(0, firstDollar);
   }
 
   private static boolean containsRefasterRules(ClassTree tree) {
@@ -136,16 +273,40 @@ final class RefasterRuleCompilerTaskListener implements TaskListener {
     return enclosingPackage == null ? "" : enclosingPackage.toString();
   }
 
-  private static String toSimpleFlatName(ClassSymbol symbol) {
-    String flatName = symbol.flatName().toString();
-    int lastDot = flatName.lastIndexOf((byte) '.');
-    return lastDot < 0 ? flatName : flatName.substring(lastDot + 1);
+  /**
+   * Writes the given content to the given file, unless the file already contains the exact same
+   * content.
+   *
+   * <p>Leaving an up-to-date file untouched preserves its timestamp, such that downstream build
+   * steps and caches (e.g. JAR packaging) do not consider it changed.
+   */
+  private static void writeIfChanged(byte[] content, FileObject target) throws IOException {
+    if (getFingerprint(target).equals(Optional.of(Hashing.sha256().hashBytes(content)))) {
+      return;
+    }
+
+    try (OutputStream output = target.openOutputStream()) {
+      output.write(content);
+    }
   }
 
-  private static void outputCodeTransformer(CodeTransformer codeTransformer, FileObject target)
-      throws IOException {
-    try (ObjectOutput output = new ObjectOutputStream(target.openOutputStream())) {
-      output.writeObject(codeTransformer);
+  /**
+   * Computes the fingerprint of the given file's current content.
+   *
+   * @return The fingerprint, or {@link Optional#empty()} if the file does not exist or cannot be
+   *     read, in which case it should simply be (over)written.
+   */
+  private static Optional<HashCode> getFingerprint(FileObject file) {
+    try {
+      return Optional.of(
+          new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+              return file.openInputStream();
+            }
+          }.hash(Hashing.sha256()));
+    } catch (IOException e) {
+      return Optional.empty();
     }
   }
 }
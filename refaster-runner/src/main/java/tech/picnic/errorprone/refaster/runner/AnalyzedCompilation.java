@@ -0,0 +1,168 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.annotations.Var;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.api.MultiTaskListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * A set of Java compilation units that have been parsed and attributed by a dedicated compiler
+ * instance, such that bug checkers can subsequently be applied to them.
+ *
+ * <p>This class allows tools such as {@link BatchRefactorer} to apply bug checkers without running
+ * a full Error Prone compilation. As bug checkers may trigger the lazy completion of symbols, the
+ * compiler's resources are retained until this instance is closed. Closing this instance signals
+ * completion of the compilation to any registered {@link TaskListener}s, as javac does at the end
+ * of a regular compilation; bug checkers may rely on this to flush any state, such as the {@link
+ * Refaster} profile.
+ */
+public final class AnalyzedCompilation implements Closeable {
+  private final StandardJavaFileManager fileManager;
+  private final JavacTaskImpl task;
+  private final ImmutableList<CompilationUnitTree> compilationUnits;
+  private final ImmutableList<Diagnostic<? extends JavaFileObject>> errors;
+  private final ErrorProneOptions errorProneOptions;
+
+  private AnalyzedCompilation(
+      StandardJavaFileManager fileManager,
+      JavacTaskImpl task,
+      ImmutableList<CompilationUnitTree> compilationUnits,
+      ImmutableList<Diagnostic<? extends JavaFileObject>> errors,
+      ErrorProneOptions errorProneOptions) {
+    this.fileManager = fileManager;
+    this.task = task;
+    this.compilationUnits = compilationUnits;
+    this.errors = errors;
+    this.errorProneOptions = errorProneOptions;
+  }
+
+  /**
+   * Parses and attributes the given source files.
+   *
+   * <p>Compilation errors, including source files that cannot be read, do not cause this method to
+   * fail; see {@link #errors()}.
+   *
+   * @param javacOptions The options with which to invoke the compiler.
+   * @param sourceFiles A function that, given the compiler's file manager, returns the source files
+   *     to compile.
+   * @param errorProneOptions The Error Prone options with which bug checkers are applied to the
+   *     compilation units.
+   * @return A non-{@code null} analyzed compilation, which must be closed after use.
+   * @throws IOException If the compiler fails unexpectedly and its resources cannot subsequently be
+   *     released.
+   */
+  public static AnalyzedCompilation create(
+      List<String> javacOptions,
+      Function<? super StandardJavaFileManager, ? extends Iterable<? extends JavaFileObject>>
+          sourceFiles,
+      ErrorProneOptions errorProneOptions)
+      throws IOException {
+    JavacTool javac = JavacTool.create();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    StandardJavaFileManager fileManager =
+        javac.getStandardFileManager(diagnostics, /* locale= */ null, UTF_8);
+    @Var boolean created = false;
+    try {
+      JavacTaskImpl task =
+          (JavacTaskImpl)
+              javac.getTask(
+                  /* out= */ null,
+                  fileManager,
+                  diagnostics,
+                  javacOptions,
+                  /* classes= */ null,
+                  sourceFiles.apply(fileManager));
+      /* Bug checkers consult these options, e.g. to determine the severity of reported matches. */
+      task.getContext().put(ErrorProneOptions.class, errorProneOptions);
+      ImmutableList<CompilationUnitTree> compilationUnits = ImmutableList.copyOf(task.parse());
+      task.analyze();
+
+      AnalyzedCompilation compilation =
+          new AnalyzedCompilation(
+              fileManager,
+              task,
+              compilationUnits,
+              diagnostics.getDiagnostics().stream()
+                  .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                  .collect(toImmutableList()),
+              errorProneOptions);
+      created = true;
+      return compilation;
+    } finally {
+      if (!created) {
+        fileManager.close();
+      }
+    }
+  }
+
+  /**
+   * Returns the parsed compilation units, in the order in which the source files were provided.
+   *
+   * @return A non-{@code null} list of compilation units.
+   */
+  public ImmutableList<CompilationUnitTree> compilationUnits() {
+    return compilationUnits;
+  }
+
+  /**
+   * Returns the errors reported by the compiler.
+   *
+   * @return A possibly-empty list of error diagnostics.
+   */
+  public ImmutableList<Diagnostic<? extends JavaFileObject>> errors() {
+    return errors;
+  }
+
+  /**
+   * Returns the Error Prone options with which bug checkers are applied to the compilation units.
+   *
+   * @return The non-{@code null} options.
+   */
+  public ErrorProneOptions errorProneOptions() {
+    return errorProneOptions;
+  }
+
+  /**
+   * Creates a {@link VisitorState} with which to apply a bug checker to the given compilation unit.
+   *
+   * @param compilationUnit One of this compilation's {@link #compilationUnits()}.
+   * @param listener The listener to which matches are reported.
+   * @return A non-{@code null} visitor state, positioned at the given compilation unit.
+   */
+  public VisitorState createState(
+      CompilationUnitTree compilationUnit, DescriptionListener listener) {
+    return VisitorState.createConfiguredForCompilation(
+            task.getContext(), listener, ImmutableMap.of(), errorProneOptions)
+        .withPath(new TreePath(compilationUnit));
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      MultiTaskListener.instance(task.getContext())
+          .finished(new TaskEvent(TaskEvent.Kind.COMPILATION));
+    } finally {
+      fileManager.close();
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.annotations.Var;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.ImportOrganizer;
+import com.google.errorprone.apply.PatchFileDestination;
+import com.google.errorprone.apply.SourceFile;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import javax.tools.JavaFileObject;
+
+/**
+ * A command line tool that applies the Refaster rules located on the classpath to a set of source
+ * files, without requiring a full build.
+ *
+ * <p>Usage: {@code BatchRefactorer [--classpath <path>] [--threads <count>]
+ * [-XepOpt:<flag>=<value>...] <sourceRoot>...}
+ *
+ * <p>The Java source files located in the given source roots are compiled in batches, by
+ * independent compiler instances that run in parallel. Types not defined by the files in a batch
+ * are resolved using the given classpath and source roots. {@code -XepOpt} flags, such as {@code
+ * -XepOpt:Refaster:NamePattern=<someRegex>}, are passed on to the {@link Refaster} bug checker. If
+ * {@code -XepOpt:Refaster:Profile=<path>} is passed, the statistics of all batches are combined
+ * into a single profile.
+ *
+ * <p>The suggested changes are written to standard output as a unified patch, relative to the
+ * current working directory; it can be applied using {@code patch -p0}. Files that do not compile
+ * are skipped, and reported on standard error.
+ *
+ * <p>As this tool relies on compiler internals, it requires the same {@code --add-exports} JVM
+ * options as Error Prone itself.
+ */
+public final class BatchRefactorer {
+  private static final String CLASSPATH_OPTION = "--classpath";
+  private static final String THREADS_OPTION = "--threads";
+  private static final String ERROR_PRONE_FLAG_PREFIX = "-XepOpt:";
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private BatchRefactorer() {}
+
+  /**
+   * Applies the Refaster rules located on the classpath to the Java source files in the given
+   * source roots, and writes the resultant patch to standard output.
+   *
+   * @param args The command line arguments; see the class documentation.
+   * @throws IOException If the source files cannot be read or the patch cannot be written.
+   * @throws InterruptedException If interrupted while waiting for the source files to be processed.
+   */
+  public static void main(String... args) throws IOException, InterruptedException {
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), UTF_8);
+        Writer err = new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), UTF_8)) {
+      run(ImmutableList.copyOf(args), Path.of("").toAbsolutePath(), out, err);
+    }
+  }
+
+  /**
+   * Applies the Refaster rules located on the classpath to the Java source files in the source
+   * roots specified by the given arguments.
+   *
+   * @param args The command line arguments; see the class documentation.
+   * @param baseDirectory The directory relative to which the patch is generated.
+   * @param out The writer to which to write the patch.
+   * @param err The writer to which to report files that were skipped.
+   * @throws IOException If the source files cannot be read or the patch cannot be written.
+   * @throws InterruptedException If interrupted while waiting for the source files to be processed.
+   */
+  static void run(ImmutableList<String> args, Path baseDirectory, Writer out, Writer err)
+      throws IOException, InterruptedException {
+    @Var String classpath = "";
+    @Var int threads = Runtime.getRuntime().availableProcessors();
+    List<String> errorProneArgs = new ArrayList<>();
+    List<Path> sourceRoots = new ArrayList<>();
+    Iterator<String> arguments = args.iterator();
+    while (arguments.hasNext()) {
+      String arg = arguments.next();
+      if (arg.equals(CLASSPATH_OPTION) || arg.equals(THREADS_OPTION)) {
+        checkArgument(arguments.hasNext(), "Option '%s' requires a value", arg);
+        String value = arguments.next();
+        if (arg.equals(CLASSPATH_OPTION)) {
+          classpath = value;
+        } else {
+          threads = Integer.parseInt(value);
+          checkArgument(threads > 0, "Option '%s' must specify a positive thread count", arg);
+        }
+      } else if (arg.startsWith(ERROR_PRONE_FLAG_PREFIX)) {
+        errorProneArgs.add(arg);
+      } else {
+        sourceRoots.add(baseDirectory.resolve(arg));
+      }
+    }
+    checkArgument(!sourceRoots.isEmpty(), "At least one source root must be provided");
+
+    ImmutableList<Path> sourceFiles = getSourceFiles(sourceRoots);
+    ImmutableList<String> javacOptions =
+        ImmutableList.of(
+            "-classpath",
+            classpath,
+            "-sourcepath",
+            Joiner.on(File.pathSeparatorChar).join(sourceRoots),
+            "-encoding",
+            UTF_8.name(),
+            "-proc:none",
+            "-implicit:none",
+            "-XDshould-stop.ifError=FLOW");
+    ErrorProneOptions errorProneOptions =
+        ErrorProneOptions.processArgs(ImmutableList.copyOf(errorProneArgs));
+    /* A single profile accumulates the statistics of all batches. */
+    Optional<RefasterProfile> profile = Refaster.createProfile(errorProneOptions.getFlags());
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<BatchResult>> results = new ArrayList<>();
+      for (List<Path> batch : getBatches(sourceFiles, threads)) {
+        Callable<BatchResult> task =
+            () -> refactor(batch, javacOptions, errorProneOptions, profile, baseDirectory);
+        results.add(executor.submit(task));
+      }
+
+      /* Results are written in order, as soon as they become available. */
+      for (Future<BatchResult> result : results) {
+        BatchResult batchResult = getResult(result);
+        for (String patch : batchResult.patches()) {
+          out.write(patch);
+        }
+        for (Path skippedFile : batchResult.skippedFiles()) {
+          err.write(String.format("Skipped '%s', as it does not compile%n", skippedFile));
+        }
+        out.flush();
+        err.flush();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static ImmutableList<Path> getSourceFiles(List<Path> sourceRoots) throws IOException {
+    ImmutableList.Builder<Path> sourceFiles = ImmutableList.builder();
+    for (Path sourceRoot : sourceRoots) {
+      try (Stream<Path> files = Files.walk(sourceRoot)) {
+        sourceFiles.addAll(
+            files
+                .filter(p -> p.toString().endsWith(".java") && Files.isRegularFile(p))
+                .sorted()
+                .collect(toImmutableList()));
+      }
+    }
+    return sourceFiles.build();
+  }
+
+  /**
+   * Splits the given source files into batches of limited size, such that each thread processes at
+   * least one batch, if possible.
+   */
+  private static List<List<Path>> getBatches(List<Path> sourceFiles, int threads) {
+    int batchSize =
+        Math.max(1, Math.min(MAX_BATCH_SIZE, (sourceFiles.size() + threads - 1) / threads));
+    return Lists.partition(sourceFiles, batchSize);
+  }
+
+  private static BatchResult getResult(Future<BatchResult> result) throws InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException("Failed to refactor source files", e.getCause());
+    }
+  }
+
+  /**
+   * Compiles the given source files using a dedicated compiler instance, and returns the patches
+   * that result from applying all Refaster rules to the files that compile.
+   */
+  private static BatchResult refactor(
+      List<Path> sourceFiles,
+      List<String> javacOptions,
+      ErrorProneOptions errorProneOptions,
+      Optional<RefasterProfile> profile,
+      Path baseDirectory)
+      throws IOException {
+    try (AnalyzedCompilation compilation =
+        AnalyzedCompilation.create(
+            javacOptions,
+            fileManager -> fileManager.getJavaFileObjectsFromPaths(sourceFiles),
+            errorProneOptions)) {
+      ImmutableSet<URI> erroneousFiles =
+          compilation.errors().stream()
+              .filter(d -> d.getSource() != null)
+              .map(d -> d.getSource().toUri())
+              .collect(toImmutableSet());
+
+      /* Each batch uses its own bug checker instance, as instances are tied to a compilation. */
+      Refaster refaster = new Refaster(errorProneOptions.getFlags(), profile);
+      PatchFileDestination patches = new PatchFileDestination(baseDirectory, baseDirectory);
+      ImmutableList.Builder<String> result = ImmutableList.builder();
+      ImmutableList.Builder<Path> skippedFiles = ImmutableList.builder();
+      for (CompilationUnitTree compilationUnit : compilation.compilationUnits()) {
+        JavaFileObject sourceFile = compilationUnit.getSourceFile();
+        if (erroneousFiles.contains(sourceFile.toUri())) {
+          skippedFiles.add(baseDirectory.relativize(Path.of(sourceFile.toUri())));
+          continue;
+        }
+
+        DescriptionBasedDiff diff =
+            DescriptionBasedDiff.createIgnoringOverlaps(
+                (JCCompilationUnit) compilationUnit, ImportOrganizer.STATIC_FIRST_ORGANIZER);
+        refaster.matchCompilationUnit(
+            compilationUnit, compilation.createState(compilationUnit, diff));
+        if (!diff.isEmpty()) {
+          SourceFile source = SourceFile.create(sourceFile);
+          diff.applyDifferences(source);
+          patches.writeFile(source);
+          String patch = patches.patchFile(baseDirectory.resolve(source.getPath()).toUri());
+          if (patch != null) {
+            result.add(patch);
+          }
+        }
+      }
+
+      return new BatchResult(result.build(), skippedFiles.build());
+    }
+  }
+
+  /** The outcome of refactoring a batch of source files. */
+  private static final class BatchResult {
+    private final ImmutableList<String> patches;
+    private final ImmutableList<Path> skippedFiles;
+
+    BatchResult(ImmutableList<String> patches, ImmutableList<Path> skippedFiles) {
+      this.patches = patches;
+      this.skippedFiles = skippedFiles;
+    }
+
+    ImmutableList<String> patches() {
+      return patches;
+    }
+
+    ImmutableList<Path> skippedFiles() {
+      return skippedFiles;
+    }
+  }
+}
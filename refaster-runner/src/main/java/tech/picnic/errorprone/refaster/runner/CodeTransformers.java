@@ -1,27 +1,58 @@
 package tech.picnic.errorprone.refaster.runner;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Resources;
 import com.google.common.reflect.ClassPath;
 import com.google.common.reflect.ClassPath.ResourceInfo;
 import com.google.errorprone.CodeTransformer;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
 import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.function.Supplier;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RefasterRuleMetadata;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization.ClassDescriptorTable;
 
 /**
- * Scans the classpath for {@value #REFASTER_RULE_SUFFIX} files and loads them as {@link
- * CodeTransformer}s.
+ * Locates compiled Refaster rules on the classpath and loads them as {@link CodeTransformer}s.
+ *
+ * <p>Rules are loaded from the {@link RefasterRuleBundle}s listed by {@value
+ * RefasterRuleBundle#INDEX_RESOURCE_NAME} resources. Only if no such bundles are found, the
+ * classpath is scanned for {@value #REFASTER_RULE_SUFFIX} files, as produced by older versions of
+ * the Refaster rule compiler and by other rule compilers. This avoids the cost of scanning the full
+ * classpath in the common case, at the expense of ignoring legacy rules on a classpath that also
+ * contains bundled rules.
+ *
+ * <p>The {@link CodeTransformer}s are deserialized lazily, upon first use. The {@link
+ * RefasterRuleMetadata} contained in rule bundles is loaded eagerly, as it is much cheaper to load
+ * and allows determining whether a {@link CodeTransformer} may apply to a given compilation unit.
  */
 public final class CodeTransformers {
   private static final String REFASTER_RULE_SUFFIX = ".refaster";
-  private static final Supplier<ImmutableListMultimap<String, CodeTransformer>>
-      ALL_CODE_TRANSFORMERS = Suppliers.memoize(CodeTransformers::loadAllCodeTransformers);
+  private static final Supplier<RuleSet> ALL_RULES =
+      Suppliers.memoize(() -> loadRuleSet(CodeTransformers.class.getClassLoader()));
+  private static final Supplier<HashCode> RULE_SET_FINGERPRINT =
+      Suppliers.memoize(() -> ALL_RULES.get().fingerprint());
 
   private CodeTransformers() {}
 
@@ -33,38 +64,170 @@ public final class CodeTransformers {
    * @return A mapping from Refaster rule names to associated {@link CodeTransformer}s.
    */
   public static ImmutableListMultimap<String, CodeTransformer> getAllCodeTransformers() {
-    return ALL_CODE_TRANSFORMERS.get();
+    return ALL_RULES.get().transformers;
+  }
+
+  /**
+   * Returns the {@link CodeTransformer} represented by the given instance.
+   *
+   * <p>The {@link CodeTransformer}s returned by {@link #getAllCodeTransformers()} are loaded
+   * lazily; this method forces loading of the given instance.
+   *
+   * @param codeTransformer A {@link CodeTransformer} returned by {@link #getAllCodeTransformers()}.
+   * @return The loaded {@link CodeTransformer}, unless it could not be loaded.
+   */
+  public static Optional<CodeTransformer> resolve(CodeTransformer codeTransformer) {
+    return codeTransformer instanceof LazyCodeTransformer lazyCodeTransformer
+        ? lazyCodeTransformer.getDelegate()
+        : Optional.of(codeTransformer);
   }
 
   /**
-   * Scans the classpath for compiled Refaster rules and returns the associated deserialized {@link
-   * CodeTransformer}s, indexed by their name.
+   * Returns the precomputed metadata of the rules wrapped by the given {@link CodeTransformer}.
    *
+   * @param codeTransformer A {@link CodeTransformer} returned by {@link #getAllCodeTransformers()}.
+   * @return The metadata of the wrapped rules, in order; an empty list if no metadata is available.
+   */
+  static ImmutableList<RefasterRuleMetadata> getMetadata(CodeTransformer codeTransformer) {
+    return codeTransformer instanceof LazyCodeTransformer lazyCodeTransformer
+        ? lazyCodeTransformer.getMetadata()
+        : ImmutableList.of();
+  }
+
+  /**
+   * Returns a fingerprint of the compiled Refaster rules found on the classpath.
+   *
+   * <p>The fingerprint changes if any rule is added, removed or modified. Like {@link
+   * #getAllCodeTransformers()}, this method returns a cached value.
+   *
+   * @return A hash of the serialized form of all Refaster rules found on the classpath.
+   */
+  static HashCode getRuleSetFingerprint() {
+    return RULE_SET_FINGERPRINT.get();
+  }
+
+  /**
+   * Locates compiled Refaster rules using the given {@link ClassLoader} and returns the associated
+   * lazily deserialized {@link CodeTransformer}s, indexed by their name.
+   *
+   * @param classLoader The class loader through which to locate compiled Refaster rules.
    * @return A mapping from Refaster rule names to associated {@link CodeTransformer}s.
    */
-  private static ImmutableListMultimap<String, CodeTransformer> loadAllCodeTransformers() {
+  @VisibleForTesting
+  static ImmutableListMultimap<String, CodeTransformer> loadAllCodeTransformers(
+      ClassLoader classLoader) {
+    return loadRuleSet(classLoader).transformers;
+  }
+
+  private static RuleSet loadRuleSet(ClassLoader classLoader) {
+    ImmutableList<URL> bundles = getRuleBundles(classLoader);
+    if (!bundles.isEmpty()) {
+      return new RuleSet(loadBundledCodeTransformers(bundles), bundles, ImmutableList.of());
+    }
+
+    ImmutableList<ResourceInfo> legacyRules = getLegacyRules(classLoader);
+    return new RuleSet(loadLegacyCodeTransformers(legacyRules), bundles, legacyRules);
+  }
+
+  /**
+   * Returns the locations of the {@link RefasterRuleBundle}s listed by the {@value
+   * RefasterRuleBundle#INDEX_RESOURCE_NAME} resources visible to the given {@link ClassLoader}.
+   *
+   * <p>Bundle names are resolved relative to the index that lists them, such that each index refers
+   * only to bundles contained in the same artifact. Bundles listed more than once are returned only
+   * once.
+   */
+  private static ImmutableList<URL> getRuleBundles(ClassLoader classLoader) {
+    /* Bundles are deduplicated by their string representation, as `URL#equals` is unreliable. */
+    Map<String, URL> bundles = new LinkedHashMap<>();
+    try {
+      Enumeration<URL> indices = classLoader.getResources(RefasterRuleBundle.INDEX_RESOURCE_NAME);
+      for (URL index : Collections.list(indices)) {
+        for (String bundleName : readIndex(index)) {
+          URL bundle = new URL(index, bundleName);
+          bundles.putIfAbsent(bundle.toExternalForm(), bundle);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to locate Refaster rule bundles", e);
+    }
+    return ImmutableList.copyOf(bundles.values());
+  }
+
+  private static ImmutableSet<String> readIndex(URL index) throws IOException {
+    try (InputStream in = index.openStream()) {
+      return RefasterRuleBundle.readIndex(in);
+    }
+  }
+
+  private static ImmutableListMultimap<String, CodeTransformer> loadBundledCodeTransformers(
+      ImmutableList<URL> bundles) {
     ImmutableListMultimap.Builder<String, CodeTransformer> transformers =
         ImmutableListMultimap.builder();
 
-    for (ResourceInfo resource : getClassPathResources()) {
-      getRefasterRuleName(resource)
-          .ifPresent(
-              ruleName ->
-                  loadCodeTransformer(resource)
-                      .ifPresent(transformer -> transformers.put(ruleName, transformer)));
+    for (URL bundle : bundles) {
+      for (RefasterRuleBundle.Entry entry : loadRuleBundle(bundle)) {
+        transformers.put(
+            getSimpleFlatName(entry.name()),
+            new LazyCodeTransformer(
+                () ->
+                    deserializeCodeTransformer(
+                        entry.codeTransformer(), entry.classDescriptors(), bundle),
+                Optional.of(entry.metadata())));
+      }
     }
 
     return transformers.build();
   }
 
-  private static ImmutableSet<ResourceInfo> getClassPathResources() {
+  /**
+   * Returns the simple flat name of the class with the given fully qualified flat name.
+   *
+   * <p>Rules are exposed under this name, as that is how they are referenced in rule selections and
+   * reports. Rules compiled from same-named classes in different packages are thus exposed under
+   * the same name.
+   */
+  private static String getSimpleFlatName(String flatName) {
+    return flatName.substring(flatName.lastIndexOf('.') + 1);
+  }
+
+  private static ImmutableList<RefasterRuleBundle.Entry> loadRuleBundle(URL bundle) {
+    try (InputStream in = bundle.openStream()) {
+      return RefasterRuleBundle.read(in);
+    } catch (IOException e) {
+      throw new IllegalStateException("Can't load Refaster rule bundle from " + bundle, e);
+    }
+  }
+
+  /** Returns the {@value #REFASTER_RULE_SUFFIX} files visible to the given {@link ClassLoader}. */
+  private static ImmutableList<ResourceInfo> getLegacyRules(ClassLoader classLoader) {
     try {
-      return ClassPath.from(CodeTransformers.class.getClassLoader()).getResources();
+      return ClassPath.from(classLoader).getResources().stream()
+          .filter(resource -> getRefasterRuleName(resource).isPresent())
+          .collect(toImmutableList());
     } catch (IOException e) {
       throw new UncheckedIOException("Failed to scan classpath for resources", e);
     }
   }
 
+  private static ImmutableListMultimap<String, CodeTransformer> loadLegacyCodeTransformers(
+      ImmutableList<ResourceInfo> legacyRules) {
+    ImmutableListMultimap.Builder<String, CodeTransformer> transformers =
+        ImmutableListMultimap.builder();
+
+    for (ResourceInfo resource : legacyRules) {
+      getRefasterRuleName(resource)
+          .ifPresent(
+              ruleName ->
+                  transformers.put(
+                      ruleName,
+                      new LazyCodeTransformer(
+                          () -> loadCodeTransformer(resource), Optional.empty())));
+    }
+
+    return transformers.build();
+  }
+
   private static Optional<String> getRefasterRuleName(ResourceInfo resource) {
     String resourceName = resource.getResourceName();
     if (!resourceName.endsWith(REFASTER_RULE_SUFFIX)) {
@@ -79,15 +242,13 @@ public final class CodeTransformers {
 
   @SuppressWarnings({
     "java:S1166" /* The caught exception's stack traces are not relevant. */,
-    "java:S2147" /* The `catch` clauses have distinct comments. */,
     "key-to-resolve-AnnotationUseStyle-and-TrailingComment-check-conflict"
   })
   private static Optional<CodeTransformer> loadCodeTransformer(ResourceInfo resource) {
-    try (InputStream in = resource.url().openStream();
-        ObjectInputStream ois = new ObjectInputStream(in)) {
-      @SuppressWarnings("BanSerializableRead" /* Part of the Refaster API. */)
-      CodeTransformer codeTransformer = (CodeTransformer) ois.readObject();
-      return Optional.of(codeTransformer);
+    try {
+      /* Legacy rules use plain Java serialization, which does not reference a descriptor table. */
+      return deserializeCodeTransformer(
+          resource.asByteSource(), new ClassDescriptorTable(), resource.url());
     } catch (NoSuchElementException e) {
       /*
        * For some reason we can't load the resource; skip it. This issue has been observed when
@@ -98,12 +259,61 @@ public final class CodeTransformers {
       // ClassGraph.
       // XXX: Should we log this?
       return Optional.empty();
-    } catch (ClassCastException e) {
-      /* This resource does not appear to be compatible with the current classpath. */
+    }
+  }
+
+  @SuppressWarnings({
+    "java:S1166" /* The caught exception's stack traces are not relevant. */,
+    "key-to-resolve-AnnotationUseStyle-and-TrailingComment-check-conflict"
+  })
+  private static Optional<CodeTransformer> deserializeCodeTransformer(
+      ByteSource source, ClassDescriptorTable classDescriptors, URL origin) {
+    try (InputStream in = source.openStream()) {
+      return Optional.of(RefasterRuleSerialization.deserialize(in, classDescriptors));
+    } catch (ClassCastException | ObjectStreamException e) {
+      /*
+       * This resource does not appear to be compatible with the current classpath, for example
+       * because it was compiled against an incompatible version of a class it references.
+       */
       // XXX: Should we log this?
       return Optional.empty();
     } catch (ClassNotFoundException | IOException e) {
-      throw new IllegalStateException("Can't load `CodeTransformer` from " + resource, e);
+      throw new IllegalStateException("Can't load `CodeTransformer` from " + origin, e);
+    }
+  }
+
+  /** The compiled Refaster rules located through a {@link ClassLoader}. */
+  private static final class RuleSet {
+    private final ImmutableListMultimap<String, CodeTransformer> transformers;
+    private final ImmutableList<URL> bundles;
+    private final ImmutableList<ResourceInfo> legacyRules;
+
+    RuleSet(
+        ImmutableListMultimap<String, CodeTransformer> transformers,
+        ImmutableList<URL> bundles,
+        ImmutableList<ResourceInfo> legacyRules) {
+      this.transformers = transformers;
+      this.bundles = bundles;
+      this.legacyRules = legacyRules;
+    }
+
+    /**
+     * Computes a hash of the serialized form of the rules in this set, without locating them anew.
+     */
+    HashCode fingerprint() {
+      Hasher hasher = Hashing.sha256().newHasher();
+      try {
+        for (URL bundle : bundles) {
+          hasher.putBytes(Resources.toByteArray(bundle));
+        }
+        for (ResourceInfo resource : legacyRules) {
+          hasher.putString(resource.getResourceName(), UTF_8);
+          hasher.putBytes(resource.asByteSource().read());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to fingerprint Refaster rules", e);
+      }
+      return hasher.hash();
     }
   }
 }
@@ -0,0 +1,122 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableClassToInstanceMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.DescriptionListener;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.util.Context;
+import java.lang.annotation.Annotation;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import tech.picnic.errorprone.refaster.RefasterRuleMetadata;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+
+/**
+ * A {@link CodeTransformer} that defers loading of the {@link CodeTransformer} to which it
+ * delegates until it is first needed.
+ *
+ * <p>If {@link RefasterRuleMetadata} describing the delegate is available, then the delegate's
+ * {@link #getRequiredIdentifiers() identifier requirements} are derived from said metadata, such
+ * that the delegate is only loaded once it is applied to code that it may match. Otherwise the
+ * requirements are derived from the delegate itself, which is thus loaded as soon as its
+ * requirements are first requested.
+ */
+final class LazyCodeTransformer implements CodeTransformer {
+  private final Supplier<Optional<CodeTransformer>> delegate;
+  private final ImmutableList<RefasterRuleMetadata> metadata;
+  private final Supplier<ImmutableSet<ImmutableSet<String>>> requiredIdentifiers;
+  private final Supplier<ImmutableSet<ImmutableSet<String>>> requiredTypes;
+
+  LazyCodeTransformer(
+      Supplier<Optional<CodeTransformer>> loader,
+      Optional<ImmutableList<RefasterRuleMetadata>> metadata) {
+    this.delegate = Suppliers.memoize(loader::get);
+    this.metadata = metadata.orElseGet(ImmutableList::of);
+    this.requiredIdentifiers =
+        Suppliers.memoize(
+            () ->
+                metadata
+                    .map(
+                        rules ->
+                            rules.stream()
+                                .flatMap(rule -> rule.requiredIdentifiers().stream())
+                                .collect(toImmutableSet()))
+                    .orElseGet(() -> extractFromDelegate(RequiredIdentifiers::extract)));
+    this.requiredTypes =
+        Suppliers.memoize(
+            () ->
+                metadata
+                    .map(
+                        rules ->
+                            rules.stream()
+                                .flatMap(rule -> rule.requiredTypes().stream())
+                                .collect(toImmutableSet()))
+                    .orElseGet(() -> extractFromDelegate(RequiredIdentifiers::extractTypes)));
+  }
+
+  @Override
+  public void apply(TreePath path, Context context, DescriptionListener listener) {
+    delegate.get().ifPresent(transformer -> transformer.apply(path, context, listener));
+  }
+
+  @Override
+  public ImmutableClassToInstanceMap<Annotation> annotations() {
+    return delegate
+        .get()
+        .map(CodeTransformer::annotations)
+        .orElseGet(ImmutableClassToInstanceMap::of);
+  }
+
+  /**
+   * Returns the {@link CodeTransformer} to which this instance delegates, loading it if necessary.
+   *
+   * @return The delegate, unless it could not be loaded.
+   */
+  Optional<CodeTransformer> getDelegate() {
+    return delegate.get();
+  }
+
+  /**
+   * Returns the precomputed metadata of the rules wrapped by the delegate, if available.
+   *
+   * @return The metadata of the wrapped rules, in order; an empty list if no metadata is available.
+   */
+  ImmutableList<RefasterRuleMetadata> getMetadata() {
+    return metadata;
+  }
+
+  /**
+   * Returns the sets of identifiers, at least one of which must be fully present in a compilation
+   * unit for this {@link CodeTransformer} to possibly match it.
+   *
+   * @return A set of alternative identifier requirements; empty if this {@link CodeTransformer}
+   *     cannot match any code, including if it cannot be loaded.
+   * @see RequiredIdentifiers#extract(CodeTransformer)
+   */
+  ImmutableSet<ImmutableSet<String>> getRequiredIdentifiers() {
+    return requiredIdentifiers.get();
+  }
+
+  /**
+   * Returns the sets of fully qualified type names, at least one of which must be fully resolvable
+   * for this {@link CodeTransformer} to possibly match any code.
+   *
+   * @return A set of alternative type requirements; empty if this {@link CodeTransformer} cannot
+   *     match any code, including if it cannot be loaded.
+   * @see RequiredIdentifiers#extractTypes(CodeTransformer)
+   */
+  ImmutableSet<ImmutableSet<String>> getRequiredTypes() {
+    return requiredTypes.get();
+  }
+
+  private ImmutableSet<ImmutableSet<String>> extractFromDelegate(
+      Function<CodeTransformer, ImmutableSet<ImmutableSet<String>>> extractor) {
+    return delegate.get().map(extractor).orElseGet(ImmutableSet::of);
+  }
+}
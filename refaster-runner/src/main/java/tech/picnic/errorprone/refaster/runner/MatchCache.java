@@ -0,0 +1,486 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Comparator.reverseOrder;
+import static java.util.Map.Entry.comparingByValue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.fixes.Replacements.CoalescePolicy;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
+import com.sun.tools.javac.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A persistent cache of the Refaster rule matches found in compilation units.
+ *
+ * <p>Entries are keyed by a hash of the compilation unit's source code, a fingerprint of the
+ * applied rule set and the subset of rules that may match the compilation unit. The latter depends
+ * on the classpath, as rules that reference absent types are not applied. As such, an entry is
+ * reused only if neither the source code nor the rules considered for it changed. Note that matches
+ * may also depend on the declarations of the types referenced by the source code; changes to such
+ * declarations are <em>not</em> detected. A cache directory should therefore only be shared by
+ * builds with identical dependencies.
+ *
+ * <p>Each entry is stored in a separate file, such that concurrent builds sharing the same cache
+ * directory do not interfere. Entries that cannot be read are treated as absent. Entries that have
+ * not been accessed for some time are evicted, as are the least recently accessed entries in excess
+ * of a maximum entry count; see {@link #prune()}.
+ *
+ * <p>As the cache is merely an optimization, I/O failures never cause compilation to fail. Instead,
+ * the first such failure encountered by an instance is reported as a note, such that a
+ * misconfigured cache directory does not go unnoticed. Subsequent failures are not reported, as
+ * they likely share the same cause.
+ */
+final class MatchCache {
+  /**
+   * The version of the cache entry format. This value must be incremented on any incompatible
+   * format change.
+   */
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int DEFAULT_MAX_ENTRY_COUNT = 10_000;
+  private static final Duration DEFAULT_MAX_ENTRY_AGE = Duration.ofDays(7);
+  private static final Duration PRUNE_INTERVAL = Duration.ofHours(1);
+  private static final String ENTRY_SUFFIX = ".matches";
+  private static final String PRUNE_MARKER = ".last-pruned";
+  private static final String IMPORT_PREFIX = "import ";
+  private static final String STATIC_IMPORT_PREFIX = "import static ";
+
+  private final Path directory;
+  private final HashCode ruleSetFingerprint;
+  private final int maxEntryCount;
+  private final Duration maxEntryAge;
+  private final Clock clock;
+  private final AtomicBoolean pruneConsidered = new AtomicBoolean();
+  private final AtomicBoolean failureReported = new AtomicBoolean();
+
+  /**
+   * Creates a cache backed by the given directory, which retains at most 10,000 entries, each for
+   * at most a week after it was last accessed.
+   *
+   * @param directory The directory in which to store cache entries; created if absent.
+   * @param ruleSetFingerprint A fingerprint of the applied rule set, and any configuration that
+   *     influences the rule matches found.
+   */
+  @SuppressWarnings("TimeZoneUsage" /* Error Prone offers no clock to derive the time from. */)
+  MatchCache(Path directory, HashCode ruleSetFingerprint) {
+    this(
+        directory,
+        ruleSetFingerprint,
+        DEFAULT_MAX_ENTRY_COUNT,
+        DEFAULT_MAX_ENTRY_AGE,
+        Clock.systemUTC());
+  }
+
+  /**
+   * Creates a cache backed by the given directory.
+   *
+   * @param directory The directory in which to store cache entries; created if absent.
+   * @param ruleSetFingerprint A fingerprint of the applied rule set, and any configuration that
+   *     influences the rule matches found.
+   * @param maxEntryCount The maximum number of entries retained by {@link #prune()}.
+   * @param maxEntryAge The maximum time since their last access for which entries are retained by
+   *     {@link #prune()}.
+   * @param clock The clock by which to record and evaluate the time at which entries are accessed.
+   */
+  @VisibleForTesting
+  MatchCache(
+      Path directory,
+      HashCode ruleSetFingerprint,
+      int maxEntryCount,
+      Duration maxEntryAge,
+      Clock clock) {
+    this.directory = directory;
+    this.ruleSetFingerprint = ruleSetFingerprint;
+    this.maxEntryCount = maxEntryCount;
+    this.maxEntryAge = maxEntryAge;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the key identifying the cache entry for the given source code.
+   *
+   * @param sourceCode The source code of the compilation unit of interest.
+   * @param candidateRules The indices of the rules that may match the compilation unit, given the
+   *     identifiers it contains and the types available on the classpath.
+   * @param options The options of the compilation of which the compilation unit is part; these
+   *     influence the severity of reported matches.
+   * @return A non-{@code null} cache key.
+   */
+  HashCode getKey(CharSequence sourceCode, BitSet candidateRules, ErrorProneOptions options) {
+    byte[] candidateRuleBytes = candidateRules.toByteArray();
+    return Hashing.sha256()
+        .newHasher()
+        .putInt(FORMAT_VERSION)
+        .putBytes(ruleSetFingerprint.asBytes())
+        .putInt(candidateRuleBytes.length)
+        .putBytes(candidateRuleBytes)
+        .putBoolean(options.isSuggestionsAsWarnings())
+        .putBoolean(options.isDropErrorsToWarnings())
+        .putString(sourceCode, UTF_8)
+        .hash();
+  }
+
+  /**
+   * Returns the matches stored under the given key, if any, and marks the associated entry as
+   * recently accessed.
+   *
+   * @param key The key of interest.
+   * @param log The log to which to report the first failure to access the cache.
+   * @return The cached matches, if any.
+   */
+  @SuppressWarnings({
+    "java:S1166" /* An absent entry is simply computed. */,
+    "key-to-resolve-AnnotationUseStyle-and-TrailingComment-check-conflict"
+  })
+  Optional<ImmutableList<Description>> get(HashCode key, Log log) {
+    Path path = getPath(key);
+    ImmutableList<Description> matches;
+    try {
+      matches = readEntry(new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path))));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException | IllegalArgumentException e) {
+      reportFailure(log, "read entry " + path, e);
+      return Optional.empty();
+    }
+
+    try {
+      Files.setLastModifiedTime(path, FileTime.from(clock.instant()));
+    } catch (IOException e) {
+      reportFailure(log, "mark entry " + path + " as accessed", e);
+    }
+    return Optional.of(matches);
+  }
+
+  /**
+   * Stores the given matches under the given key.
+   *
+   * <p>Failure to store the matches is not considered an error, as the cache is merely an
+   * optimization. The first invocation of this method on a given instance additionally {@link
+   * #prune() prunes} the cache, unless another build did so recently.
+   *
+   * @param key The key under which to store the matches.
+   * @param matches The matches to store.
+   * @param endPositions The end positions of the compilation unit in which the matches were found.
+   * @param log The log to which to report the first failure to access the cache.
+   */
+  void put(HashCode key, List<Description> matches, EndPosTable endPositions, Log log) {
+    try {
+      Files.createDirectories(directory);
+      Path tempFile = Files.createTempFile(directory, key.toString(), ".tmp");
+      try {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+          writeEntry(new DataOutputStream(out), matches, endPositions);
+        }
+        Files.move(tempFile, getPath(key), ATOMIC_MOVE, REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+      if (!pruneConsidered.getAndSet(true) && isPruneDue()) {
+        prune();
+      }
+    } catch (IOException e) {
+      reportFailure(log, "update cache directory " + directory, e);
+    }
+  }
+
+  private void reportFailure(Log log, String action, Exception failure) {
+    if (!failureReported.getAndSet(true)) {
+      log.printRawLines(
+          Log.WriterKind.NOTICE,
+          String.format(
+              "Note: Refaster match cache failed to %s: %s; subsequent failures are not reported",
+              action, failure));
+    }
+  }
+
+  /**
+   * Removes the entries that have not been accessed within the maximum entry age, as well as the
+   * least recently accessed entries in excess of the maximum entry count.
+   *
+   * <p>As other builds may concurrently access the same cache directory, failure to remove an entry
+   * is not considered an error.
+   *
+   * @throws IOException If the cache directory cannot be listed.
+   */
+  @VisibleForTesting
+  void prune() throws IOException {
+    List<Map.Entry<Path, Instant>> accessTimes = new ArrayList<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, '*' + ENTRY_SUFFIX)) {
+      for (Path entry : entries) {
+        getLastModifiedTime(entry).ifPresent(time -> accessTimes.add(Map.entry(entry, time)));
+      }
+    }
+
+    Instant cutoff = clock.instant().minus(maxEntryAge);
+    accessTimes.sort(comparingByValue(reverseOrder()));
+    for (int i = 0; i < accessTimes.size(); i++) {
+      Map.Entry<Path, Instant> entry = accessTimes.get(i);
+      if (i >= maxEntryCount || entry.getValue().isBefore(cutoff)) {
+        deleteIfExists(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Tells whether the cache was last pruned more than {@link #PRUNE_INTERVAL} ago, and if so,
+   * records that it is pruned now. This way concurrent and subsequent builds do not each list the
+   * full cache directory.
+   */
+  private boolean isPruneDue() throws IOException {
+    Path marker = directory.resolve(PRUNE_MARKER);
+    Instant threshold = clock.instant().minus(PRUNE_INTERVAL);
+    if (getLastModifiedTime(marker).filter(threshold::isBefore).isPresent()) {
+      return false;
+    }
+
+    Files.write(marker, new byte[0]);
+    return true;
+  }
+
+  @SuppressWarnings({
+    "java:S1166" /* An entry removed by a concurrent build is simply skipped. */,
+    "key-to-resolve-AnnotationUseStyle-and-TrailingComment-check-conflict"
+  })
+  private static Optional<Instant> getLastModifiedTime(Path path) {
+    try {
+      return Optional.of(Files.getLastModifiedTime(path).toInstant());
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  @SuppressWarnings({
+    "java:S1166" /* An entry that is in use elsewhere may be removed by a later build. */,
+    "key-to-resolve-AnnotationUseStyle-and-TrailingComment-check-conflict"
+  })
+  private static void deleteIfExists(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      /* As documented by `#prune()`, this is not considered an error. */
+    }
+  }
+
+  private Path getPath(HashCode key) {
+    return directory.resolve(key + ENTRY_SUFFIX);
+  }
+
+  private static void writeEntry(
+      DataOutputStream out, List<Description> matches, EndPosTable endPositions)
+      throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeInt(matches.size());
+    for (Description match : matches) {
+      out.writeInt(match.position.getStartPosition());
+      out.writeInt(match.position.getPreferredPosition());
+      out.writeInt(match.position.getEndPosition(endPositions));
+      out.writeUTF(match.checkName);
+      writeNullableString(out, match.getLink());
+      out.writeUTF(match.getRawMessage());
+      out.writeUTF(match.severity().name());
+      out.writeInt(match.fixes.size());
+      for (Fix fix : match.fixes) {
+        writeFix(out, fix, endPositions);
+      }
+    }
+  }
+
+  private static void writeFix(DataOutputStream out, Fix fix, EndPosTable endPositions)
+      throws IOException {
+    out.writeUTF(fix.getShortDescription());
+    out.writeUTF(fix.getCoalescePolicy().name());
+    ImmutableList<Replacement> replacements = fix.getReplacements(endPositions).asList();
+    out.writeInt(replacements.size());
+    for (Replacement replacement : replacements) {
+      out.writeInt(replacement.startPosition());
+      out.writeInt(replacement.endPosition());
+      writeString(out, replacement.replaceWith());
+    }
+    writeStrings(out, fix.getImportsToAdd().asList());
+    writeStrings(out, fix.getImportsToRemove().asList());
+  }
+
+  @SuppressWarnings("RestrictedApi" /* We reconstruct previously reported `Description`s here. */)
+  private static ImmutableList<Description> readEntry(DataInputStream in) throws IOException {
+    if (in.readInt() != FORMAT_VERSION) {
+      throw new IOException("Unsupported cache entry format");
+    }
+
+    int matchCount = readCount(in);
+    ImmutableList.Builder<Description> matches = ImmutableList.builderWithExpectedSize(matchCount);
+    for (int i = 0; i < matchCount; i++) {
+      DiagnosticPosition position = new CachedPosition(in.readInt(), in.readInt(), in.readInt());
+      String checkName = in.readUTF();
+      String link = readNullableString(in);
+      String message = in.readUTF();
+      SeverityLevel severity = SeverityLevel.valueOf(in.readUTF());
+      Description.Builder description =
+          Description.builder(position, checkName, link, message).overrideSeverity(severity);
+      int fixCount = readCount(in);
+      for (int j = 0; j < fixCount; j++) {
+        description.addFix(readFix(in));
+      }
+      matches.add(description.build());
+    }
+    return matches.build();
+  }
+
+  @SuppressWarnings(
+      "UnqualifiedSuggestedFixImport" /* The imports of the cached fix are restored verbatim. */)
+  private static Fix readFix(DataInputStream in) throws IOException {
+    SuggestedFix.Builder fix =
+        SuggestedFix.builder()
+            .setShortDescription(in.readUTF())
+            .setCoalescePolicy(CoalescePolicy.valueOf(in.readUTF()));
+    int replacementCount = readCount(in);
+    for (int i = 0; i < replacementCount; i++) {
+      fix.replace(in.readInt(), in.readInt(), readString(in));
+    }
+    for (String importToAdd : readStrings(in)) {
+      if (importToAdd.startsWith(STATIC_IMPORT_PREFIX)) {
+        fix.addStaticImport(importToAdd.substring(STATIC_IMPORT_PREFIX.length()));
+      } else {
+        fix.addImport(getImportedName(importToAdd));
+      }
+    }
+    for (String importToRemove : readStrings(in)) {
+      if (importToRemove.startsWith(STATIC_IMPORT_PREFIX)) {
+        fix.removeStaticImport(importToRemove.substring(STATIC_IMPORT_PREFIX.length()));
+      } else {
+        fix.removeImport(getImportedName(importToRemove));
+      }
+    }
+    return fix.build();
+  }
+
+  private static String getImportedName(String importStatement) throws IOException {
+    if (!importStatement.startsWith(IMPORT_PREFIX)) {
+      throw new IOException("Malformed import in cache entry");
+    }
+    return importStatement.substring(IMPORT_PREFIX.length());
+  }
+
+  /**
+   * Reads the number of elements or bytes that follow. As each of these occupies at least one byte,
+   * a corrupt count is detected before it causes an excessive allocation.
+   */
+  private static int readCount(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > in.available()) {
+      throw new IOException("Corrupt cache entry");
+    }
+    return count;
+  }
+
+  /**
+   * Writes the given string. Unlike {@link DataOutputStream#writeUTF(String)}, this method supports
+   * strings of arbitrary length, as replacement code may be large.
+   */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readCount(in)];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static void writeNullableString(DataOutputStream out, @Nullable String value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      writeString(out, value);
+    }
+  }
+
+  private static @Nullable String readNullableString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? readString(in) : null;
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private static ImmutableList<String> readStrings(DataInputStream in) throws IOException {
+    int count = readCount(in);
+    ImmutableList.Builder<String> values = ImmutableList.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readString(in));
+    }
+    return values.build();
+  }
+
+  /** A {@link DiagnosticPosition} restored from a cache entry. */
+  private static final class CachedPosition implements DiagnosticPosition {
+    private final int startPosition;
+    private final int preferredPosition;
+    private final int endPosition;
+
+    CachedPosition(int startPosition, int preferredPosition, int endPosition) {
+      this.startPosition = startPosition;
+      this.preferredPosition = preferredPosition;
+      this.endPosition = endPosition;
+    }
+
+    @Override
+    public @Nullable JCTree getTree() {
+      return null;
+    }
+
+    @Override
+    public int getStartPosition() {
+      return startPosition;
+    }
+
+    @Override
+    public int getPreferredPosition() {
+      return preferredPosition;
+    }
+
+    @Override
+    public int getEndPosition(EndPosTable endPosTable) {
+      return endPosition;
+    }
+  }
+}
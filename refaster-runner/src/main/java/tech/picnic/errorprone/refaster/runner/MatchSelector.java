@@ -0,0 +1,177 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.util.Comparator.comparingInt;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.Var;
+import com.google.errorprone.fixes.Fix;
+import com.google.errorprone.fixes.Replacement;
+import com.google.errorprone.matchers.Description;
+import com.sun.tools.javac.tree.EndPosTable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Utility class that selects a subset of {@link Description}s, such that no two selected
+ * descriptions suggest a replacement of the same part of the source code.
+ *
+ * <p>In case of overlap the description that replaces the largest piece of source code is
+ * preferred. In case two descriptions wish to replace exactly the same piece of code, preference is
+ * given to the description that suggests the shortest replacement. Descriptions that are equally
+ * preferable are considered in their original order.
+ *
+ * <p>The replacements suggested by each description are computed only once, and the source sections
+ * replaced by selected descriptions are tracked using an interval index, such that selection is
+ * efficient also in the face of many matches.
+ */
+// XXX: This selection logic solves an issue described in
+// https://github.com/google/error-prone/issues/559. Consider contributing it back upstream.
+final class MatchSelector {
+  private static final Comparator<Candidate> PREFERENCE_ORDER =
+      Comparator.<Candidate>comparingInt(c -> c.replacedCodeSize)
+          .reversed()
+          .thenComparingInt(c -> c.insertedCodeSize);
+
+  private MatchSelector() {}
+
+  /**
+   * Returns the subset of the given descriptions whose suggested replacements do not overlap.
+   *
+   * @param descriptions The descriptions from which to select.
+   * @param endPositions The end positions of the compilation unit to which the descriptions apply.
+   * @return The selected descriptions, in order of preference.
+   */
+  static ImmutableList<Description> select(
+      Iterable<Description> descriptions, EndPosTable endPositions) {
+    List<Candidate> candidates = new ArrayList<>();
+    for (Description description : descriptions) {
+      candidates.add(Candidate.create(description, endPositions));
+    }
+    /* `List#sort` is stable, so equally preferable candidates retain their relative order. */
+    candidates.sort(PREFERENCE_ORDER);
+
+    ReplacedSections replacedSections = new ReplacedSections();
+    ImmutableList.Builder<Description> selection = ImmutableList.builder();
+    for (Candidate candidate : candidates) {
+      if (!replacedSections.overlapsAny(candidate.sections)) {
+        /*
+         * This suggested fix does not overlap with any ("larger") replacement seen until now, so
+         * select it.
+         */
+        selection.add(candidate.description);
+        replacedSections.addAll(candidate.sections);
+      }
+    }
+    return selection.build();
+  }
+
+  /** A {@link Description} along with the properties of its suggested replacements. */
+  private static final class Candidate {
+    private final Description description;
+    private final int replacedCodeSize;
+    // XXX: It might be nicer to prefer the shortest replacement _post formatting_.
+    private final int insertedCodeSize;
+    private final ImmutableList<Section> sections;
+
+    private Candidate(
+        Description description,
+        int replacedCodeSize,
+        int insertedCodeSize,
+        ImmutableList<Section> sections) {
+      this.description = description;
+      this.replacedCodeSize = replacedCodeSize;
+      this.insertedCodeSize = insertedCodeSize;
+      this.sections = sections;
+    }
+
+    static Candidate create(Description description, EndPosTable endPositions) {
+      @Var int replacedCodeSize = 0;
+      @Var int insertedCodeSize = 0;
+      List<Section> sections = new ArrayList<>();
+      for (Fix fix : description.fixes) {
+        for (Replacement replacement : fix.getReplacements(endPositions)) {
+          replacedCodeSize += replacement.length();
+          insertedCodeSize += replacement.replaceWith().length();
+          if (replacement.length() > 0) {
+            /* Pure insertions do not conflict with other replacements. */
+            sections.add(new Section(replacement.startPosition(), replacement.endPosition()));
+          }
+        }
+      }
+
+      return new Candidate(
+          description, replacedCodeSize, insertedCodeSize, Section.coalesce(sections));
+    }
+  }
+
+  /** A non-empty, half-open section of source code. */
+  private static final class Section {
+    private static final Comparator<Section> BY_START = comparingInt(s -> s.start);
+
+    private final int start;
+    private final int end;
+
+    Section(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    /** Returns the minimal list of disjoint sections, ordered by position, covering the input. */
+    static ImmutableList<Section> coalesce(List<Section> sections) {
+      if (sections.size() < 2) {
+        return ImmutableList.copyOf(sections);
+      }
+
+      sections.sort(BY_START);
+      List<Section> coalesced = new ArrayList<>();
+      @Var Section current = sections.get(0);
+      for (Section next : sections.subList(1, sections.size())) {
+        if (next.start < current.end) {
+          current = new Section(current.start, Math.max(current.end, next.end));
+        } else {
+          coalesced.add(current);
+          current = next;
+        }
+      }
+      coalesced.add(current);
+      return ImmutableList.copyOf(coalesced);
+    }
+  }
+
+  /** An interval index of mutually disjoint {@link Section}s. */
+  private static final class ReplacedSections {
+    /* Maps the start of each section to its end. */
+    private final TreeMap<Integer, Integer> sections = new TreeMap<>();
+
+    boolean overlapsAny(List<Section> candidates) {
+      for (Section candidate : candidates) {
+        if (overlaps(candidate)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Adds the given sections, which must not overlap any of the sections already present, nor each
+     * other.
+     */
+    void addAll(List<Section> newSections) {
+      for (Section section : newSections) {
+        sections.put(section.start, section.end);
+      }
+    }
+
+    private boolean overlaps(Section candidate) {
+      /*
+       * As the indexed sections are disjoint, only the last section starting before the end of the
+       * candidate may overlap with it.
+       */
+      Map.Entry<Integer, Integer> preceding = sections.lowerEntry(candidate.end);
+      return preceding != null && preceding.getValue() > candidate.start;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.errorprone.annotations.Var;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A node in an immutable tree.
+ *
+ * <p>The tree's edges are string-labeled, while its nodes may store values of type {@code T}. Each
+ * value is reachable through one or more paths, each of which is identified by the set of edge
+ * labels that must be traversed to reach it.
+ *
+ * @param <T> The type of values stored in the tree.
+ */
+final class Node<T> {
+  private final ImmutableMap<String, Node<T>> children;
+  private final ImmutableList<T> values;
+
+  private Node(ImmutableMap<String, Node<T>> children, ImmutableList<T> values) {
+    this.children = children;
+    this.values = values;
+  }
+
+  /**
+   * Creates a tree from which the given values can be retrieved.
+   *
+   * @param <T> The type of values stored in the tree.
+   * @param values The values to be stored.
+   * @param pathExtractor A function that returns, for each value, the sets of edge labels through
+   *     which that value should be reachable.
+   * @return A non-{@code null} tree.
+   */
+  static <T> Node<T> create(
+      Iterable<T> values, Function<? super T, ? extends Set<? extends Set<String>>> pathExtractor) {
+    Builder<T> tree = new Builder<>();
+    for (T value : values) {
+      for (Set<String> path : pathExtractor.apply(value)) {
+        tree.register(ImmutableList.sortedCopyOf(path), value);
+      }
+    }
+    return tree.build();
+  }
+
+  /**
+   * Passes to the given sink all values that are reachable through a path comprised solely of the
+   * given edges.
+   *
+   * <p>Values reachable through multiple such paths are passed to the sink multiple times.
+   *
+   * @param candidateEdges The edges that may be traversed.
+   * @param sink The consumer of reachable values.
+   */
+  void collectReachableValues(Set<String> candidateEdges, Consumer<T> sink) {
+    values.forEach(sink);
+
+    /*
+     * Paths are registered with their edges in lexicographical order, so each set of edges maps to
+     * exactly one path. As such, any child not reachable through a candidate edge can be skipped.
+     */
+    for (Map.Entry<String, Node<T>> child : children.entrySet()) {
+      if (candidateEdges.contains(child.getKey())) {
+        child.getValue().collectReachableValues(candidateEdges, sink);
+      }
+    }
+  }
+
+  private static final class Builder<T> {
+    private final Map<String, Builder<T>> children = new TreeMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    private void register(ImmutableList<String> path, T value) {
+      @Var Builder<T> node = this;
+      for (String edge : path) {
+        node = node.children.computeIfAbsent(edge, k -> new Builder<>());
+      }
+      node.values.add(value);
+    }
+
+    private Node<T> build() {
+      return new Node<>(
+          ImmutableMap.copyOf(Maps.transformValues(children, Builder::build)),
+          ImmutableList.copyOf(values));
+    }
+  }
+}
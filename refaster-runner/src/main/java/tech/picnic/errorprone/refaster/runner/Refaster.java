@@ -1,27 +1,23 @@
 package tech.picnic.errorprone.refaster.runner;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableRangeSet.toImmutableRangeSet;
 import static com.google.errorprone.BugPattern.LinkType.NONE;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
 import static com.google.errorprone.BugPattern.StandardTags.SIMPLIFICATION;
-import static java.util.function.Predicate.not;
+import static java.util.Collections.newSetFromMap;
 
 import com.google.auto.service.AutoService;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ImmutableRangeSet;
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.errorprone.BugPattern;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.CodeTransformer;
-import com.google.errorprone.CompositeCodeTransformer;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.ErrorProneOptions.Severity;
 import com.google.errorprone.SubContext;
@@ -29,19 +25,27 @@ import com.google.errorprone.VisitorState;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
-import com.google.errorprone.fixes.Replacement;
 import com.google.errorprone.matchers.Description;
+import com.google.errorprone.suppliers.Supplier;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.tools.javac.tree.EndPosTable;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Log;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.inject.Inject;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.MultiRuleScanner;
+import tech.picnic.errorprone.refaster.RequiredIdentifiers;
+import tech.picnic.errorprone.utils.ThirdPartyLibrary;
 
 /**
  * A {@link BugChecker} that flags code that can be simplified using Refaster rules located on the
@@ -49,7 +53,17 @@ import javax.inject.Inject;
  *
  * <p>This checker locates all {@code *.refaster} classpath resources and assumes that they contain
  * a {@link CodeTransformer}. The set of loaded Refaster rules can be restricted by passing {@code
- * -XepOpt:Refaster:NamePattern=<someRegex>}.
+ * -XepOpt:Refaster:NamePattern=<someRegex>}, {@code
+ * -XepOpt:Refaster:ExcludedNamePattern=<someRegex>} and {@code -XepOpt:Refaster:RuleList=<path>};
+ * excluded rules are never deserialized. Per-rule profiling statistics can be collected by passing
+ * {@code -XepOpt:Refaster:Profile=<path>}, and matches can be cached across builds by passing
+ * {@code -XepOpt:Refaster:CacheDirectory=<path>}.
+ *
+ * <p>Rules are indexed by the identifiers that must be present in a compilation unit for them to
+ * match; only rules whose requirements are met are applied to a given compilation unit, and
+ * compilation units for which no such rules exist are skipped altogether. Likewise, rules that
+ * reference types absent from the classpath are not applied at all. These rules are applied using a
+ * single traversal of the compilation unit; see {@link MultiRuleScanner}.
  */
 @AutoService(BugChecker.class)
 @BugPattern(
@@ -62,10 +76,57 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
   /** Flag to pass a pattern that restricts which Refaster rules are loaded. */
   public static final String INCLUDED_RULES_PATTERN_FLAG = "Refaster:NamePattern";
 
+  /** Flag to pass a pattern that matches the names of Refaster rules that should not be loaded. */
+  public static final String EXCLUDED_RULES_PATTERN_FLAG = "Refaster:ExcludedNamePattern";
+
+  /**
+   * Flag to pass the path of a file that lists the Refaster rule collections, groups of rules or
+   * individual rules to load or, if prefixed with {@code -}, not to load. Entries are simple names,
+   * such as {@code SomeRules} or {@code SomeRules.SomeRule}, rather than fully qualified names;
+   * entries that match no rule are rejected. See {@link RuleFilter} for details.
+   */
+  public static final String RULE_LIST_FLAG = "Refaster:RuleList";
+
+  /**
+   * Flag to pass the path of a file to which per-rule and per-compilation-unit profiling statistics
+   * should be written, in JSON format. If absent, no such statistics are collected.
+   */
+  public static final String PROFILE_FLAG = "Refaster:Profile";
+
+  /**
+   * Flag to pass the path of a directory in which to persistently cache the matches found in each
+   * compilation unit. If absent, no such cache is used.
+   *
+   * <p>Cached matches are reused for compilation units whose source code is unchanged, provided
+   * that the set of loaded Refaster rules, and the subset thereof whose referenced types are
+   * available on the classpath, is unchanged as well. Changes to the declarations of other types
+   * referenced by a compilation unit are not taken into account, so a cache directory should only
+   * be shared by builds with identical dependencies. Entries that have not been used for a week are
+   * evicted, as are the least recently used entries in excess of 10,000.
+   */
+  public static final String CACHE_DIRECTORY_FLAG = "Refaster:CacheDirectory";
+
   private static final long serialVersionUID = 1L;
 
-  @SuppressWarnings({"java:S1948", "serial"} /* Concrete instance will be `Serializable`. */)
-  private final CodeTransformer codeTransformer;
+  @SuppressWarnings({"java:S1948", "serial"} /* Concrete instances will be `Serializable`. */)
+  private final ImmutableList<CodeTransformer> codeTransformers;
+
+  @SuppressWarnings("serial" /* This checker is not serialized in practice. */)
+  private final Node<CodeTransformer> ruleSelector;
+
+  @SuppressWarnings("serial" /* This checker is not serialized in practice. */)
+  private final @Nullable RefasterProfile profile;
+
+  @SuppressWarnings("serial" /* This checker is not serialized in practice. */)
+  private final @Nullable MatchCache matchCache;
+
+  @SuppressWarnings("serial" /* This checker is not serialized in practice. */)
+  private final Map<CodeTransformer, Optional<MultiRuleScanner.Rules>> preparedRules =
+      new ConcurrentHashMap<>();
+
+  @SuppressWarnings("serial" /* This checker is not serialized in practice. */)
+  private final Supplier<Set<CodeTransformer>> resolvableCodeTransformers =
+      VisitorState.memoize(this::getResolvableCodeTransformers);
 
   /** Instantiates a default {@link Refaster} instance. */
   public Refaster() {
@@ -80,52 +141,206 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
   @Inject
   @VisibleForTesting
   public Refaster(ErrorProneFlags flags) {
-    codeTransformer = createCompositeCodeTransformer(flags);
+    this(flags, createProfile(flags));
+  }
+
+  /**
+   * Instantiates a customized {@link Refaster} that records statistics in the given profile, if
+   * any, such that said profile can be shared by multiple instances.
+   *
+   * @param flags Any provided command line flags.
+   * @param profile The profile in which to record statistics, if any.
+   */
+  Refaster(ErrorProneFlags flags, Optional<RefasterProfile> profile) {
+    RuleFilter ruleFilter = RuleFilter.create(flags);
+    codeTransformers = getCodeTransformers(ruleFilter);
+    ruleSelector = Node.create(codeTransformers, Refaster::getRequiredIdentifiers);
+    this.profile = profile.orElse(null);
+    matchCache =
+        flags
+            .get(CACHE_DIRECTORY_FLAG)
+            .map(directory -> new MatchCache(Path.of(directory), getRuleSetFingerprint(ruleFilter)))
+            .orElse(null);
+  }
+
+  /**
+   * Creates the profile requested by the given flags, if any.
+   *
+   * @param flags Any provided command line flags.
+   * @return A new profile, if {@value #PROFILE_FLAG} is specified.
+   */
+  static Optional<RefasterProfile> createProfile(ErrorProneFlags flags) {
+    return flags.get(PROFILE_FLAG).map(Path::of).map(RefasterProfile::new);
   }
 
   @CanIgnoreReturnValue
   @Override
   public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
-    /* First, collect all matches. */
-    List<Description> matches = new ArrayList<>();
-    codeTransformer.apply(state.getPath(), new SubContext(state.context), matches::add);
+    MultiRuleScanner.@Nullable Profiler profiler =
+        profile == null ? null : profile.startCompilationUnit(tree, state.context);
+
+    /*
+     * First, determine which rules may match. Compilation units such as `package-info.java` files
+     * and simple data classes are often matched by none, in which case they need not be analyzed
+     * any further.
+     */
+    Set<CodeTransformer> candidateTransformers = getCandidateCodeTransformers(tree, state);
+    if (candidateTransformers.isEmpty()) {
+      return Description.NO_MATCH;
+    }
 
-    /* Then apply them. */
-    applyMatches(matches, ((JCCompilationUnit) tree).endPositions, state);
+    /* Then, collect all matches. */
+    EndPosTable endPositions = ((JCCompilationUnit) tree).endPositions;
+    List<Description> matches =
+        matchCache == null
+            ? findMatches(candidateTransformers, state, profiler)
+            : getOrFindMatches(candidateTransformers, state, endPositions, matchCache, profiler);
+
+    /* Finally, apply them. */
+    applyMatches(matches, endPositions, state);
 
     /* Any matches were already reported by the code above, directly to the `VisitorState`. */
     return Description.NO_MATCH;
   }
 
+  /**
+   * Returns the matches found in the given compilation unit, preferably as previously stored in the
+   * given cache.
+   */
+  private List<Description> getOrFindMatches(
+      Set<CodeTransformer> candidateTransformers,
+      VisitorState state,
+      EndPosTable endPositions,
+      MatchCache cache,
+      MultiRuleScanner.@Nullable Profiler profiler) {
+    CharSequence sourceCode = state.getSourceCode();
+    if (sourceCode == null) {
+      return findMatches(candidateTransformers, state, profiler);
+    }
+
+    HashCode key =
+        cache.getKey(sourceCode, getIndices(candidateTransformers), state.errorProneOptions());
+    Log log = Log.instance(state.context);
+    Optional<ImmutableList<Description>> cachedMatches = cache.get(key, log);
+    if (cachedMatches.isPresent()) {
+      return cachedMatches.orElseThrow();
+    }
+
+    List<Description> matches = findMatches(candidateTransformers, state, profiler);
+    cache.put(key, matches, endPositions, log);
+    return matches;
+  }
+
+  /**
+   * Returns the positions of the given {@link CodeTransformer}s in {@link #codeTransformers}, which
+   * identify them within the loaded rule set.
+   */
+  private BitSet getIndices(Set<CodeTransformer> transformers) {
+    BitSet indices = new BitSet(codeTransformers.size());
+    for (int i = 0; i < codeTransformers.size(); i++) {
+      if (transformers.contains(codeTransformers.get(i))) {
+        indices.set(i);
+      }
+    }
+    return indices;
+  }
+
+  /**
+   * Collects all matches of the given {@link CodeTransformer}s in the current compilation unit,
+   * using a single traversal, reporting statistics to the given profiler, if any.
+   */
+  private List<Description> findMatches(
+      Set<CodeTransformer> candidateTransformers,
+      VisitorState state,
+      MultiRuleScanner.@Nullable Profiler profiler) {
+    List<MultiRuleScanner.Rules> candidateRules = new ArrayList<>();
+    for (CodeTransformer transformer : codeTransformers) {
+      if (candidateTransformers.contains(transformer)) {
+        getPreparedRules(transformer).ifPresent(candidateRules::add);
+      }
+    }
+
+    List<Description> matches = new ArrayList<>();
+    if (!candidateRules.isEmpty()) {
+      MultiRuleScanner.scan(
+          candidateRules, state.getPath(), new SubContext(state.context), matches::add, profiler);
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the subset of {@link CodeTransformer}s that may match the given compilation unit, based
+   * on the identifiers it contains and the types available on the classpath.
+   */
+  private Set<CodeTransformer> getCandidateCodeTransformers(
+      CompilationUnitTree tree, VisitorState state) {
+    ImmutableSet<String> sourceIdentifiers = RequiredIdentifiers.collect(tree);
+    Set<CodeTransformer> candidateTransformers = newSetFromMap(new IdentityHashMap<>());
+    ruleSelector.collectReachableValues(sourceIdentifiers, candidateTransformers::add);
+    candidateTransformers.retainAll(resolvableCodeTransformers.get(state));
+    return candidateTransformers;
+  }
+
+  /**
+   * Returns the subset of {@link CodeTransformer}s whose type requirements are met by the classpath
+   * of the current compilation.
+   *
+   * <p>Rules that reference types of libraries absent from the classpath, such as Reactor or
+   * TestNG, cannot match any code. As the classpath does not change during a compilation, this
+   * result is computed only once per compilation, with each referenced type looked up at most once.
+   */
+  private Set<CodeTransformer> getResolvableCodeTransformers(VisitorState state) {
+    Map<String, Boolean> resolvableTypes = new HashMap<>();
+    Set<CodeTransformer> resolvableTransformers = newSetFromMap(new IdentityHashMap<>());
+    for (CodeTransformer transformer : codeTransformers) {
+      if (getRequiredTypes(transformer).stream()
+          .anyMatch(
+              types ->
+                  types.stream()
+                      .allMatch(
+                          type ->
+                              resolvableTypes.computeIfAbsent(
+                                  type, t -> ThirdPartyLibrary.canIntroduceUsage(t, state))))) {
+        resolvableTransformers.add(transformer);
+      }
+    }
+    return resolvableTransformers;
+  }
+
+  private Optional<MultiRuleScanner.Rules> getPreparedRules(CodeTransformer codeTransformer) {
+    return preparedRules.computeIfAbsent(codeTransformer, Refaster::prepareRules);
+  }
+
+  private static Optional<MultiRuleScanner.Rules> prepareRules(CodeTransformer codeTransformer) {
+    return CodeTransformers.resolve(codeTransformer)
+        .map(
+            transformer ->
+                MultiRuleScanner.prepare(
+                    transformer, CodeTransformers.getMetadata(codeTransformer)));
+  }
+
   /**
    * Reports a subset of the given matches, such that no two reported matches suggest a replacement
    * of the same part of the source code.
    *
-   * <p>In the common case all matches will be reported. In case of overlap the match that replaces
-   * the largest piece of source code is preferred. In case two matches wish to replace exactly the
-   * same piece of code, preference is given to the match that suggests the shortest replacement.
+   * <p>In the common case all matches will be reported. See {@link MatchSelector} for how overlap
+   * is resolved.
    */
-  // XXX: This selection logic solves an issue described in
-  // https://github.com/google/error-prone/issues/559. Consider contributing it back upstream.
   private void applyMatches(
-      Iterable<Description> allMatches, EndPosTable endPositions, VisitorState state) {
-    ImmutableList<Description> byReplacementSize =
-        ImmutableList.sortedCopyOf(
-            Comparator.<Description>comparingInt(d -> getReplacedCodeSize(d, endPositions))
-                .reversed()
-                .thenComparingInt(d -> getInsertedCodeSize(d, endPositions)),
-            allMatches);
-
-    RangeSet<Integer> replacedSections = TreeRangeSet.create();
-    for (Description description : byReplacementSize) {
-      ImmutableRangeSet<Integer> ranges = getReplacementRanges(description, endPositions);
-      if (ranges.asRanges().stream().noneMatch(replacedSections::intersects)) {
-        /*
-         * This suggested fix does not overlap with any ("larger") replacement seen until now, so
-         * apply it.
-         */
-        state.reportMatch(augmentDescription(description, getSeverityOverride(state)));
-        replacedSections.addAll(ranges);
+      List<Description> allMatches, EndPosTable endPositions, VisitorState state) {
+    Optional<SeverityLevel> severityOverride = getSeverityOverride(state);
+    ImmutableList<Description> selection = MatchSelector.select(allMatches, endPositions);
+    for (Description description : selection) {
+      state.reportMatch(augmentDescription(description, severityOverride));
+    }
+
+    if (profile != null && selection.size() < allMatches.size()) {
+      Set<Description> selected = newSetFromMap(new IdentityHashMap<>());
+      selected.addAll(selection);
+      for (Description description : allMatches) {
+        if (!selected.contains(description)) {
+          profile.recordDroppedFix(description.checkName);
+        }
       }
     }
   }
@@ -171,44 +386,43 @@ public final class Refaster extends BugChecker implements CompilationUnitTreeMat
         .build();
   }
 
-  private static int getReplacedCodeSize(Description description, EndPosTable endPositions) {
-    return getReplacements(description, endPositions).mapToInt(Replacement::length).sum();
+  private static ImmutableSet<ImmutableSet<String>> getRequiredTypes(
+      CodeTransformer codeTransformer) {
+    return codeTransformer instanceof LazyCodeTransformer lazyCodeTransformer
+        ? lazyCodeTransformer.getRequiredTypes()
+        : RequiredIdentifiers.extractTypes(codeTransformer);
   }
 
-  // XXX: It might be nicer to prefer the shortest replacement _post formatting_.
-  private static int getInsertedCodeSize(Description description, EndPosTable endPositions) {
-    return getReplacements(description, endPositions).mapToInt(r -> r.replaceWith().length()).sum();
+  private static ImmutableSet<ImmutableSet<String>> getRequiredIdentifiers(
+      CodeTransformer codeTransformer) {
+    return codeTransformer instanceof LazyCodeTransformer lazyCodeTransformer
+        ? lazyCodeTransformer.getRequiredIdentifiers()
+        : RequiredIdentifiers.extract(codeTransformer);
   }
 
-  private static ImmutableRangeSet<Integer> getReplacementRanges(
-      Description description, EndPosTable endPositions) {
-    return getReplacements(description, endPositions)
-        .map(Replacement::range)
-        .filter(not(Range::isEmpty))
-        .collect(toImmutableRangeSet());
-  }
-
-  private static Stream<Replacement> getReplacements(
-      Description description, EndPosTable endPositions) {
-    return description.fixes.stream().flatMap(fix -> fix.getReplacements(endPositions).stream());
-  }
-
-  private static CodeTransformer createCompositeCodeTransformer(ErrorProneFlags flags) {
-    ImmutableListMultimap<String, CodeTransformer> allTransformers =
-        CodeTransformers.getAllCodeTransformers();
-    return CompositeCodeTransformer.compose(
-        flags
-            .get(INCLUDED_RULES_PATTERN_FLAG)
-            .map(Pattern::compile)
-            .<ImmutableCollection<CodeTransformer>>map(
-                nameFilter -> filterCodeTransformers(allTransformers, nameFilter))
-            .orElseGet(allTransformers::values));
+  /**
+   * Returns a fingerprint of the rules loaded given the specified filter.
+   *
+   * <p>Besides the rules on the classpath, this fingerprint covers the configuration of the filter
+   * that restricts which of those rules are loaded.
+   */
+  private static HashCode getRuleSetFingerprint(RuleFilter ruleFilter) {
+    Hasher hasher =
+        Hashing.sha256().newHasher().putBytes(CodeTransformers.getRuleSetFingerprint().asBytes());
+    ruleFilter.putFingerprint(hasher);
+    return hasher.hash();
   }
 
-  private static ImmutableList<CodeTransformer> filterCodeTransformers(
-      ImmutableListMultimap<String, CodeTransformer> transformers, Pattern nameFilter) {
-    return transformers.entries().stream()
-        .filter(e -> nameFilter.matcher(e.getKey()).matches())
+  /**
+   * Returns the rules selected by the given filter.
+   *
+   * <p>As {@link CodeTransformers} deserializes each rule only once first used, rules that are not
+   * selected are never deserialized.
+   */
+  private static ImmutableList<CodeTransformer> getCodeTransformers(RuleFilter ruleFilter) {
+    ruleFilter.checkRuleListEntries(CodeTransformers.getAllCodeTransformers().keySet());
+    return CodeTransformers.getAllCodeTransformers().entries().stream()
+        .filter(e -> ruleFilter.isSelected(e.getKey()))
         .map(Map.Entry::getValue)
         .collect(toImmutableList());
   }
@@ -0,0 +1,329 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.newSetFromMap;
+import static java.util.Comparator.comparingLong;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import tech.picnic.errorprone.refaster.MultiRuleScanner;
+
+/**
+ * Per-rule statistics on the application of Refaster rules by the {@link Refaster} bug checker.
+ *
+ * <p>Besides measured statistics, the {@link
+ * tech.picnic.errorprone.refaster.RefasterRuleMetadata#estimatedCost() estimated cost} computed for
+ * each rule at compile time is reported, such that estimates and measurements can be compared.
+ * Statistics are accumulated across compilation units, and are additionally reported per
+ * compilation unit, such that source files that are expensive to analyze can be identified. Upon
+ * completion of each compilation in which this profile is used, the totals collected so far are
+ * written to a file in JSON format. Besides javac, {@link AnalyzedCompilation#close()} signals such
+ * completion.
+ *
+ * <p>A single profile may be shared by compilations that run concurrently, as is the case for
+ * {@link BatchRefactorer}.
+ */
+final class RefasterProfile implements MultiRuleScanner.Profiler {
+  private static final Comparator<RuleSummary> RULES_BY_WALL_TIME =
+      comparingLong(RuleSummary::wallTimeNanos).reversed().thenComparing(RuleSummary::name);
+  private static final Comparator<CompilationUnitSummary> COMPILATION_UNITS_BY_WALL_TIME =
+      comparingLong(CompilationUnitSummary::wallTimeNanos)
+          .reversed()
+          .thenComparing(CompilationUnitSummary::name);
+  private static final String INDENTATION = "  ";
+
+  private final Path outputFile;
+  private final Map<String, RuleStatistics> ruleStatistics = new ConcurrentHashMap<>();
+  private final Queue<CompilationUnitStatistics> compilationUnitStatistics =
+      new ConcurrentLinkedQueue<>();
+  private final Set<Context> compilations = newSetFromMap(new WeakHashMap<>());
+
+  RefasterProfile(Path outputFile) {
+    this.outputFile = outputFile;
+  }
+
+  /**
+   * Records the start of the analysis of the given compilation unit, which is part of the
+   * compilation associated with the given context.
+   *
+   * <p>Upon first invocation for a given compilation, this method arranges for the collected
+   * statistics to be written once said compilation completes.
+   *
+   * @return A {@link MultiRuleScanner.Profiler} that attributes the rule applications reported to
+   *     it to both the applied rule and the given compilation unit.
+   */
+  MultiRuleScanner.Profiler startCompilationUnit(
+      CompilationUnitTree compilationUnit, Context context) {
+    CompilationUnitStatistics statistics =
+        new CompilationUnitStatistics(compilationUnit.getSourceFile().getName());
+    compilationUnitStatistics.add(statistics);
+    synchronized (compilations) {
+      if (compilations.add(context)) {
+        MultiTaskListener.instance(context).add(new ProfileWriter());
+      }
+    }
+    return statistics;
+  }
+
+  @Override
+  public void onRuleApplied(
+      String ruleName, int estimatedCost, long wallTimeNanos, int matchAttempts, int matches) {
+    getStatistics(ruleName).recordApplication(estimatedCost, wallTimeNanos, matchAttempts, matches);
+  }
+
+  /** Records that a match of the rule with the given name was not applied due to overlap. */
+  void recordDroppedFix(String ruleName) {
+    getStatistics(ruleName).recordDroppedFix();
+  }
+
+  private RuleStatistics getStatistics(String ruleName) {
+    return ruleStatistics.computeIfAbsent(ruleName, k -> new RuleStatistics());
+  }
+
+  /**
+   * Writes the statistics collected so far to the output file.
+   *
+   * <p>Concurrent invocations are serialized, such that the output file reflects the statistics
+   * collected up to the last invocation.
+   */
+  synchronized void write() {
+    ImmutableMap<String, Object> profile =
+        ImmutableMap.of(
+            "compilationUnits",
+            compilationUnitStatistics.stream()
+                .map(CompilationUnitStatistics::summarize)
+                .sorted(COMPILATION_UNITS_BY_WALL_TIME)
+                .map(CompilationUnitSummary::toJson)
+                .collect(toImmutableList()),
+            "rules",
+            ruleStatistics.entrySet().stream()
+                .map(e -> e.getValue().summarize(e.getKey()))
+                .sorted(RULES_BY_WALL_TIME)
+                .map(RuleSummary::toJson)
+                .collect(toImmutableList()));
+
+    try {
+      Files.writeString(outputFile, toJson(profile), UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Failed to write Refaster profile to '%s'", outputFile), e);
+    }
+  }
+
+  /**
+   * Renders the given value in indented JSON format.
+   *
+   * <p>This minimal renderer supports only the types of values that make up a profile: maps with
+   * string keys, collections, numbers and strings. It avoids a dependency on a JSON library, which
+   * would otherwise be added to the annotation processor path of every compilation.
+   *
+   * @param value The value to render.
+   * @return A non-{@code null} JSON document, terminated by a newline.
+   */
+  @VisibleForTesting
+  static String toJson(Object value) {
+    StringBuilder json = new StringBuilder();
+    appendJson(json, value, "");
+    return json.append('\n').toString();
+  }
+
+  private static void appendJson(StringBuilder json, Object value, String indentation) {
+    if (value instanceof Map<?, ?> map) {
+      appendJson(json, '{', map.entrySet(), '}', indentation);
+    } else if (value instanceof Map.Entry<?, ?> entry) {
+      appendString(json, (String) entry.getKey());
+      json.append(": ");
+      appendJson(json, entry.getValue(), indentation);
+    } else if (value instanceof Collection<?> collection) {
+      appendJson(json, '[', collection, ']', indentation);
+    } else if (value instanceof Number) {
+      json.append(value);
+    } else {
+      appendString(json, (String) value);
+    }
+  }
+
+  private static void appendJson(
+      StringBuilder json, char open, Collection<?> elements, char close, String indentation) {
+    json.append(open);
+    String elementIndentation = indentation + INDENTATION;
+    for (Iterator<?> it = elements.iterator(); it.hasNext(); ) {
+      json.append('\n').append(elementIndentation);
+      appendJson(json, it.next(), elementIndentation);
+      if (it.hasNext()) {
+        json.append(',');
+      }
+    }
+    if (!elements.isEmpty()) {
+      json.append('\n').append(indentation);
+    }
+    json.append(close);
+  }
+
+  private static void appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append("\\u").append(Strings.padStart(Integer.toHexString(c), 4, '0'));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+
+  /** The statistics collected for a single rule. */
+  private static final class RuleStatistics {
+    private int compilationUnits;
+    private int estimatedCost;
+    private long wallTimeNanos;
+    private long matchAttempts;
+    private long matches;
+    private long droppedFixes;
+
+    synchronized void recordApplication(int cost, long nanos, int attempts, int matchCount) {
+      compilationUnits++;
+      estimatedCost = cost;
+      wallTimeNanos += nanos;
+      matchAttempts += attempts;
+      matches += matchCount;
+    }
+
+    synchronized void recordDroppedFix() {
+      droppedFixes++;
+    }
+
+    synchronized RuleSummary summarize(String ruleName) {
+      return new AutoValue_RefasterProfile_RuleSummary(
+          ruleName,
+          compilationUnits,
+          estimatedCost,
+          wallTimeNanos,
+          matchAttempts,
+          matches,
+          droppedFixes);
+    }
+  }
+
+  /** The statistics collected for a single compilation unit. */
+  private final class CompilationUnitStatistics implements MultiRuleScanner.Profiler {
+    private final String name;
+    private long wallTimeNanos;
+    private long matchAttempts;
+    private long matches;
+
+    CompilationUnitStatistics(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void onRuleApplied(
+        String ruleName, int estimatedCost, long nanos, int attempts, int matchCount) {
+      RefasterProfile.this.onRuleApplied(ruleName, estimatedCost, nanos, attempts, matchCount);
+      synchronized (this) {
+        wallTimeNanos += nanos;
+        matchAttempts += attempts;
+        matches += matchCount;
+      }
+    }
+
+    synchronized CompilationUnitSummary summarize() {
+      return new AutoValue_RefasterProfile_CompilationUnitSummary(
+          name, wallTimeNanos, matchAttempts, matches);
+    }
+  }
+
+  /** A snapshot of the statistics collected for a single rule. */
+  @AutoValue
+  abstract static class RuleSummary {
+    abstract String name();
+
+    abstract int compilationUnits();
+
+    abstract int estimatedCost();
+
+    abstract long wallTimeNanos();
+
+    abstract long matchAttempts();
+
+    abstract long matches();
+
+    abstract long droppedFixes();
+
+    final ImmutableMap<String, Object> toJson() {
+      return ImmutableMap.of(
+          "name",
+          name(),
+          "compilationUnits",
+          compilationUnits(),
+          "estimatedCost",
+          estimatedCost(),
+          "wallTimeNanos",
+          wallTimeNanos(),
+          "matchAttempts",
+          matchAttempts(),
+          "matches",
+          matches(),
+          "droppedFixes",
+          droppedFixes());
+    }
+  }
+
+  /** A snapshot of the statistics collected for a single compilation unit. */
+  @AutoValue
+  abstract static class CompilationUnitSummary {
+    abstract String name();
+
+    abstract long wallTimeNanos();
+
+    abstract long matchAttempts();
+
+    abstract long matches();
+
+    final ImmutableMap<String, Object> toJson() {
+      return ImmutableMap.of(
+          "name",
+          name(),
+          "wallTimeNanos",
+          wallTimeNanos(),
+          "matchAttempts",
+          matchAttempts(),
+          "matches",
+          matches());
+    }
+  }
+
+  /** A {@link TaskListener} that writes the profile once a compilation completes. */
+  private final class ProfileWriter implements TaskListener {
+    @Override
+    public void finished(TaskEvent event) {
+      if (event.getKind() == TaskEvent.Kind.COMPILATION) {
+        write();
+      }
+    }
+  }
+}
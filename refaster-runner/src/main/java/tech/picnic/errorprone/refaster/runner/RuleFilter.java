@@ -0,0 +1,187 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static tech.picnic.errorprone.refaster.runner.Refaster.EXCLUDED_RULES_PATTERN_FLAG;
+import static tech.picnic.errorprone.refaster.runner.Refaster.INCLUDED_RULES_PATTERN_FLAG;
+import static tech.picnic.errorprone.refaster.runner.Refaster.RULE_LIST_FLAG;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.errorprone.ErrorProneFlags;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A filter on the names of Refaster rules, as configured using the flags accepted by the {@link
+ * Refaster} bug checker.
+ *
+ * <p>A rule is selected if it is included, and not excluded, by each of the following:
+ *
+ * <ul>
+ *   <li>The regular expressions passed using {@value Refaster#INCLUDED_RULES_PATTERN_FLAG} and
+ *       {@value Refaster#EXCLUDED_RULES_PATTERN_FLAG}, which must match the full rule name.
+ *   <li>The rule list file passed using {@value Refaster#RULE_LIST_FLAG}. Each non-blank line of
+ *       this file names a rule collection, a group of rules within a collection, or an individual
+ *       rule; lines prefixed with {@code -} denote exclusions, and lines starting with {@code #}
+ *       are ignored. If the file contains any inclusions, then only the named rules are selected.
+ *       Names are simple names, without a package; their components may be separated by either
+ *       {@code .} or {@code $}. Each entry must match at least one loaded rule.
+ * </ul>
+ *
+ * <p>As rules are filtered by name, excluded rules are never deserialized.
+ */
+final class RuleFilter {
+  private static final String EXCLUSION_PREFIX = "-";
+  private static final String COMMENT_PREFIX = "#";
+
+  private final Optional<Pattern> includedRulesPattern;
+  private final Optional<Pattern> excludedRulesPattern;
+  private final ImmutableSet<String> includedRules;
+  private final ImmutableSet<String> excludedRules;
+
+  private RuleFilter(
+      Optional<Pattern> includedRulesPattern,
+      Optional<Pattern> excludedRulesPattern,
+      ImmutableSet<String> includedRules,
+      ImmutableSet<String> excludedRules) {
+    this.includedRulesPattern = includedRulesPattern;
+    this.excludedRulesPattern = excludedRulesPattern;
+    this.includedRules = includedRules;
+    this.excludedRules = excludedRules;
+  }
+
+  /**
+   * Creates a {@link RuleFilter} configured by the given flags.
+   *
+   * @param flags The flags passed to the {@link Refaster} bug checker.
+   * @return A non-{@code null} rule filter.
+   * @throws UncheckedIOException If the specified rule list file cannot be read.
+   */
+  static RuleFilter create(ErrorProneFlags flags) {
+    ImmutableSet.Builder<String> includedRules = ImmutableSet.builder();
+    ImmutableSet.Builder<String> excludedRules = ImmutableSet.builder();
+    flags
+        .get(RULE_LIST_FLAG)
+        .map(Path::of)
+        .ifPresent(ruleList -> readRuleList(ruleList, includedRules, excludedRules));
+
+    return new RuleFilter(
+        flags.get(INCLUDED_RULES_PATTERN_FLAG).map(Pattern::compile),
+        flags.get(EXCLUDED_RULES_PATTERN_FLAG).map(Pattern::compile),
+        includedRules.build(),
+        excludedRules.build());
+  }
+
+  private static void readRuleList(
+      Path ruleList,
+      ImmutableSet.Builder<String> includedRules,
+      ImmutableSet.Builder<String> excludedRules) {
+    try {
+      for (String line : Files.readAllLines(ruleList, UTF_8)) {
+        String entry = line.strip();
+        if (entry.startsWith(EXCLUSION_PREFIX)) {
+          excludedRules.add(normalize(entry.substring(EXCLUSION_PREFIX.length()).strip()));
+        } else if (!entry.isEmpty() && !entry.startsWith(COMMENT_PREFIX)) {
+          includedRules.add(normalize(entry));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Failed to read Refaster rule list '%s'", ruleList), e);
+    }
+  }
+
+  private static String normalize(String name) {
+    return name.replace('.', '$');
+  }
+
+  /**
+   * Verifies that each entry of the rule list matches at least one of the given rules.
+   *
+   * <p>This guards against misspelled or fully qualified entries, which would otherwise silently
+   * select no rules at all.
+   *
+   * @param ruleNames The names of all available rules, such as {@code SomeRules$SomeRule}.
+   * @throws IllegalArgumentException If a rule list entry matches none of the given rules.
+   */
+  void checkRuleListEntries(Set<String> ruleNames) {
+    ImmutableSet<String> unmatchedEntries =
+        Stream.concat(includedRules.stream(), excludedRules.stream())
+            .filter(entry -> ruleNames.stream().noneMatch(name -> isPartOf(name, entry)))
+            .collect(toImmutableSet());
+    checkArgument(
+        unmatchedEntries.isEmpty(),
+        "Refaster rule list entries %s match no rule; entries must be simple names, such as "
+            + "`SomeRules` or `SomeRules.SomeRule`",
+        unmatchedEntries);
+  }
+
+  /**
+   * Tells whether the Refaster rule with the given name is selected.
+   *
+   * @param ruleName The name of the rule of interest, such as {@code SomeRules$SomeRule}.
+   * @return {@code true} iff the rule should be loaded.
+   */
+  boolean isSelected(String ruleName) {
+    return includedRulesPattern.map(p -> p.matcher(ruleName).matches()).orElse(true)
+        && excludedRulesPattern.map(p -> !p.matcher(ruleName).matches()).orElse(true)
+        && (includedRules.isEmpty() || isListed(ruleName, includedRules))
+        && !isListed(ruleName, excludedRules);
+  }
+
+  /**
+   * Tells whether the given rule, or any of the collections or groups of which it is part, is
+   * listed.
+   */
+  private static boolean isListed(String ruleName, ImmutableSet<String> names) {
+    if (names.contains(ruleName)) {
+      return true;
+    }
+
+    for (int i = ruleName.indexOf('$'); i >= 0; i = ruleName.indexOf('$', i + 1)) {
+      if (names.contains(ruleName.substring(0, i))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /** Tells whether the given rule is, or is part of, the named collection or group of rules. */
+  private static boolean isPartOf(String ruleName, String name) {
+    return ruleName.equals(name) || ruleName.startsWith(name + '$');
+  }
+
+  /**
+   * Adds a representation of this filter's configuration to the given {@link Hasher}, such that
+   * differently configured filters yield different hashes.
+   *
+   * @param hasher The hasher to update.
+   */
+  void putFingerprint(Hasher hasher) {
+    putName(hasher, includedRulesPattern.map(Pattern::pattern).orElse(""));
+    putName(hasher, excludedRulesPattern.map(Pattern::pattern).orElse(""));
+    putNames(hasher, includedRules);
+    putNames(hasher, excludedRules);
+  }
+
+  private static void putNames(Hasher hasher, ImmutableSet<String> names) {
+    hasher.putInt(names.size());
+    for (String name : names) {
+      putName(hasher, name);
+    }
+  }
+
+  /** Adds the given string to the hasher, prefixed with its length to avoid ambiguity. */
+  private static void putName(Hasher hasher, String name) {
+    hasher.putInt(name.length()).putString(name, UTF_8);
+  }
+}
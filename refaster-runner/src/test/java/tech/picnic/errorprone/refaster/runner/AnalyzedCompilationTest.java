@@ -0,0 +1,47 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.VisitorState;
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class AnalyzedCompilationTest {
+  @Test
+  void create(@TempDir Path directory) throws IOException {
+    Path a = Files.writeString(directory.resolve("A.java"), "class A {}\n");
+    Path b = Files.writeString(directory.resolve("B.java"), "class B extends Unknown {}\n");
+    ErrorProneOptions errorProneOptions =
+        ErrorProneOptions.processArgs(ImmutableList.of("-XepOpt:Foo:Bar=baz"));
+
+    try (AnalyzedCompilation compilation =
+        AnalyzedCompilation.create(
+            ImmutableList.of("-proc:none"),
+            fileManager -> fileManager.getJavaFileObjects(a, b),
+            errorProneOptions)) {
+      assertThat(compilation.compilationUnits())
+          .extracting(c -> Path.of(c.getSourceFile().toUri()))
+          .containsExactly(a, b);
+      assertThat(compilation.errors())
+          .singleElement()
+          .satisfies(
+              e -> {
+                assertThat(Path.of(e.getSource().toUri())).isEqualTo(b);
+                assertThat(e.getMessage(Locale.ROOT)).contains("Unknown");
+              });
+      assertThat(compilation.errorProneOptions()).isSameAs(errorProneOptions);
+
+      CompilationUnitTree compilationUnit = compilation.compilationUnits().get(0);
+      VisitorState state = compilation.createState(compilationUnit, description -> {});
+      assertThat(state.getPath().getLeaf()).isSameAs(compilationUnit);
+      assertThat(state.errorProneOptions()).isSameAs(errorProneOptions);
+    }
+  }
+}
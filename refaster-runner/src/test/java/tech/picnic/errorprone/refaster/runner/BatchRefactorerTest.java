@@ -0,0 +1,135 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class BatchRefactorerTest {
+  @Test
+  void run(@TempDir Path baseDirectory) throws IOException, InterruptedException {
+    Path sourceRoot = Files.createDirectories(baseDirectory.resolve("src").resolve("pkg"));
+    Files.writeString(
+        sourceRoot.resolve("A.java"),
+        """
+        package pkg;
+
+        class A {
+          boolean m() {
+            return "foo".toCharArray().length == 0;
+          }
+        }
+        """);
+    Files.writeString(
+        sourceRoot.resolve("B.java"),
+        """
+        package pkg;
+
+        class B {
+          boolean m() {
+            return new A().m() && "bar".toCharArray().length == 1;
+          }
+        }
+        """);
+    Files.writeString(sourceRoot.resolve("C.java"), "package pkg;\n\nclass C extends Unknown {}\n");
+    Files.writeString(sourceRoot.resolve("D.java"), "package pkg;\n\nclass D {}\n");
+
+    StringWriter out = new StringWriter();
+    StringWriter err = new StringWriter();
+    BatchRefactorer.run(
+        ImmutableList.of("--threads", "2", "-XepOpt:Refaster:NamePattern=.*StringOfSize.*", "src"),
+        baseDirectory,
+        out,
+        err);
+
+    assertThat(out)
+        .hasToString(
+            """
+            --- src/pkg/A.java
+            +++ src/pkg/A.java
+            @@ -3,5 +3,5 @@
+             class A {
+               boolean m() {
+            -    return "foo".toCharArray().length == 0;
+            +    return "foo".isEmpty();
+               }
+             }
+            --- src/pkg/B.java
+            +++ src/pkg/B.java
+            @@ -3,5 +3,5 @@
+             class B {
+               boolean m() {
+            -    return new A().m() && "bar".toCharArray().length == 1;
+            +    return new A().m() && "bar".length() == 1;
+               }
+             }
+            """);
+    assertThat(err)
+        .hasToString(String.format("Skipped '%s', as it does not compile%n", "src/pkg/C.java"));
+  }
+
+  @Test
+  void runWithProfile(@TempDir Path baseDirectory) throws IOException, InterruptedException {
+    Path sourceRoot = Files.createDirectories(baseDirectory.resolve("src"));
+    Files.writeString(
+        sourceRoot.resolve("A.java"),
+        "class A {\n  boolean m() {\n    return \"foo\".toCharArray().length == 0;\n  }\n}\n");
+    Files.writeString(
+        sourceRoot.resolve("B.java"),
+        "class B {\n  boolean m() {\n    return \"bar\".toCharArray().length == 1;\n  }\n}\n");
+    Path profile = baseDirectory.resolve("profile.json");
+
+    BatchRefactorer.run(
+        ImmutableList.of(
+            "--threads",
+            "2",
+            "-XepOpt:Refaster:NamePattern=.*StringOfSize.*",
+            "-XepOpt:Refaster:Profile=" + profile,
+            "src"),
+        baseDirectory,
+        new StringWriter(),
+        new StringWriter());
+
+    JsonNode json = new ObjectMapper().readTree(profile.toFile());
+    assertThat(json.get("compilationUnits"))
+        .extracting(compilationUnit -> Path.of(compilationUnit.get("name").textValue()))
+        .containsExactlyInAnyOrder(sourceRoot.resolve("A.java"), sourceRoot.resolve("B.java"));
+    assertThat(json.get("rules"))
+        .extracting(rule -> rule.get("name").textValue())
+        .contains("FooRules.StringOfSizeZeroRule", "FooRules.StringOfSizeOneRule");
+  }
+
+  @Test
+  void runWithoutSourceRoots(@TempDir Path baseDirectory) {
+    assertThatThrownBy(
+            () ->
+                BatchRefactorer.run(
+                    ImmutableList.of("--threads", "2"),
+                    baseDirectory,
+                    new StringWriter(),
+                    new StringWriter()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("At least one source root must be provided");
+  }
+
+  @Test
+  void runWithInvalidThreadCount(@TempDir Path baseDirectory) {
+    assertThatThrownBy(
+            () ->
+                BatchRefactorer.run(
+                    ImmutableList.of("--threads", "0", "src"),
+                    baseDirectory,
+                    new StringWriter(),
+                    new StringWriter()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Option '--threads' must specify a positive thread count");
+  }
+}
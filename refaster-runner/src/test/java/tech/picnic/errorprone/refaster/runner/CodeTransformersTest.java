@@ -2,7 +2,20 @@ package tech.picnic.errorprone.refaster.runner;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.io.ByteSource;
+import com.google.errorprone.CodeTransformer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.picnic.errorprone.refaster.RefasterRuleBundle;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization.ClassDescriptorTable;
 
 final class CodeTransformersTest {
   /**
@@ -16,7 +29,115 @@ final class CodeTransformersTest {
             "FooRules$StringOfSizeZeroRule",
             "FooRules$StringOfSizeZeroVerboseRule",
             "FooRules$StringOfSizeOneRule",
+            "FooRules$ImmutableListOfIsEmptyRule",
             "FooRules$ExtraGrouping$StringOfSizeTwoRule",
             "FooRules$ExtraGrouping$StringOfSizeThreeRule");
   }
+
+  /**
+   * Verifies that rules are loaded from all bundles listed by an index, and that the classpath is
+   * then not scanned for legacy {@code .refaster} files.
+   */
+  @Test
+  void loadAllCodeTransformersFromBundles(@TempDir Path directory) throws IOException {
+    Path bundleDirectory = directory.resolve(RefasterRuleBundle.RESOURCE_DIRECTORY);
+    Files.createDirectories(bundleDirectory);
+    writeBundle(bundleDirectory.resolve("first.bin"), "pkg.Bundled$First");
+    writeBundle(bundleDirectory.resolve("second.bin"), "pkg.Bundled$Second");
+    try (OutputStream out =
+        Files.newOutputStream(directory.resolve(RefasterRuleBundle.INDEX_RESOURCE_NAME))) {
+      RefasterRuleBundle.writeIndex(ImmutableList.of("first.bin", "second.bin"), out);
+    }
+    writeLegacyRule(directory, "Legacy$Rule");
+
+    assertThat(loadAllCodeTransformers(directory).keySet())
+        .containsExactlyInAnyOrder("Bundled$First", "Bundled$Second");
+  }
+
+  /**
+   * Verifies that rules compiled from same-named classes in different packages are all loaded,
+   * under their simple flat name.
+   */
+  @Test
+  void loadAllCodeTransformersWithSameSimpleName(@TempDir Path directory) throws IOException {
+    Path bundleDirectory = directory.resolve(RefasterRuleBundle.RESOURCE_DIRECTORY);
+    Files.createDirectories(bundleDirectory);
+    try (OutputStream out = Files.newOutputStream(bundleDirectory.resolve("rules.bin"))) {
+      RefasterRuleBundle.write(
+          ImmutableList.of(createEntry("a.Rules$Rule"), createEntry("b.Rules$Rule")), out);
+    }
+    try (OutputStream out =
+        Files.newOutputStream(directory.resolve(RefasterRuleBundle.INDEX_RESOURCE_NAME))) {
+      RefasterRuleBundle.writeIndex(ImmutableList.of("rules.bin"), out);
+    }
+
+    assertThat(loadAllCodeTransformers(directory).get("Rules$Rule")).hasSize(2);
+  }
+
+  /** Verifies that legacy {@code .refaster} files are loaded in the absence of bundles. */
+  @Test
+  void loadAllCodeTransformersFromLegacyFiles(@TempDir Path directory) throws IOException {
+    writeLegacyRule(directory, "Legacy$First");
+    writeLegacyRule(directory, "Legacy$Second");
+
+    assertThat(loadAllCodeTransformers(directory).keySet())
+        .containsExactlyInAnyOrder("Legacy$First", "Legacy$Second");
+  }
+
+  /**
+   * Verifies that rules whose serialized form is incompatible with the current classpath are
+   * skipped, rather than failing the compilation.
+   */
+  @Test
+  void loadAllCodeTransformersSkipsIncompatibleRule(@TempDir Path directory) throws IOException {
+    Path bundleDirectory = directory.resolve(RefasterRuleBundle.RESOURCE_DIRECTORY);
+    Files.createDirectories(bundleDirectory);
+    writeBundle(
+        bundleDirectory.resolve("rules.bin"), "pkg.Incompatible", ByteSource.wrap(new byte[8]));
+    try (OutputStream out =
+        Files.newOutputStream(directory.resolve(RefasterRuleBundle.INDEX_RESOURCE_NAME))) {
+      RefasterRuleBundle.writeIndex(ImmutableList.of("rules.bin"), out);
+    }
+
+    assertThat(loadAllCodeTransformers(directory).get("Incompatible"))
+        .singleElement()
+        .isInstanceOfSatisfying(
+            LazyCodeTransformer.class,
+            transformer -> assertThat(transformer.getDelegate()).isEmpty());
+  }
+
+  @SuppressWarnings("BanClassLoader" /* The class loader only loads test resources. */)
+  private static ImmutableListMultimap<String, CodeTransformer> loadAllCodeTransformers(
+      Path directory) throws IOException {
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {directory.toUri().toURL()}, /* parent= */ null)) {
+      return CodeTransformers.loadAllCodeTransformers(classLoader);
+    }
+  }
+
+  private static void writeLegacyRule(Path directory, String ruleName) throws IOException {
+    Path legacyDirectory = directory.resolve("pkg");
+    Files.createDirectories(legacyDirectory);
+    Files.write(legacyDirectory.resolve(ruleName + ".refaster"), new byte[0]);
+  }
+
+  private static void writeBundle(Path path, String ruleName) throws IOException {
+    writeBundle(path, ruleName, ByteSource.empty());
+  }
+
+  private static void writeBundle(Path path, String ruleName, ByteSource codeTransformer)
+      throws IOException {
+    try (OutputStream out = Files.newOutputStream(path)) {
+      RefasterRuleBundle.write(ImmutableList.of(createEntry(ruleName, codeTransformer)), out);
+    }
+  }
+
+  private static RefasterRuleBundle.Entry createEntry(String ruleName) {
+    return createEntry(ruleName, ByteSource.empty());
+  }
+
+  private static RefasterRuleBundle.Entry createEntry(String ruleName, ByteSource codeTransformer) {
+    return RefasterRuleBundle.Entry.create(
+        ruleName, ImmutableList.of(), codeTransformer, new ClassDescriptorTable());
+  }
 }
@@ -4,6 +4,7 @@ import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
 
+import com.google.common.collect.ImmutableList;
 import com.google.errorprone.refaster.annotation.AfterTemplate;
 import com.google.errorprone.refaster.annotation.BeforeTemplate;
 import tech.picnic.errorprone.refaster.annotation.Description;
@@ -59,6 +60,19 @@ final class FooRules {
     }
   }
 
+  /** A simple rule for testing purposes, referencing a type that is not part of the JDK. */
+  static final class ImmutableListOfIsEmptyRule {
+    @BeforeTemplate
+    boolean before() {
+      return ImmutableList.of().isEmpty();
+    }
+
+    @AfterTemplate
+    boolean after() {
+      return true;
+    }
+  }
+
   /** A nested class with annotations that are inherited by the Refaster rules contained in it. */
   @Description("A custom subgroup description")
   @OnlineDocumentation("https://example.com/rule/${topLevelClassName}#${nestedClassName}")
@@ -0,0 +1,101 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.CodeTransformer;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import tech.picnic.errorprone.refaster.RefasterRuleMetadata;
+
+final class LazyCodeTransformerTest {
+  @Test
+  void getRequiredIdentifiersWithMetadata() {
+    AtomicInteger loadCount = new AtomicInteger();
+    LazyCodeTransformer transformer =
+        new LazyCodeTransformer(
+            countingLoader(loadCount),
+            Optional.of(
+                ImmutableList.of(
+                    metadata(ImmutableSet.of(ImmutableSet.of("a", "b"))),
+                    metadata(ImmutableSet.of(ImmutableSet.of("c"))))));
+
+    assertThat(transformer.getRequiredIdentifiers())
+        .containsExactlyInAnyOrder(ImmutableSet.of("a", "b"), ImmutableSet.of("c"));
+    assertThat(loadCount).hasValue(0);
+  }
+
+  /**
+   * Verifies that in the absence of metadata, the requirements are derived from the delegate, and
+   * that they match the requirements derived from the delegate's metadata.
+   */
+  @Test
+  void getRequirementsWithoutMetadata() {
+    LazyCodeTransformer bundled =
+        (LazyCodeTransformer)
+            CodeTransformers.getAllCodeTransformers().get("FooRules$StringOfSizeZeroRule").get(0);
+    CodeTransformer delegate = bundled.getDelegate().orElseThrow();
+    AtomicInteger loadCount = new AtomicInteger();
+    LazyCodeTransformer transformer =
+        new LazyCodeTransformer(
+            () -> {
+              loadCount.incrementAndGet();
+              return Optional.of(delegate);
+            },
+            Optional.empty());
+
+    assertThat(loadCount).hasValue(0);
+    assertThat(transformer.getRequiredIdentifiers())
+        .hasSameElementsAs(bundled.getRequiredIdentifiers())
+        .doesNotContain(ImmutableSet.of());
+    assertThat(transformer.getRequiredTypes()).hasSameElementsAs(bundled.getRequiredTypes());
+    assertThat(transformer.getRequiredIdentifiers())
+        .hasSameElementsAs(bundled.getRequiredIdentifiers());
+    assertThat(loadCount).hasValue(1);
+  }
+
+  @Test
+  void getRequirementsWithoutMetadataOrDelegate() {
+    LazyCodeTransformer transformer =
+        new LazyCodeTransformer(countingLoader(new AtomicInteger()), Optional.empty());
+
+    assertThat(transformer.getRequiredIdentifiers()).isEmpty();
+    assertThat(transformer.getRequiredTypes()).isEmpty();
+  }
+
+  @Test
+  void annotations() {
+    AtomicInteger loadCount = new AtomicInteger();
+    LazyCodeTransformer transformer =
+        new LazyCodeTransformer(countingLoader(loadCount), Optional.empty());
+
+    assertThat(loadCount).hasValue(0);
+    assertThat(transformer.annotations()).isEmpty();
+    assertThat(transformer.annotations()).isEmpty();
+    assertThat(loadCount).hasValue(1);
+  }
+
+  private static Supplier<Optional<CodeTransformer>> countingLoader(AtomicInteger loadCount) {
+    return () -> {
+      loadCount.incrementAndGet();
+      return Optional.empty();
+    };
+  }
+
+  private static RefasterRuleMetadata metadata(
+      ImmutableSet<ImmutableSet<String>> requiredIdentifiers) {
+    return RefasterRuleMetadata.create(
+        "Rule",
+        requiredIdentifiers,
+        ImmutableSet.of(ImmutableSet.of()),
+        ImmutableSet.of(),
+        SUGGESTION,
+        "Description",
+        Optional.empty(),
+        1);
+  }
+}
@@ -0,0 +1,150 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneOffset.UTC;
+import static org.assertj.core.api.Assertions.as;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.InstanceOfAssertFactories.STRING;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
+import com.google.errorprone.ErrorProneOptions;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class MatchCacheTest {
+  private static final HashCode RULE_SET_FINGERPRINT = HashCode.fromInt(42);
+  private static final EndPosTable DUMMY_END_POSITIONS = mock();
+
+  @Test
+  void getKey(@TempDir Path directory) {
+    MatchCache cache = new MatchCache(directory, RULE_SET_FINGERPRINT);
+    MatchCache otherCache = new MatchCache(directory, HashCode.fromInt(0));
+    BitSet someRules = BitSet.valueOf(new long[] {0b101});
+    BitSet otherRules = BitSet.valueOf(new long[] {0b110});
+    ErrorProneOptions options = ErrorProneOptions.empty();
+
+    assertThat(cache.getKey("class A {}", someRules, options))
+        .isEqualTo(cache.getKey("class A {}", someRules, options))
+        .isNotEqualTo(cache.getKey("class A {}", otherRules, options))
+        .isNotEqualTo(cache.getKey("class B {}", someRules, options))
+        .isNotEqualTo(otherCache.getKey("class A {}", someRules, options));
+  }
+
+  private static Stream<Arguments> getCorruptEntryTestCases() {
+    /* { content following the format version } */
+    return Stream.of(
+        arguments(write(out -> {})),
+        arguments(write(out -> out.writeInt(-1))),
+        arguments(write(out -> out.writeInt(Integer.MAX_VALUE))),
+        arguments(write(out -> writeMatchWithLinkLength(out, -1))),
+        arguments(write(out -> writeMatchWithLinkLength(out, Integer.MAX_VALUE))));
+  }
+
+  @MethodSource("getCorruptEntryTestCases")
+  @ParameterizedTest
+  void getCorruptEntry(ByteSource content, @TempDir Path directory) throws IOException {
+    MatchCache cache = new MatchCache(directory, RULE_SET_FINGERPRINT);
+    HashCode key = HashCode.fromInt(1);
+    StringWriter notes = new StringWriter();
+    Log log = createLog(notes);
+    cache.put(key, ImmutableList.of(), DUMMY_END_POSITIONS, log);
+    assertThat(cache.get(key, log)).hasValue(ImmutableList.of());
+
+    Path entry = directory.resolve(key + ".matches");
+    byte[] formatVersion = Arrays.copyOf(Files.readAllBytes(entry), Integer.BYTES);
+    Files.write(entry, Bytes.concat(formatVersion, content.read()));
+
+    assertThat(cache.get(key, log)).isEmpty();
+    assertThat(notes.toString())
+        .startsWith("Note: Refaster match cache failed to read entry " + entry);
+  }
+
+  @Test
+  void putFailureIsReportedOnce(@TempDir Path directory) throws IOException {
+    Path file = Files.writeString(directory.resolve("file"), "", UTF_8);
+    MatchCache cache = new MatchCache(file, RULE_SET_FINGERPRINT);
+    StringWriter notes = new StringWriter();
+    Log log = createLog(notes);
+
+    cache.put(HashCode.fromInt(1), ImmutableList.of(), DUMMY_END_POSITIONS, log);
+    cache.put(HashCode.fromInt(2), ImmutableList.of(), DUMMY_END_POSITIONS, log);
+
+    assertThat(notes.toString().lines())
+        .singleElement(as(STRING))
+        .startsWith("Note: Refaster match cache failed to update cache directory " + file);
+  }
+
+  @Test
+  void prune(@TempDir Path directory) throws IOException {
+    Instant now = Instant.parse("2026-01-01T00:00:00Z");
+    createEntry(directory, "expired", now.minus(Duration.ofDays(3)));
+    createEntry(directory, "least-recent", now.minus(Duration.ofHours(3)));
+    createEntry(directory, "less-recent", now.minus(Duration.ofHours(2)));
+    createEntry(directory, "most-recent", now.minus(Duration.ofHours(1)));
+    Path otherFile = Files.writeString(directory.resolve("other.txt"), "", UTF_8);
+    Files.setLastModifiedTime(otherFile, FileTime.from(now.minus(Duration.ofDays(3))));
+
+    new MatchCache(directory, RULE_SET_FINGERPRINT, 2, Duration.ofDays(1), Clock.fixed(now, UTC))
+        .prune();
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.map(p -> p.getFileName().toString()))
+          .containsExactlyInAnyOrder("less-recent.matches", "most-recent.matches", "other.txt");
+    }
+  }
+
+  private static void createEntry(Path directory, String name, Instant lastAccessed)
+      throws IOException {
+    Path entry = Files.writeString(directory.resolve(name + ".matches"), "", UTF_8);
+    Files.setLastModifiedTime(entry, FileTime.from(lastAccessed));
+  }
+
+  private static ByteSource write(Consumer<ByteArrayDataOutput> writer) {
+    ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    writer.accept(out);
+    return ByteSource.wrap(out.toByteArray());
+  }
+
+  private static void writeMatchWithLinkLength(ByteArrayDataOutput out, int linkLength) {
+    out.writeInt(1);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeUTF("SomeRule");
+    out.writeBoolean(true);
+    out.writeInt(linkLength);
+  }
+
+  private static Log createLog(Writer writer) {
+    Log log = Log.instance(new Context());
+    log.setWriter(Log.WriterKind.NOTICE, new PrintWriter(writer, /* autoFlush= */ true));
+    return log;
+  }
+}
@@ -0,0 +1,64 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class MatchSelectorTest {
+  private static final DiagnosticPosition DUMMY_POSITION = mock();
+  private static final EndPosTable DUMMY_END_POSITIONS = mock();
+
+  private static Stream<Arguments> selectTestCases() {
+    Description insertion = description("insertion", SuggestedFix.replace(5, 5, "x"));
+    Description small = description("small", SuggestedFix.replace(2, 4, "xy"));
+    Description smallShorter = description("smallShorter", SuggestedFix.replace(2, 4, "x"));
+    Description large = description("large", SuggestedFix.replace(0, 6, "x"));
+    Description adjacent = description("adjacent", SuggestedFix.replace(6, 8, "x"));
+    Description split =
+        description(
+            "split",
+            SuggestedFix.builder().replace(10, 12, "x").replace(20, 22, "y").build(),
+            SuggestedFix.replace(10, 11, "z"));
+    Description betweenSplit = description("betweenSplit", SuggestedFix.replace(14, 16, "x"));
+    Description overlapsSplit = description("overlapsSplit", SuggestedFix.replace(21, 23, "x"));
+    Description noFix = description("noFix");
+
+    /* { descriptions, expectedSelection } */
+    return Stream.of(
+        arguments(ImmutableList.of(), ImmutableList.of()),
+        arguments(ImmutableList.of(noFix, insertion), ImmutableList.of(noFix, insertion)),
+        arguments(ImmutableList.of(small, large), ImmutableList.of(large)),
+        arguments(ImmutableList.of(small, smallShorter), ImmutableList.of(smallShorter)),
+        arguments(ImmutableList.of(small, small), ImmutableList.of(small)),
+        arguments(ImmutableList.of(large, insertion), ImmutableList.of(large, insertion)),
+        arguments(ImmutableList.of(adjacent, large), ImmutableList.of(large, adjacent)),
+        arguments(
+            ImmutableList.of(betweenSplit, overlapsSplit, split),
+            ImmutableList.of(split, betweenSplit)));
+  }
+
+  @MethodSource("selectTestCases")
+  @ParameterizedTest
+  void select(
+      ImmutableList<Description> descriptions, ImmutableList<Description> expectedSelection) {
+    assertThat(MatchSelector.select(descriptions, DUMMY_END_POSITIONS))
+        .containsExactlyElementsOf(expectedSelection);
+  }
+
+  @SuppressWarnings("RestrictedApi" /* This is a test. */)
+  private static Description description(String checkName, SuggestedFix... fixes) {
+    return Description.builder(DUMMY_POSITION, checkName, null, "Message")
+        .addAllFixes(ImmutableList.copyOf(fixes))
+        .build();
+  }
+}
@@ -0,0 +1,59 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class NodeTest {
+  private static final ImmutableMap<String, ImmutableSet<ImmutableSet<String>>> PATHS =
+      ImmutableMap.of(
+          "unconstrained",
+          ImmutableSet.of(ImmutableSet.of()),
+          "a",
+          ImmutableSet.of(ImmutableSet.of("a")),
+          "a-and-b",
+          ImmutableSet.of(ImmutableSet.of("b", "a")),
+          "a-or-c",
+          ImmutableSet.of(ImmutableSet.of("a"), ImmutableSet.of("c")),
+          "b-and-c",
+          ImmutableSet.of(ImmutableSet.of("c", "b")));
+
+  private static Stream<Arguments> collectReachableValuesTestCases() {
+    /* { candidateEdges, expectedValues } */
+    return Stream.of(
+        arguments(ImmutableSet.of(), ImmutableList.of("unconstrained")),
+        arguments(ImmutableSet.of("x"), ImmutableList.of("unconstrained")),
+        arguments(ImmutableSet.of("a"), ImmutableList.of("unconstrained", "a", "a-or-c")),
+        arguments(ImmutableSet.of("b"), ImmutableList.of("unconstrained")),
+        arguments(
+            ImmutableSet.of("a", "b"), ImmutableList.of("unconstrained", "a", "a-and-b", "a-or-c")),
+        arguments(
+            ImmutableSet.of("b", "c"), ImmutableList.of("unconstrained", "a-or-c", "b-and-c")),
+        arguments(
+            ImmutableSet.of("a", "c"), ImmutableList.of("unconstrained", "a", "a-or-c", "a-or-c")),
+        arguments(
+            ImmutableSet.of("a", "b", "c", "d"),
+            ImmutableList.of("unconstrained", "a", "a-and-b", "a-or-c", "a-or-c", "b-and-c")));
+  }
+
+  @MethodSource("collectReachableValuesTestCases")
+  @ParameterizedTest
+  void collectReachableValues(
+      ImmutableSet<String> candidateEdges, ImmutableList<String> expectedValues) {
+    Node<String> tree = Node.create(PATHS.keySet(), PATHS::get);
+
+    List<String> collected = new ArrayList<>();
+    tree.collectReachableValues(candidateEdges, collected::add);
+
+    assertThat(collected).containsExactlyInAnyOrderElementsOf(expectedValues);
+  }
+}
@@ -0,0 +1,76 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class RefasterProfileTest {
+  @Test
+  void toJson() {
+    assertThat(
+            RefasterProfile.toJson(
+                ImmutableMap.of(
+                    "empty",
+                    ImmutableList.of(),
+                    "entries",
+                    ImmutableList.of(
+                        ImmutableMap.of("name", "foo", "count", 1),
+                        ImmutableMap.of("name", "bar", "count", 2L)))))
+        .isEqualTo(
+            """
+            {
+              "empty": [],
+              "entries": [
+                {
+                  "name": "foo",
+                  "count": 1
+                },
+                {
+                  "name": "bar",
+                  "count": 2
+                }
+              ]
+            }
+            """);
+  }
+
+  @Test
+  void toJsonEscapesStrings() throws IOException {
+    String value = "\"quoted\" back\\slash\ttab\nnewline\u0001";
+
+    String json = RefasterProfile.toJson(ImmutableMap.of("value", value));
+
+    assertThat(json)
+        .isEqualTo(
+            "{\n  \"value\": \"\\\"quoted\\\" back\\\\slash\\u0009tab\\u000anewline\\u0001\"\n}\n");
+    assertThat(new ObjectMapper().readTree(json).get("value").textValue()).isEqualTo(value);
+  }
+
+  @Test
+  void writeEscapesRuleNames(@TempDir Path directory) throws IOException {
+    Path outputFile = directory.resolve("profile.json");
+    RefasterProfile profile = new RefasterProfile(outputFile);
+    profile.onRuleApplied("Rules$Nested", 1, 30, 1, 1);
+    profile.onRuleApplied("Rules.\"Quoted\"", 2, 20, 2, 0);
+    profile.onRuleApplied("Rules.Back\\slash", 3, 10, 3, 0);
+    profile.recordDroppedFix("Rules$Nested");
+    profile.write();
+
+    JsonNode rules = new ObjectMapper().readTree(outputFile.toFile()).get("rules");
+    assertThat(rules)
+        .extracting(rule -> rule.get("name").textValue())
+        .containsExactly("Rules$Nested", "Rules.\"Quoted\"", "Rules.Back\\slash");
+    assertThat(rules.get(0).get("droppedFixes").longValue()).isEqualTo(1);
+    assertThat(outputFile)
+        .content(UTF_8)
+        .contains("\"Rules$Nested\"", "\"Rules.\\\"Quoted\\\"\"", "\"Rules.Back\\\\slash\"");
+  }
+}
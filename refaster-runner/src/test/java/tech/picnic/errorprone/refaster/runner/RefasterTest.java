@@ -9,15 +9,22 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.BugCheckerInfo;
 import com.google.errorprone.BugCheckerRefactoringTestHelper;
 import com.google.errorprone.BugCheckerRefactoringTestHelper.TestMode;
 import com.google.errorprone.BugPattern.SeverityLevel;
 import com.google.errorprone.CompilationTestHelper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -254,4 +261,154 @@ final class RefasterTest {
             "}")
         .doTest(TestMode.TEXT_MATCH);
   }
+
+  @Test
+  void profile(@TempDir Path outputDirectory) throws IOException {
+    Path profile = outputDirectory.resolve("profile.json");
+
+    CompilationTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs(
+            "-XepOpt:Refaster:NamePattern=.*\\$StringOfSize(Zero|ZeroVerbose|One)Rule$",
+            "-XepOpt:Refaster:Profile=" + profile)
+        .matchAllDiagnostics()
+        .expectErrorMessage("StringOfSizeZeroRule", DIAGNOSTIC_STRING_OF_SIZE_ZERO.asPredicate())
+        .expectErrorMessage("StringOfSizeOneRule", DIAGNOSTIC_STRING_OF_SIZE_ONE.asPredicate())
+        .addSourceLines(
+            "A.java",
+            "class A {",
+            "  void m() {",
+            "    // BUG: Diagnostic matches: StringOfSizeZeroRule",
+            "    boolean b1 = \"foo\".toCharArray().length == 0;",
+            "    // BUG: Diagnostic matches: StringOfSizeOneRule",
+            "    boolean b2 = \"bar\".toCharArray().length == 1;",
+            "  }",
+            "}")
+        .doTest();
+
+    assertThat(profile).exists();
+    JsonNode json = new ObjectMapper().readTree(profile.toFile());
+    assertThat(json.get("compilationUnits"))
+        .singleElement()
+        .satisfies(
+            compilationUnit -> {
+              assertThat(compilationUnit.get("name").textValue()).endsWith("A.java");
+              assertThat(compilationUnit.get("wallTimeNanos").longValue()).isNotNegative();
+              assertThat(compilationUnit.get("matchAttempts").longValue()).isPositive();
+              assertThat(compilationUnit.get("matches").longValue()).isEqualTo(3);
+            });
+    assertThat(json.get("rules"))
+        .anySatisfy(ruleStatistics("FooRules.StringOfSizeZeroRule", 1, 0))
+        .anySatisfy(ruleStatistics("FooRules.StringOfSizeZeroVerboseRule", 1, 1))
+        .anySatisfy(ruleStatistics("FooRules.StringOfSizeOneRule", 1, 0));
+  }
+
+  @Test
+  void cache(@TempDir Path cacheDirectory) throws IOException {
+    for (int i = 0; i < 2; i++) {
+      CompilationTestHelper.newInstance(Refaster.class, getClass())
+          .setArgs("-XepOpt:Refaster:CacheDirectory=" + cacheDirectory)
+          .matchAllDiagnostics()
+          .expectErrorMessage("StringOfSizeZeroRule", DIAGNOSTIC_STRING_OF_SIZE_ZERO.asPredicate())
+          .expectErrorMessage("StringOfSizeOneRule", DIAGNOSTIC_STRING_OF_SIZE_ONE.asPredicate())
+          .addSourceLines(
+              "A.java",
+              "class A {",
+              "  void m() {",
+              "    // BUG: Diagnostic matches: StringOfSizeZeroRule",
+              "    boolean b1 = \"foo\".toCharArray().length == 0;",
+              "    // BUG: Diagnostic matches: StringOfSizeOneRule",
+              "    boolean b2 = \"bar\".toCharArray().length == 1;",
+              "  }",
+              "}")
+          .addSourceLines("C.java", "record C(String value) {}")
+          .addSourceLines("package-info.java", "package pkg;")
+          .doTest();
+
+      BugCheckerRefactoringTestHelper.newInstance(Refaster.class, getClass())
+          .setArgs("-XepOpt:Refaster:CacheDirectory=" + cacheDirectory)
+          .addInputLines(
+              "B.java",
+              "class B {",
+              "  void m() {",
+              "    boolean b1 = \"foo\".toCharArray().length == 0;",
+              "    boolean b2 = \"bar\".toCharArray().length == 1;",
+              "  }",
+              "}")
+          .addOutputLines(
+              "B.java",
+              "class B {",
+              "  void m() {",
+              "    boolean b1 = \"foo\".isEmpty();",
+              "    boolean b2 = \"bar\".length() == 1;",
+              "  }",
+              "}")
+          .doTest(TestMode.TEXT_MATCH);
+
+      /*
+       * Compilation units that no rule can match are skipped, and thus not cached. The remaining
+       * file records when the cache was last pruned.
+       */
+      try (Stream<Path> entries = Files.list(cacheDirectory)) {
+        assertThat(entries.map(p -> p.getFileName().toString()))
+            .hasSize(3)
+            .contains(".last-pruned")
+            .filteredOn(name -> name.endsWith(".matches"))
+            .hasSize(2);
+      }
+    }
+  }
+
+  private static Stream<Arguments> classpathPruningTestCases() {
+    /* { classpath, expectRuleApplied } */
+    return Stream.of(
+        arguments(ImmutableList.of(ImmutableList.class), true),
+        arguments(ImmutableList.of(RefasterTest.class), false));
+  }
+
+  /**
+   * Verifies that rules referencing types that are absent from the classpath are not applied, by
+   * inspecting the rules listed in the profile.
+   */
+  @MethodSource("classpathPruningTestCases")
+  @ParameterizedTest
+  void classpathPruning(
+      ImmutableList<Class<?>> classpath, boolean expectRuleApplied, @TempDir Path outputDirectory)
+      throws IOException {
+    Path profile = outputDirectory.resolve("profile.json");
+
+    CompilationTestHelper.newInstance(Refaster.class, getClass())
+        .setArgs(
+            "-XepOpt:Refaster:NamePattern=.*\\$ImmutableListOfIsEmptyRule$",
+            "-XepOpt:Refaster:Profile=" + profile)
+        .withClasspath(classpath.toArray(Class<?>[]::new))
+        .addSourceLines(
+            "A.java",
+            "class A {",
+            "  boolean m() {",
+            "    return ImmutableList.of().isEmpty();",
+            "  }",
+            "",
+            "  static final class ImmutableList {",
+            "    static java.util.List<String> of() {",
+            "      return null;",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+
+    assertThat(Files.readString(profile).contains("FooRules.ImmutableListOfIsEmptyRule"))
+        .isEqualTo(expectRuleApplied);
+  }
+
+  private static Consumer<JsonNode> ruleStatistics(String ruleName, int matches, int droppedFixes) {
+    return rule -> {
+      assertThat(rule.get("name").textValue()).isEqualTo(ruleName);
+      assertThat(rule.get("compilationUnits").intValue()).isEqualTo(1);
+      assertThat(rule.get("estimatedCost").intValue()).isPositive();
+      assertThat(rule.get("wallTimeNanos").longValue()).isNotNegative();
+      assertThat(rule.get("matchAttempts").longValue()).isPositive();
+      assertThat(rule.get("matches").longValue()).isEqualTo(matches);
+      assertThat(rule.get("droppedFixes").longValue()).isEqualTo(droppedFixes);
+    };
+  }
 }
@@ -0,0 +1,161 @@
+package tech.picnic.errorprone.refaster.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.errorprone.ErrorProneFlags;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class RuleFilterTest {
+  private static Stream<Arguments> isSelectedTestCases() {
+    /* { flags, ruleName, expected } */
+    return Stream.of(
+        arguments(ImmutableMap.of(), "FooRules$BarRule", true),
+        arguments(ImmutableMap.of("Refaster:NamePattern", ".*Bar.*"), "FooRules$BarRule", true),
+        arguments(ImmutableMap.of("Refaster:NamePattern", ".*Baz.*"), "FooRules$BarRule", false),
+        arguments(
+            ImmutableMap.of("Refaster:ExcludedNamePattern", ".*Bar.*"), "FooRules$BarRule", false),
+        arguments(
+            ImmutableMap.of("Refaster:ExcludedNamePattern", ".*Baz.*"), "FooRules$BarRule", true),
+        arguments(
+            ImmutableMap.of(
+                "Refaster:NamePattern", "FooRules\\$.*", "Refaster:ExcludedNamePattern", ".*Bar.*"),
+            "FooRules$BarRule",
+            false),
+        arguments(
+            ImmutableMap.of(
+                "Refaster:NamePattern", "FooRules\\$.*", "Refaster:ExcludedNamePattern", ".*Bar.*"),
+            "FooRules$BazRule",
+            true));
+  }
+
+  @MethodSource("isSelectedTestCases")
+  @ParameterizedTest
+  void isSelected(ImmutableMap<String, String> flags, String ruleName, boolean expected) {
+    assertThat(RuleFilter.create(ErrorProneFlags.fromMap(flags)).isSelected(ruleName))
+        .isEqualTo(expected);
+  }
+
+  @Test
+  void isSelectedWithRuleList(@TempDir Path directory) throws IOException {
+    Path ruleList = directory.resolve("rules.txt");
+    Files.writeString(
+        ruleList,
+        """
+        # Collections and groups may be separated using either `.` or `$`.
+        FooRules
+        BarRules.Group
+
+        -FooRules$ExpensiveRule
+        - BarRules.Group.ExpensiveRule
+        """);
+
+    RuleFilter ruleFilter =
+        RuleFilter.create(
+            ErrorProneFlags.fromMap(ImmutableMap.of("Refaster:RuleList", ruleList.toString())));
+
+    assertThat(ruleFilter.isSelected("FooRules$CheapRule")).isTrue();
+    assertThat(ruleFilter.isSelected("FooRules$ExpensiveRule")).isFalse();
+    assertThat(ruleFilter.isSelected("FooRules$ExpensiveRuleVariant")).isTrue();
+    assertThat(ruleFilter.isSelected("FooRulesExtra$CheapRule")).isFalse();
+    assertThat(ruleFilter.isSelected("BarRules$Group$CheapRule")).isTrue();
+    assertThat(ruleFilter.isSelected("BarRules$Group$ExpensiveRule")).isFalse();
+    assertThat(ruleFilter.isSelected("BarRules$OtherRule")).isFalse();
+  }
+
+  @Test
+  void isSelectedWithExclusionsOnlyRuleList(@TempDir Path directory) throws IOException {
+    Path ruleList = directory.resolve("rules.txt");
+    Files.writeString(ruleList, "-FooRules\n");
+
+    RuleFilter ruleFilter =
+        RuleFilter.create(
+            ErrorProneFlags.fromMap(ImmutableMap.of("Refaster:RuleList", ruleList.toString())));
+
+    assertThat(ruleFilter.isSelected("FooRules$SomeRule")).isFalse();
+    assertThat(ruleFilter.isSelected("BarRules$SomeRule")).isTrue();
+  }
+
+  @Test
+  void checkRuleListEntries(@TempDir Path directory) throws IOException {
+    Path ruleList = directory.resolve("rules.txt");
+    Files.writeString(ruleList, "FooRules.Group\n-BarRules$SomeRule\n");
+
+    RuleFilter ruleFilter =
+        RuleFilter.create(
+            ErrorProneFlags.fromMap(ImmutableMap.of("Refaster:RuleList", ruleList.toString())));
+
+    assertThatCode(
+            () ->
+                ruleFilter.checkRuleListEntries(
+                    ImmutableSet.of("FooRules$Group$SomeRule", "BarRules$SomeRule")))
+        .doesNotThrowAnyException();
+  }
+
+  @Test
+  void checkRuleListEntriesWithUnmatchedEntries(@TempDir Path directory) throws IOException {
+    Path ruleList = directory.resolve("rules.txt");
+    Files.writeString(
+        ruleList, "tech.picnic.errorprone.refasterrules.FooRules\nFooRules\n-FooRules.Group\n");
+
+    RuleFilter ruleFilter =
+        RuleFilter.create(
+            ErrorProneFlags.fromMap(ImmutableMap.of("Refaster:RuleList", ruleList.toString())));
+
+    assertThatThrownBy(() -> ruleFilter.checkRuleListEntries(ImmutableSet.of("FooRules$GroupRule")))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage(
+            "Refaster rule list entries [tech$picnic$errorprone$refasterrules$FooRules, "
+                + "FooRules$Group] match no rule; entries must be simple names, such as "
+                + "`SomeRules` or `SomeRules.SomeRule`");
+  }
+
+  @Test
+  void createWithMissingRuleList(@TempDir Path directory) {
+    Path ruleList = directory.resolve("missing.txt");
+
+    assertThatThrownBy(
+            () ->
+                RuleFilter.create(
+                    ErrorProneFlags.fromMap(
+                        ImmutableMap.of("Refaster:RuleList", ruleList.toString()))))
+        .isInstanceOf(UncheckedIOException.class)
+        .hasMessage("Failed to read Refaster rule list '%s'", ruleList);
+  }
+
+  @Test
+  void putFingerprint(@TempDir Path directory) throws IOException {
+    Path ruleList = directory.resolve("rules.txt");
+    Files.writeString(ruleList, "-FooRules\n");
+
+    assertThat(
+            Stream.of(
+                    ImmutableMap.<String, String>of(),
+                    ImmutableMap.of("Refaster:NamePattern", "Foo"),
+                    ImmutableMap.of("Refaster:ExcludedNamePattern", "Foo"),
+                    ImmutableMap.of("Refaster:RuleList", ruleList.toString()))
+                .map(flags -> getFingerprint(ErrorProneFlags.fromMap(flags))))
+        .doesNotHaveDuplicates();
+  }
+
+  private static String getFingerprint(ErrorProneFlags flags) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    RuleFilter.create(flags).putFingerprint(hasher);
+    return hasher.hash().toString();
+  }
+}
@@ -1,6 +1,7 @@
 package tech.picnic.errorprone.refaster;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
@@ -8,6 +9,7 @@ import static tech.picnic.errorprone.refaster.annotation.OnlineDocumentation.NES
 import static tech.picnic.errorprone.refaster.annotation.OnlineDocumentation.TOP_LEVEL_CLASS_URL_PLACEHOLDER;
 
 import com.google.auto.value.AutoValue;
+import com.google.auto.value.extension.memoized.Memoized;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Comparators;
 import com.google.common.collect.ImmutableClassToInstanceMap;
@@ -18,7 +20,9 @@ import com.google.errorprone.CodeTransformer;
 import com.google.errorprone.CompositeCodeTransformer;
 import com.google.errorprone.DescriptionListener;
 import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.annotations.Var;
 import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRule;
 import com.sun.source.util.TreePath;
 import com.sun.tools.javac.util.Context;
 import java.io.Serializable;
@@ -26,6 +30,7 @@ import java.lang.annotation.Annotation;
 import java.util.Iterator;
 import java.util.Optional;
 import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
 import tech.picnic.errorprone.refaster.annotation.OnlineDocumentation;
 import tech.picnic.errorprone.refaster.annotation.Severity;
 
@@ -38,10 +43,19 @@ import tech.picnic.errorprone.refaster.annotation.Severity;
  * CompositeCodeTransformer} as a fallback, if any.
  */
 @AutoValue
+@AutoValue.CopyAnnotations
+@SuppressWarnings(
+    "serial" /* The subclass generated for `@Memoized` does not declare a `serialVersionUID`. */)
 public abstract class AnnotatedCompositeCodeTransformer implements CodeTransformer, Serializable {
   private static final long serialVersionUID = 1L;
   private static final Splitter CLASS_NAME_SPLITTER = Splitter.on('.').limit(2);
 
+  /**
+   * The severity bounds for the most recently seen {@link ErrorProneOptions}. Unlike the {@link
+   * #reportingDetails()}, these depend on the compilation, and so cannot be {@link Memoized}.
+   */
+  private transient volatile @Nullable SeverityBounds severityBounds;
+
   AnnotatedCompositeCodeTransformer() {}
 
   abstract String packageName();
@@ -69,30 +83,86 @@ public abstract class AnnotatedCompositeCodeTransformer implements CodeTransform
 
   @Override
   public final void apply(TreePath path, Context context, DescriptionListener listener) {
-    for (CodeTransformer transformer : transformers()) {
-      transformer.apply(
-          path,
-          context,
-          description ->
-              listener.onDescribed(augmentDescription(description, transformer, context)));
+    ImmutableList<CodeTransformer> transformers = transformers();
+    for (int i = 0; i < transformers.size(); i++) {
+      int delegateIndex = i;
+      transformers
+          .get(i)
+          .apply(
+              path,
+              context,
+              description ->
+                  listener.onDescribed(augmentDescription(description, delegateIndex, context)));
     }
   }
 
+  /**
+   * Augments the given {@link Description}, produced by the {@link #transformers() delegate} at the
+   * given index.
+   */
   @SuppressWarnings("RestrictedApi" /* We create a heavily customized `Description` here. */)
-  private Description augmentDescription(
-      Description description, CodeTransformer delegate, Context context) {
-    String shortCheckName = getShortCheckName(description.checkName);
+  final Description augmentDescription(
+      Description description, int delegateIndex, Context context) {
+    ReportingDetails details = reportingDetails().get(delegateIndex);
+    CheckIdentity identity =
+        details
+            .identity()
+            .filter(i -> i.fullCheckName().equals(description.checkName))
+            /* The delegate is not a `RefasterRule`, so the check name is not known in advance. */
+            .orElseGet(() -> identify(transformers().get(delegateIndex), description.checkName));
+
     return Description.builder(
             description.position,
-            shortCheckName,
-            getLinkPattern(delegate, shortCheckName).orElse(null),
-            getDescription(delegate))
-        .overrideSeverity(overrideSeverity(getSeverity(delegate), context))
+            identity.shortCheckName(),
+            identity.link().orElse(null),
+            details.description())
+        .overrideSeverity(getSeverityBounds(context).clamp(details.severity()))
         .addAllFixes(description.fixes)
         .build();
   }
 
-  private String getShortCheckName(String fullCheckName) {
+  /**
+   * Returns the reporting details of each delegate, in the same order as {@link #transformers()}.
+   *
+   * <p>These details are derived from annotations only once, upon first use. As they are not
+   * serialized, deserialized instances likewise derive them upon first use.
+   */
+  @Memoized
+  ImmutableList<ReportingDetails> reportingDetails() {
+    return transformers().stream()
+        .map(
+            delegate ->
+                ReportingDetails.create(
+                    delegate instanceof RefasterRule<?, ?> rule
+                        ? Optional.of(identify(delegate, rule.qualifiedTemplateClass()))
+                        : Optional.empty(),
+                    getDescription(delegate),
+                    getSeverity(delegate)))
+        .collect(toImmutableList());
+  }
+
+  private CheckIdentity identify(CodeTransformer delegate, String fullCheckName) {
+    String shortCheckName = getShortCheckName(fullCheckName);
+    return CheckIdentity.create(
+        fullCheckName, shortCheckName, getLinkPattern(delegate, shortCheckName));
+  }
+
+  /**
+   * Returns the severity bounds implied by the given context's {@link ErrorProneOptions}.
+   *
+   * <p>As these options are fixed for the duration of a compilation, the bounds are cached.
+   */
+  private SeverityBounds getSeverityBounds(Context context) {
+    ErrorProneOptions options = context.get(ErrorProneOptions.class);
+    @Var SeverityBounds bounds = severityBounds;
+    if (bounds == null || bounds.options != options) {
+      bounds = new SeverityBounds(options);
+      severityBounds = bounds;
+    }
+    return bounds;
+  }
+
+  final String getShortCheckName(String fullCheckName) {
     String packageName = packageName();
     if (packageName.isEmpty()) {
       return fullCheckName;
@@ -108,7 +178,7 @@ public abstract class AnnotatedCompositeCodeTransformer implements CodeTransform
     return fullCheckName.substring(prefix.length());
   }
 
-  private Optional<String> getLinkPattern(CodeTransformer delegate, String checkName) {
+  final Optional<String> getLinkPattern(CodeTransformer delegate, String checkName) {
     Iterator<String> nameComponents = CLASS_NAME_SPLITTER.splitToStream(checkName).iterator();
     return getAnnotationValue(OnlineDocumentation.class, OnlineDocumentation::value, delegate)
         .map(url -> url.replace(TOP_LEVEL_CLASS_URL_PLACEHOLDER, nameComponents.next()))
@@ -117,7 +187,7 @@ public abstract class AnnotatedCompositeCodeTransformer implements CodeTransform
                 url.replace(NESTED_CLASS_URL_PLACEHOLDER, Iterators.getNext(nameComponents, "")));
   }
 
-  private SeverityLevel getSeverity(CodeTransformer delegate) {
+  final SeverityLevel getSeverity(CodeTransformer delegate) {
     /*
      * The default severity should be kept in sync with the default severity of the
      * `tech.picnic.errorprone.refaster.runner.Refaster` bug checker. (The associated
@@ -126,7 +196,7 @@ public abstract class AnnotatedCompositeCodeTransformer implements CodeTransform
     return getAnnotationValue(Severity.class, Severity::value, delegate).orElse(SUGGESTION);
   }
 
-  private String getDescription(CodeTransformer delegate) {
+  final String getDescription(CodeTransformer delegate) {
     return getAnnotationValue(
             tech.picnic.errorprone.refaster.annotation.Description.class,
             tech.picnic.errorprone.refaster.annotation.Description::value,
@@ -146,11 +216,53 @@ public abstract class AnnotatedCompositeCodeTransformer implements CodeTransform
     return Optional.ofNullable(codeTransformer.annotations().getInstance(annotation));
   }
 
-  private static SeverityLevel overrideSeverity(SeverityLevel severity, Context context) {
-    ErrorProneOptions options = context.get(ErrorProneOptions.class);
-    SeverityLevel minSeverity = options.isSuggestionsAsWarnings() ? WARNING : SUGGESTION;
-    SeverityLevel maxSeverity = options.isDropErrorsToWarnings() ? WARNING : ERROR;
+  /** The details with which matches of a delegate {@link CodeTransformer} are reported. */
+  @AutoValue
+  abstract static class ReportingDetails {
+    /** The identity of the delegate's matches, if known in advance. */
+    abstract Optional<CheckIdentity> identity();
+
+    abstract String description();
+
+    abstract SeverityLevel severity();
+
+    static ReportingDetails create(
+        Optional<CheckIdentity> identity, String description, SeverityLevel severity) {
+      return new AutoValue_AnnotatedCompositeCodeTransformer_ReportingDetails(
+          identity, description, severity);
+    }
+  }
+
+  /** The check name of a delegate's matches, and the name and link with which they are reported. */
+  @AutoValue
+  abstract static class CheckIdentity {
+    abstract String fullCheckName();
 
-    return Comparators.max(Comparators.min(severity, minSeverity), maxSeverity);
+    abstract String shortCheckName();
+
+    abstract Optional<String> link();
+
+    static CheckIdentity create(
+        String fullCheckName, String shortCheckName, Optional<String> link) {
+      return new AutoValue_AnnotatedCompositeCodeTransformer_CheckIdentity(
+          fullCheckName, shortCheckName, link);
+    }
+  }
+
+  /** The bounds within which the severity of reported matches must lie. */
+  private static final class SeverityBounds {
+    private final ErrorProneOptions options;
+    private final SeverityLevel minSeverity;
+    private final SeverityLevel maxSeverity;
+
+    SeverityBounds(ErrorProneOptions options) {
+      this.options = options;
+      this.minSeverity = options.isSuggestionsAsWarnings() ? WARNING : SUGGESTION;
+      this.maxSeverity = options.isDropErrorsToWarnings() ? WARNING : ERROR;
+    }
+
+    SeverityLevel clamp(SeverityLevel severity) {
+      return Comparators.max(Comparators.min(severity, minSeverity), maxSeverity);
+    }
   }
 }
@@ -0,0 +1,686 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static java.util.Comparator.comparingInt;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getAfterTemplates;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getBeforeTemplates;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getRuleTypeVariablesKey;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getTypeVariables;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.isSuppressed;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.rejectsMatchesWithComments;
+
+import com.google.auto.value.AutoValue;
+import com.google.auto.value.extension.memoized.Memoized;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.DescriptionListener;
+import com.google.errorprone.SubContext;
+import com.google.errorprone.annotations.Var;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRule;
+import com.google.errorprone.refaster.Template;
+import com.google.errorprone.refaster.TemplateMatch;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.SimpleTreeVisitor;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCStatement;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.ListBuffer;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.tools.JavaFileManager;
+import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.matchers.MatcherResultCache;
+
+/**
+ * A scanner that applies many Refaster rules to a tree in a single traversal.
+ *
+ * <p>Rather than having each Refaster rule traverse the full tree, this scanner visits each subtree
+ * once, and at each subtree only tries the {@code @BeforeTemplate}s that may match it, based on its
+ * {@link Kind} and, for method invocations, the name of the invoked method. As such, the cost of
+ * applying a large number of rules is largely determined by the size of the tree, rather than by
+ * the number of rules.
+ *
+ * <p>Matches are reported with the same content and in the same order as if the given {@link
+ * CodeTransformer}s were {@link CodeTransformer#apply applied} one by one. To this end this class
+ * mirrors the traversal logic of Error Prone's own (package-private) {@code RefasterScanner}.
+ * {@link CodeTransformer}s other than {@link RefasterRule}s and {@link
+ * AnnotatedCompositeCodeTransformer}s are applied as-is. The same holds for all {@link
+ * RefasterRule}s if {@link RefasterIntrospection} was not verified against the Error Prone version
+ * in use, or cannot access the required Error Prone internals; in that case this class merely
+ * avoids repeated setup, but not repeated traversals.
+ */
+// XXX: The traversal logic mirrors that of Error Prone's `RefasterScanner`; keep it in sync when
+// upgrading Error Prone.
+public final class MultiRuleScanner {
+  private static final boolean INTROSPECTION_SUPPORTED = isIntrospectionSupported();
+  private static final SimpleTreeVisitor<Tree, @Nullable Void> SKIP_PARENS =
+      new SimpleTreeVisitor<>() {
+        @Override
+        public Tree visitParenthesized(ParenthesizedTree node, @Nullable Void unused) {
+          return node.getExpression().accept(this, null);
+        }
+
+        @Override
+        protected Tree defaultAction(Tree node, @Nullable Void unused) {
+          return node;
+        }
+      };
+
+  private MultiRuleScanner() {}
+
+  /**
+   * Tells whether {@link RefasterRule}s can be applied as part of a single traversal.
+   *
+   * <p>This requires that {@link RefasterIntrospection} has been {@link
+   * RefasterIntrospection#isVerifiedErrorProneVersion() verified} against the Error Prone version
+   * in use, and that it can access the Error Prone internals on which it relies.
+   */
+  @VisibleForTesting
+  static boolean isIntrospectionSupported() {
+    if (!RefasterIntrospection.isVerifiedErrorProneVersion()) {
+      return false;
+    }
+
+    try {
+      MethodHandles.lookup().ensureInitialized(RefasterIntrospection.class);
+      return true;
+    } catch (IllegalAccessException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Precomputes the information required to efficiently apply the given {@link CodeTransformer}
+   * using {@link #scan(List, TreePath, Context, DescriptionListener)}.
+   *
+   * <p>As this operation is relatively expensive, callers should cache the result.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @return A non-{@code null} {@link Rules} instance.
+   */
+  public static Rules prepare(CodeTransformer codeTransformer) {
+    return prepare(codeTransformer, ImmutableList.of());
+  }
+
+  /**
+   * Precomputes the information required to efficiently apply the given {@link CodeTransformer},
+   * reusing the given precomputed metadata of the rules that it wraps.
+   *
+   * <p>As this operation is relatively expensive, callers should cache the result.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @param metadata The {@link RefasterRuleMetadata#extract(AnnotatedCompositeCodeTransformer)
+   *     metadata} of the rules wrapped by the code transformer, if available; an empty list
+   *     otherwise.
+   * @return A non-{@code null} {@link Rules} instance.
+   */
+  public static Rules prepare(
+      CodeTransformer codeTransformer, List<RefasterRuleMetadata> metadata) {
+    return prepare(codeTransformer, metadata, INTROSPECTION_SUPPORTED);
+  }
+
+  /**
+   * Precomputes the information required to efficiently apply the given {@link CodeTransformer},
+   * optionally without introspecting {@link RefasterRule}s.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @param metadata The metadata of the rules wrapped by the code transformer, if available; an
+   *     empty list otherwise.
+   * @param introspect Whether to apply {@link RefasterRule}s as part of a single traversal, rather
+   *     than one by one.
+   * @return A non-{@code null} {@link Rules} instance.
+   */
+  @VisibleForTesting
+  static Rules prepare(
+      CodeTransformer codeTransformer, List<RefasterRuleMetadata> metadata, boolean introspect) {
+    if (!(codeTransformer instanceof AnnotatedCompositeCodeTransformer composite)) {
+      return new Rules(
+          ImmutableList.of(
+              Rule.create(
+                  codeTransformer,
+                  /* composite= */ null,
+                  /* index= */ 0,
+                  /* metadata= */ null,
+                  introspect)));
+    }
+
+    ImmutableList<CodeTransformer> delegates = composite.transformers();
+    boolean hasMetadata = metadata.size() == delegates.size();
+    return new Rules(
+        IntStream.range(0, delegates.size())
+            .mapToObj(
+                i ->
+                    Rule.create(
+                        delegates.get(i),
+                        composite,
+                        i,
+                        hasMetadata ? metadata.get(i) : null,
+                        introspect))
+            .collect(toImmutableList()));
+  }
+
+  /**
+   * Applies the given rules to the tree at the given path, reporting any matches to the given
+   * listener.
+   *
+   * @param rules The rules to apply, in order.
+   * @param path The path to the tree to which to apply the rules.
+   * @param context The context in which to apply the rules.
+   * @param listener The listener to which to report matches.
+   */
+  public static void scan(
+      List<Rules> rules, TreePath path, Context context, DescriptionListener listener) {
+    scan(rules, path, context, listener, /* profiler= */ null);
+  }
+
+  /**
+   * Applies the given rules to the tree at the given path, reporting any matches to the given
+   * listener, and statistics on the application of each rule to the given profiler, if any.
+   *
+   * @param rules The rules to apply, in order.
+   * @param path The path to the tree to which to apply the rules.
+   * @param context The context in which to apply the rules.
+   * @param listener The listener to which to report matches.
+   * @param profiler The profiler to which to report per-rule statistics; if {@code null}, no
+   *     statistics are collected.
+   */
+  public static void scan(
+      List<Rules> rules,
+      TreePath path,
+      Context context,
+      DescriptionListener listener,
+      @Nullable Profiler profiler) {
+    /*
+     * Matcher results are cached for the duration of this scan, such that expressions bound by the
+     * templates of multiple rules are not matched repeatedly.
+     */
+    Context scanContext = new SubContext(context);
+    MatcherResultCache.register(scanContext);
+
+    ImmutableList<ActiveRule> activeRules =
+        rules.stream()
+            .flatMap(r -> r.rules.stream())
+            .map(rule -> new ActiveRule(rule, scanContext, path))
+            .collect(toImmutableList());
+
+    new Scanner(activeRules, scanContext, /* profile= */ profiler != null)
+        .scan(path.getLeaf(), null);
+    for (ActiveRule activeRule : activeRules) {
+      if (activeRule.rule.refasterRule() == null) {
+        long start = System.nanoTime();
+        activeRule.rule.transformer().apply(path, scanContext, activeRule::report);
+        activeRule.wallTimeNanos += System.nanoTime() - start;
+        activeRule.matchAttempts++;
+      }
+    }
+
+    for (ActiveRule activeRule : activeRules) {
+      activeRule.matches.forEach(listener::onDescribed);
+      if (profiler != null) {
+        profiler.onRuleApplied(
+            activeRule.rule.name(),
+            activeRule.rule.estimatedCost(),
+            activeRule.wallTimeNanos,
+            activeRule.matchAttempts,
+            activeRule.matches.size());
+      }
+    }
+  }
+
+  /** A sink for statistics on the application of individual rules. */
+  public interface Profiler {
+    /**
+     * Records the application of a single rule to a tree.
+     *
+     * @param ruleName The name of the rule; for Refaster rules, this is the check name with which
+     *     its matches are reported.
+     * @param estimatedCost The estimated relative cost of matching the rule; see {@link
+     *     RefasterRuleMetadata#estimatedCost()}.
+     * @param wallTimeNanos The wall time spent matching the rule, in nanoseconds.
+     * @param matchAttempts The number of subtrees against which one of the rule's templates was
+     *     matched.
+     * @param matches The number of matches reported for the rule.
+     */
+    void onRuleApplied(
+        String ruleName, int estimatedCost, long wallTimeNanos, int matchAttempts, int matches);
+  }
+
+  /**
+   * The rules represented by a {@link CodeTransformer}, in a form suitable for efficient
+   * application.
+   */
+  public static final class Rules {
+    private final ImmutableList<Rule> rules;
+
+    private Rules(ImmutableList<Rule> rules) {
+      this.rules = rules;
+    }
+  }
+
+  /**
+   * A {@link CodeTransformer}, alongside the {@link AnnotatedCompositeCodeTransformer} that wraps
+   * it, if any, and, if it is a {@link RefasterRule}, the templates that it may match.
+   */
+  @AutoValue
+  abstract static class Rule {
+    abstract CodeTransformer transformer();
+
+    abstract @Nullable AnnotatedCompositeCodeTransformer composite();
+
+    /** The index of the {@link #transformer()} among the composite's delegates, if any. */
+    abstract int index();
+
+    /** The rule, if it is a {@link RefasterRule} that is applied as part of a single traversal. */
+    abstract @Nullable RefasterRule<?, ?> refasterRule();
+
+    abstract ImmutableList<DispatchedTemplate> beforeTemplates();
+
+    /** The precomputed metadata of the {@link #transformer()}, if available. */
+    abstract @Nullable RefasterRuleMetadata metadata();
+
+    /**
+     * The estimated relative cost of matching this rule; see {@link
+     * RefasterRuleMetadata#estimatedCost()}.
+     *
+     * <p>Absent precomputed metadata, the estimate is computed on first use, as it is only reported
+     * when profiling.
+     */
+    @Memoized
+    int estimatedCost() {
+      RefasterRuleMetadata metadata = metadata();
+      return metadata != null ? metadata.estimatedCost() : RuleCost.estimate(transformer());
+    }
+
+    /** Returns the name under which matches of this rule are reported. */
+    final String name() {
+      if (!(transformer() instanceof RefasterRule<?, ?> refasterRule)) {
+        return transformer().getClass().getName();
+      }
+
+      AnnotatedCompositeCodeTransformer composite = composite();
+      return composite == null
+          ? refasterRule.qualifiedTemplateClass()
+          : composite.getShortCheckName(refasterRule.qualifiedTemplateClass());
+    }
+
+    static Rule create(
+        CodeTransformer transformer,
+        @Nullable AnnotatedCompositeCodeTransformer composite,
+        int index,
+        @Nullable RefasterRuleMetadata metadata,
+        boolean introspect) {
+      if (!introspect || !(transformer instanceof RefasterRule<?, ?> refasterRule)) {
+        return new AutoValue_MultiRuleScanner_Rule(
+            transformer, composite, index, /* refasterRule= */ null, ImmutableList.of(), metadata);
+      }
+
+      return new AutoValue_MultiRuleScanner_Rule(
+          transformer,
+          composite,
+          index,
+          refasterRule,
+          getBeforeTemplates(refasterRule).stream()
+              .map(DispatchedTemplate::create)
+              .collect(toImmutableList()),
+          metadata);
+    }
+  }
+
+  /** A {@code @BeforeTemplate}, alongside a description of the trees that it may match. */
+  @AutoValue
+  abstract static class DispatchedTemplate {
+    abstract Template<?> template();
+
+    /** The kinds of trees that the template may match; empty if it may match any tree. */
+    abstract ImmutableSet<Kind> rootKinds();
+
+    /** The names of the methods whose invocations the template may match; empty if any. */
+    abstract ImmutableSet<String> rootMethodNames();
+
+    static DispatchedTemplate create(Template<?> template) {
+      return new AutoValue_MultiRuleScanner_DispatchedTemplate(
+          template,
+          TemplateRoots.getRootKinds(template),
+          TemplateRoots.getRootMethodNames(template));
+    }
+  }
+
+  /** A template of a rule being applied, and its position among all templates being applied. */
+  private static final class TemplateReference {
+    private final ActiveRule rule;
+    private final Template<?> template;
+    private final int ordinal;
+
+    TemplateReference(ActiveRule rule, Template<?> template, int ordinal) {
+      this.rule = rule;
+      this.template = template;
+      this.ordinal = ordinal;
+    }
+
+    int ordinal() {
+      return ordinal;
+    }
+  }
+
+  /** The state associated with a rule during a single invocation of {@link #scan}. */
+  private static final class ActiveRule {
+    private final Rule rule;
+    private final Context baseContext;
+    private final TreePath path;
+    private final List<Description> matches = new ArrayList<>();
+    private @Nullable Context ruleContext;
+    private int suppressionDepth;
+    private long wallTimeNanos;
+    private int matchAttempts;
+
+    ActiveRule(Rule rule, Context baseContext, TreePath path) {
+      this.rule = rule;
+      this.baseContext = baseContext;
+      this.path = path;
+    }
+
+    /** Mirrors {@code RefasterRule#prepareContext}. */
+    Context getRuleContext(RefasterRule<?, ?> refasterRule) {
+      if (ruleContext == null) {
+        JCCompilationUnit compilationUnit = (JCCompilationUnit) path.getCompilationUnit();
+        Context context = new SubContext(baseContext);
+        if (context.get(JavaFileManager.class) == null) {
+          JavacFileManager.preRegister(context);
+        }
+        context.put(JCCompilationUnit.class, compilationUnit);
+        context.put(PackageSymbol.class, compilationUnit.packge);
+        context.put(getRuleTypeVariablesKey(), getTypeVariables(refasterRule));
+        ruleContext = context;
+      }
+      return ruleContext;
+    }
+
+    /** Mirrors {@code RefasterScanner#scan}, for a single template and tree. */
+    @SuppressWarnings({
+      "LexicographicalAnnotationAttributeListing" /* `key-*` entry must remain last. */,
+      "RestrictedApi" /* We create a heavily customized `Description` here. */,
+      "unchecked" /* Each template produces matches that it can subsequently replace. */,
+      "key-to-resolve-AnnotationUseStyle-and-TrailingComment-check-conflict"
+    })
+    void match(Template<?> template, JCTree tree) {
+      RefasterRule<?, ?> refasterRule = rule.refasterRule();
+      if (refasterRule == null) {
+        return;
+      }
+
+      Context context = getRuleContext(refasterRule);
+      for (TemplateMatch match : template.match(tree, context)) {
+        if (rejectsMatchesWithComments(refasterRule)
+            && ASTHelpers.stringContainsComments(
+                match.getRange((JCCompilationUnit) path.getCompilationUnit()), context)) {
+          continue;
+        }
+
+        Description.Builder builder =
+            Description.builder(match.getLocation(), refasterRule.qualifiedTemplateClass(), "", "")
+                .overrideSeverity(WARNING);
+        ImmutableList<? extends Template<?>> afterTemplates = getAfterTemplates(refasterRule);
+        if (afterTemplates.isEmpty()) {
+          builder.addFix(SuggestedFix.prefixWith(match.getLocation(), "/* match found */ "));
+        } else {
+          for (Template<?> afterTemplate : afterTemplates) {
+            builder.addFix(((Template<TemplateMatch>) afterTemplate).replace(match));
+          }
+        }
+        report(builder.build());
+      }
+    }
+
+    void report(Description description) {
+      AnnotatedCompositeCodeTransformer composite = rule.composite();
+      matches.add(
+          composite == null
+              ? description
+              : composite.augmentDescription(description, rule.index(), baseContext));
+    }
+  }
+
+  /**
+   * A {@link TreeScanner} that, at each subtree, tries only the templates that may match said
+   * subtree.
+   */
+  private static final class Scanner extends TreeScanner<@Nullable Void, @Nullable Void> {
+    private final ImmutableList<ActiveRule> activeRules;
+    private final Context context;
+    private final boolean profile;
+    private final Map<Kind, List<TemplateReference>> templatesByKind = new EnumMap<>(Kind.class);
+    private final Map<String, List<TemplateReference>> invocationTemplatesByName = new HashMap<>();
+    private final List<TemplateReference> unconstrainedTemplates = new ArrayList<>();
+    private final ListMultimap<String, ActiveRule> rulesByTemplateClass =
+        MultimapBuilder.hashKeys().arrayListValues().build();
+
+    Scanner(ImmutableList<ActiveRule> activeRules, Context context, boolean profile) {
+      this.activeRules = activeRules;
+      this.context = context;
+      this.profile = profile;
+
+      @Var int ordinal = 0;
+      for (ActiveRule activeRule : activeRules) {
+        RefasterRule<?, ?> refasterRule = activeRule.rule.refasterRule();
+        if (refasterRule != null) {
+          rulesByTemplateClass.put(refasterRule.qualifiedTemplateClass(), activeRule);
+          for (DispatchedTemplate template : activeRule.rule.beforeTemplates()) {
+            register(new TemplateReference(activeRule, template.template(), ordinal++), template);
+          }
+        }
+      }
+    }
+
+    private void register(TemplateReference reference, DispatchedTemplate template) {
+      if (template.rootKinds().isEmpty()) {
+        unconstrainedTemplates.add(reference);
+        return;
+      }
+
+      for (Kind kind : template.rootKinds()) {
+        if (kind == Kind.METHOD_INVOCATION && !template.rootMethodNames().isEmpty()) {
+          for (String name : template.rootMethodNames()) {
+            invocationTemplatesByName.computeIfAbsent(name, k -> new ArrayList<>()).add(reference);
+          }
+        } else {
+          templatesByKind.computeIfAbsent(kind, k -> new ArrayList<>()).add(reference);
+        }
+      }
+    }
+
+    @Override
+    public @Nullable Void scan(@Nullable Tree tree, @Nullable Void unused) {
+      if (tree == null) {
+        return null;
+      }
+
+      for (TemplateReference reference : getCandidateTemplates(tree)) {
+        if (reference.rule.suppressionDepth == 0) {
+          if (profile) {
+            long start = System.nanoTime();
+            reference.rule.match(reference.template, (JCTree) tree);
+            reference.rule.wallTimeNanos += System.nanoTime() - start;
+            reference.rule.matchAttempts++;
+          } else {
+            reference.rule.match(reference.template, (JCTree) tree);
+          }
+        }
+      }
+
+      return super.scan(tree, null);
+    }
+
+    /**
+     * Returns the templates that may match the given tree, in the order in which they would be
+     * tried if each rule were applied separately.
+     */
+    private List<TemplateReference> getCandidateTemplates(Tree tree) {
+      List<TemplateReference> kindCandidates =
+          templatesByKind.getOrDefault(tree.getKind(), ImmutableList.of());
+      @Var List<TemplateReference> nameCandidates = ImmutableList.of();
+      if (tree instanceof MethodInvocationTree invocation) {
+        String methodName = getMethodName(invocation.getMethodSelect());
+        if (methodName != null) {
+          nameCandidates = invocationTemplatesByName.getOrDefault(methodName, ImmutableList.of());
+        }
+      }
+
+      if (unconstrainedTemplates.isEmpty() && nameCandidates.isEmpty()) {
+        return kindCandidates;
+      }
+
+      List<TemplateReference> candidates = new ArrayList<>(unconstrainedTemplates);
+      candidates.addAll(kindCandidates);
+      candidates.addAll(nameCandidates);
+      candidates.sort(comparingInt(TemplateReference::ordinal));
+      return candidates;
+    }
+
+    private static @Nullable String getMethodName(Tree methodSelect) {
+      if (methodSelect instanceof MemberSelectTree memberSelect) {
+        return memberSelect.getIdentifier().toString();
+      }
+      return methodSelect instanceof IdentifierTree identifier
+          ? identifier.getName().toString()
+          : null;
+    }
+
+    @Override
+    public @Nullable Void visitClass(ClassTree node, @Nullable Void unused) {
+      Symbol symbol = ASTHelpers.getDeclaredSymbol(node);
+      List<ActiveRule> suppressedRules = suppress(node, symbol);
+      if (symbol != null) {
+        /* Rules are not applied to their own definition. */
+        for (ActiveRule activeRule :
+            rulesByTemplateClass.get(symbol.getQualifiedName().toString())) {
+          if (activeRule.suppressionDepth == 0) {
+            suppressedRules.add(activeRule);
+          }
+        }
+      }
+
+      suppressedRules.forEach(r -> r.suppressionDepth++);
+      try {
+        ListBuffer<JCStatement> statements = new ListBuffer<>();
+        for (Tree member : node.getMembers()) {
+          if (member instanceof JCStatement statement) {
+            statements.append(statement);
+          } else {
+            member.accept(this, null);
+          }
+        }
+        scan(TreeMaker.instance(context).Block(0, statements.toList()), null);
+      } finally {
+        suppressedRules.forEach(r -> r.suppressionDepth--);
+      }
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitMethod(MethodTree node, @Nullable Void unused) {
+      List<ActiveRule> suppressedRules = suppress(node, ASTHelpers.getDeclaredSymbol(node));
+      suppressedRules.forEach(r -> r.suppressionDepth++);
+      try {
+        return super.visitMethod(node, null);
+      } finally {
+        suppressedRules.forEach(r -> r.suppressionDepth--);
+      }
+    }
+
+    @Override
+    public @Nullable Void visitVariable(VariableTree node, @Nullable Void unused) {
+      List<ActiveRule> suppressedRules = suppress(node, ASTHelpers.getDeclaredSymbol(node));
+      suppressedRules.forEach(r -> r.suppressionDepth++);
+      try {
+        return super.visitVariable(node, null);
+      } finally {
+        suppressedRules.forEach(r -> r.suppressionDepth--);
+      }
+    }
+
+    /**
+     * Returns the active rules that are suppressed on the given declaration.
+     *
+     * <p>Whether a rule is suppressed is determined by the same Error Prone logic that its {@code
+     * RefasterScanner} uses. As that logic only considers the declaration's annotations, the
+     * comparatively expensive per-rule check is skipped for declarations without annotations.
+     */
+    private List<ActiveRule> suppress(Tree declaration, @Nullable Symbol symbol) {
+      List<ActiveRule> suppressedRules = new ArrayList<>();
+      if (symbol == null || symbol.getAnnotationMirrors().isEmpty()) {
+        return suppressedRules;
+      }
+
+      for (ActiveRule activeRule : activeRules) {
+        RefasterRule<?, ?> refasterRule = activeRule.rule.refasterRule();
+        if (refasterRule != null
+            && activeRule.suppressionDepth == 0
+            && isSuppressed(refasterRule, declaration, activeRule.getRuleContext(refasterRule))) {
+          suppressedRules.add(activeRule);
+        }
+      }
+      return suppressedRules;
+    }
+
+    @Override
+    public @Nullable Void visitDoWhileLoop(DoWhileLoopTree node, @Nullable Void unused) {
+      scan(node.getStatement(), null);
+      scan(SKIP_PARENS.visit(node.getCondition(), null), null);
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitWhileLoop(WhileLoopTree node, @Nullable Void unused) {
+      scan(SKIP_PARENS.visit(node.getCondition(), null), null);
+      scan(node.getStatement(), null);
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitSynchronized(SynchronizedTree node, @Nullable Void unused) {
+      scan(SKIP_PARENS.visit(node.getExpression(), null), null);
+      scan(node.getBlock(), null);
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitIf(IfTree node, @Nullable Void unused) {
+      scan(SKIP_PARENS.visit(node.getCondition(), null), null);
+      scan(node.getThenStatement(), null);
+      scan(node.getElseStatement(), null);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package tech.picnic.errorprone.refaster;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.ErrorProneVersion;
+import com.google.errorprone.refaster.BlockTemplate;
+import com.google.errorprone.refaster.ExpressionTemplate;
+import com.google.errorprone.refaster.RefasterRule;
+import com.google.errorprone.refaster.Template;
+import com.google.errorprone.refaster.UAnyOf;
+import com.google.errorprone.refaster.UClassType;
+import com.google.errorprone.refaster.UExpression;
+import com.google.errorprone.refaster.UStatement;
+import com.google.errorprone.refaster.UStaticIdent;
+import com.google.errorprone.refaster.UType;
+import com.google.errorprone.refaster.UTypeVar;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.util.Context;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Utility class that provides access to otherwise inaccessible parts of Error Prone's Refaster
+ * template representation.
+ *
+ * <p>Several relevant methods of {@link RefasterRule} and related classes are package-private; this
+ * class accesses them through {@link MethodHandles#privateLookupIn private lookups}.
+ */
+// XXX: Consider contributing public accessors for these properties upstream, after which this class
+// can be dropped.
+public final class RefasterIntrospection {
+  /**
+   * The Error Prone version against which the internals accessed by this class were last verified.
+   *
+   * <p>Upon upgrading Error Prone, verify that the accessed internals, as well as the traversal
+   * logic mirrored by {@link MultiRuleScanner}, are unchanged, and update this value accordingly.
+   */
+  @VisibleForTesting static final String VERIFIED_ERROR_PRONE_VERSION = "2.32.0";
+
+  private static final String UCLASS_IDENT_FQCN = "com.google.errorprone.refaster.UClassIdent";
+  private static final Class<?> UCLASS_IDENT = getClass(UCLASS_IDENT_FQCN);
+  private static final Class<?> UMATCHES = getClass("com.google.errorprone.refaster.UMatches");
+  private static final String UPRIMITIVE_TYPE_FQCN =
+      "com.google.errorprone.refaster.UPrimitiveType";
+  private static final Class<?> UPRIMITIVE_TYPE = getClass(UPRIMITIVE_TYPE_FQCN);
+  private static final Function<Object, ?> REFASTER_RULE_BEFORE_TEMPLATES =
+      getAccessor(RefasterRule.class, "beforeTemplates", ImmutableList.class);
+  private static final Function<Object, ?> EXPRESSION_TEMPLATE_EXPRESSION =
+      getAccessor(ExpressionTemplate.class, "expression", UExpression.class);
+  private static final Function<Object, ?> BLOCK_TEMPLATE_TEMPLATE_STATEMENTS =
+      getAccessor(BlockTemplate.class, "templateStatements", ImmutableList.class);
+  private static final Function<Object, ?> UANY_OF_EXPRESSIONS =
+      getAccessor(UAnyOf.class, "expressions", ImmutableList.class);
+  private static final Function<Object, ?> UCLASS_TYPE_TYPE_ARGUMENTS =
+      getAccessor(UClassType.class, "typeArguments", ImmutableList.class);
+  private static final Function<Object, ?> USTATIC_IDENT_CLASS_IDENT =
+      getAccessor(UStaticIdent.class, "classIdent", UCLASS_IDENT);
+  private static final Function<Object, ?> REFASTER_RULE_AFTER_TEMPLATES =
+      getAccessor(RefasterRule.class, "afterTemplates", ImmutableList.class);
+  private static final Function<Object, ?> REFASTER_RULE_TYPE_VARIABLES =
+      getAccessor(RefasterRule.class, "typeVariables", ImmutableList.class);
+  private static final Function<Object, ?> REFASTER_RULE_REJECT_MATCHES_WITH_COMMENTS =
+      getAccessor(RefasterRule.class, "rejectMatchesWithComments", boolean.class);
+  private static final Supplier<?> REFASTER_RULE_RULE_TYPE_VARS =
+      getStaticFieldAccessor(RefasterRule.class, "RULE_TYPE_VARS", Context.Key.class);
+  private static final Function<Object[], ?> REFASTER_SUPPRESSION_HELPER_SUPPRESSED =
+      getStaticMethodAccessor(
+          getClass("com.google.errorprone.refaster.RefasterSuppressionHelper"),
+          "suppressed",
+          MethodType.methodType(boolean.class, RefasterRule.class, Tree.class, Context.class));
+
+  private RefasterIntrospection() {}
+
+  /**
+   * Tells whether the Error Prone version in use is the version against which this class was {@link
+   * #VERIFIED_ERROR_PRONE_VERSION verified}.
+   *
+   * <p>Builds of Error Prone that do not declare their version, such as forks, are assumed to be
+   * compatible.
+   *
+   * @return {@code false} iff a different Error Prone version is used, in which case the Error
+   *     Prone internals accessed by this class may behave differently, even if they are present.
+   */
+  public static boolean isVerifiedErrorProneVersion() {
+    return ErrorProneVersion.loadVersionFromPom()
+        .transform(VERIFIED_ERROR_PRONE_VERSION::equals)
+        .or(Boolean.TRUE);
+  }
+
+  /**
+   * Tells whether the given object is a {@code com.google.errorprone.refaster.UClassIdent}.
+   *
+   * @param object The object of interest.
+   * @return {@code true} iff the given object is a class identifier that is part of a Refaster
+   *     template.
+   */
+  public static boolean isUClassIdent(Object object) {
+    return UCLASS_IDENT.isInstance(object);
+  }
+
+  /**
+   * Tells whether the given object is a {@code com.google.errorprone.refaster.UMatches}.
+   *
+   * @param object The object of interest.
+   * @return {@code true} iff the given object is a template expression constrained by a
+   *     {@code @Matches} or {@code @NotMatches} annotation.
+   */
+  public static boolean isUMatches(Object object) {
+    return UMATCHES.isInstance(object);
+  }
+
+  /**
+   * Tells whether the given object is a {@code com.google.errorprone.refaster.UPrimitiveType}.
+   *
+   * @param object The object of interest.
+   * @return {@code true} iff the given object is a primitive type that is part of a Refaster
+   *     template.
+   */
+  public static boolean isUPrimitiveType(Object object) {
+    return UPRIMITIVE_TYPE.isInstance(object);
+  }
+
+  /**
+   * Returns the {@code @BeforeTemplate}s of the given {@link RefasterRule}.
+   *
+   * @param rule The Refaster rule of interest.
+   * @return A non-{@code null} list of templates.
+   */
+  public static ImmutableList<? extends Template<?>> getBeforeTemplates(RefasterRule<?, ?> rule) {
+    return invoke(REFASTER_RULE_BEFORE_TEMPLATES, rule);
+  }
+
+  /**
+   * Returns the expression matched by the given {@link ExpressionTemplate}.
+   *
+   * @param template The template of interest.
+   * @return A non-{@code null} template expression.
+   */
+  public static UExpression getExpression(ExpressionTemplate template) {
+    return invoke(EXPRESSION_TEMPLATE_EXPRESSION, template);
+  }
+
+  /**
+   * Returns the statements matched by the given {@link BlockTemplate}.
+   *
+   * @param template The template of interest.
+   * @return A non-{@code null} list of template statements.
+   */
+  public static ImmutableList<UStatement> getTemplateStatements(BlockTemplate template) {
+    return invoke(BLOCK_TEMPLATE_TEMPLATE_STATEMENTS, template);
+  }
+
+  /**
+   * Returns the alternatives that may be matched by the given expression.
+   *
+   * <p>{@link UAnyOf#accept} delegates to the first alternative only, so code that must consider
+   * all alternatives of a {@code Refaster.anyOf} expression should use this method instead. Nested
+   * {@code Refaster.anyOf} expressions are flattened.
+   *
+   * @param expression The expression of interest.
+   * @return The alternatives of the given {@code Refaster.anyOf} expression, or else a singleton
+   *     list containing the given expression.
+   */
+  public static ImmutableList<UExpression> getAlternatives(UExpression expression) {
+    if (!(expression instanceof UAnyOf anyOf)) {
+      return ImmutableList.of(expression);
+    }
+
+    ImmutableList.Builder<UExpression> alternatives = ImmutableList.builder();
+    for (UExpression alternative :
+        RefasterIntrospection.<ImmutableList<UExpression>>invoke(UANY_OF_EXPRESSIONS, anyOf)) {
+      alternatives.addAll(getAlternatives(alternative));
+    }
+    return alternatives.build();
+  }
+
+  /**
+   * Returns the type arguments of the given {@link UClassType}.
+   *
+   * @param type The class type of interest.
+   * @return A non-{@code null} list of type arguments.
+   */
+  public static ImmutableList<UType> getTypeArguments(UClassType type) {
+    return invoke(UCLASS_TYPE_TYPE_ARGUMENTS, type);
+  }
+
+  /**
+   * Returns the fully qualified name of the class that declares the member referenced by the given
+   * {@link UStaticIdent}.
+   *
+   * @param staticIdent The static member identifier of interest.
+   * @return A non-{@code null} fully qualified class name.
+   */
+  public static String getOwnerClassName(UStaticIdent staticIdent) {
+    return RefasterIntrospection.<IdentifierTree>invoke(USTATIC_IDENT_CLASS_IDENT, staticIdent)
+        .getName()
+        .toString();
+  }
+
+  /**
+   * Returns the {@code @AfterTemplate}s of the given {@link RefasterRule}.
+   *
+   * @param rule The Refaster rule of interest.
+   * @return A non-{@code null} list of templates.
+   */
+  public static ImmutableList<? extends Template<?>> getAfterTemplates(RefasterRule<?, ?> rule) {
+    return invoke(REFASTER_RULE_AFTER_TEMPLATES, rule);
+  }
+
+  /**
+   * Returns the type variables declared by the given {@link RefasterRule}.
+   *
+   * @param rule The Refaster rule of interest.
+   * @return A non-{@code null} list of type variables.
+   */
+  public static ImmutableList<UTypeVar> getTypeVariables(RefasterRule<?, ?> rule) {
+    return invoke(REFASTER_RULE_TYPE_VARIABLES, rule);
+  }
+
+  /**
+   * Tells whether matches of the given {@link RefasterRule} that contain comments are rejected.
+   *
+   * @param rule The Refaster rule of interest.
+   * @return {@code true} iff the rule does not report matches of code containing comments.
+   */
+  public static boolean rejectsMatchesWithComments(RefasterRule<?, ?> rule) {
+    return (Boolean) invoke(REFASTER_RULE_REJECT_MATCHES_WITH_COMMENTS, rule);
+  }
+
+  /**
+   * Returns the {@link Context} key under which the type variables of the {@link RefasterRule}
+   * being applied are registered.
+   *
+   * @return A non-{@code null} context key.
+   */
+  @SuppressWarnings("unchecked" /* Trusted by construction. */)
+  public static Context.Key<ImmutableList<UTypeVar>> getRuleTypeVariablesKey() {
+    return (Context.Key<ImmutableList<UTypeVar>>) REFASTER_RULE_RULE_TYPE_VARS.get();
+  }
+
+  /**
+   * Tells whether the given {@link RefasterRule} is suppressed on the given declaration, in the
+   * same manner as Error Prone's own Refaster implementation does.
+   *
+   * @param rule The Refaster rule of interest.
+   * @param tree The class, method or variable declaration of interest.
+   * @param context The context in which the rule is applied.
+   * @return {@code true} iff the rule must not be applied to the given declaration.
+   */
+  public static boolean isSuppressed(RefasterRule<?, ?> rule, Tree tree, Context context) {
+    return (Boolean)
+        REFASTER_SUPPRESSION_HELPER_SUPPRESSED.apply(new Object[] {rule, tree, context});
+  }
+
+  private static Class<?> getClass(String fqcn) {
+    try {
+      return Class.forName(fqcn, /* initialize= */ false, RefasterRule.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(String.format("Failed to load class `%s`", fqcn), e);
+    }
+  }
+
+  @SuppressWarnings("unchecked" /* `Function#apply` is adapted to the accessor's signature. */)
+  private static Function<Object, ?> getAccessor(
+      Class<?> clazz, String methodName, Class<?> returnType) {
+    try {
+      return MethodHandleProxies.asInterfaceInstance(
+          Function.class,
+          MethodHandles.privateLookupIn(clazz, MethodHandles.lookup())
+              .findVirtual(clazz, methodName, MethodType.methodType(returnType)));
+    } catch (IllegalAccessException | NoSuchMethodException e) {
+      throw new IllegalStateException(
+          String.format("Cannot access method `%s` of class `%s`", methodName, clazz.getName()), e);
+    }
+  }
+
+  private static Supplier<?> getStaticFieldAccessor(
+      Class<?> clazz, String fieldName, Class<?> fieldType) {
+    try {
+      return MethodHandleProxies.asInterfaceInstance(
+          Supplier.class,
+          MethodHandles.privateLookupIn(clazz, MethodHandles.lookup())
+              .findStaticGetter(clazz, fieldName, fieldType));
+    } catch (IllegalAccessException | NoSuchFieldException e) {
+      throw new IllegalStateException(
+          String.format("Cannot access field `%s` of class `%s`", fieldName, clazz.getName()), e);
+    }
+  }
+
+  /**
+   * Returns a function that invokes the specified static method with the elements of the provided
+   * array as arguments.
+   */
+  @SuppressWarnings("unchecked" /* `Function#apply` is adapted to the method's signature. */)
+  private static Function<Object[], ?> getStaticMethodAccessor(
+      Class<?> clazz, String methodName, MethodType methodType) {
+    try {
+      return MethodHandleProxies.asInterfaceInstance(
+          Function.class,
+          MethodHandles.privateLookupIn(clazz, MethodHandles.lookup())
+              .findStatic(clazz, methodName, methodType)
+              .asSpreader(Object[].class, methodType.parameterCount()));
+    } catch (IllegalAccessException | NoSuchMethodException e) {
+      throw new IllegalStateException(
+          String.format("Cannot access method `%s` of class `%s`", methodName, clazz.getName()), e);
+    }
+  }
+
+  @SuppressWarnings({"TypeParameterUnusedInFormals", "unchecked"} /* Trusted by construction. */)
+  private static <T> T invoke(Function<Object, ?> accessor, Object instance) {
+    return (T) accessor.apply(instance);
+  }
+}
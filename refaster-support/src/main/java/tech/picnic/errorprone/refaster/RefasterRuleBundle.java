@@ -0,0 +1,285 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.function.Predicate.not;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.annotations.Var;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization.ClassDescriptorTable;
+
+/**
+ * Utility class that reads and writes bundles of compiled Refaster rules.
+ *
+ * <p>A bundle contains all Refaster rules compiled into a single output directory. The bundle
+ * starts with an index listing the name and {@link RefasterRuleMetadata} of each rule collection,
+ * followed by the {@link ClassDescriptorTable}s shared by the rule collections and the serialized
+ * {@link CodeTransformer}s. As such, the index can be inspected without deserializing any rules.
+ *
+ * <p>Bundles are stored in the {@value #RESOURCE_DIRECTORY} directory, under a name derived from
+ * their content (see {@link #getResourceName(byte[])}), such that the bundles of different
+ * artifacts do not clash. The bundles located in a directory are listed in an {@value
+ * #INDEX_RESOURCE_NAME} resource, with one bundle name per line. Such indices can be merged by
+ * concatenation, e.g. when creating an "uber JAR" that contains the bundles of multiple artifacts.
+ */
+public final class RefasterRuleBundle {
+  /** The directory containing bundles of compiled Refaster rules. */
+  public static final String RESOURCE_DIRECTORY = "META-INF/refaster/";
+
+  /**
+   * The name of the resource that lists the names of the bundles located in {@value
+   * #RESOURCE_DIRECTORY}.
+   */
+  public static final String INDEX_RESOURCE_NAME = RESOURCE_DIRECTORY + "bundles";
+
+  /**
+   * The version of the bundle format produced by {@link #write(List, OutputStream)}. This value
+   * must be incremented on any incompatible format change.
+   */
+  public static final int FORMAT_VERSION = 2;
+
+  private static final int MAGIC = 0x52465242;
+
+  private RefasterRuleBundle() {}
+
+  /**
+   * Derives the name of the resource in which to store the given serialized bundle, relative to
+   * {@value #RESOURCE_DIRECTORY}.
+   *
+   * <p>As the name is derived from the bundle's content, the bundles of different artifacts have
+   * different names, while repeated compilation of the same rules yields the same name.
+   *
+   * @param bundle The serialized bundle, as produced by {@link #write(List, OutputStream)}.
+   * @return A non-{@code null} resource name.
+   */
+  public static String getResourceName(byte[] bundle) {
+    return String.format(
+        "rules-%s.bin", Hashing.sha256().hashBytes(bundle).toString().substring(0, 16));
+  }
+
+  /**
+   * Serializes the given bundle names as an index.
+   *
+   * @param bundleNames The names of the bundles to list, relative to {@value #RESOURCE_DIRECTORY}.
+   * @param out The stream to which to write; not closed by this method.
+   * @throws IOException If the index cannot be written.
+   */
+  public static void writeIndex(List<String> bundleNames, OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, UTF_8);
+    for (String bundleName : bundleNames) {
+      writer.write(bundleName);
+      /* Each line is terminated, such that concatenated indices remain valid. */
+      writer.write('\n');
+    }
+    writer.flush();
+  }
+
+  /**
+   * Deserializes an index previously serialized using {@link #writeIndex(List, OutputStream)}, or a
+   * concatenation of such indices.
+   *
+   * @param in The stream from which to read; not closed by this method.
+   * @return The names of the listed bundles, without duplicates, in the order in which they are
+   *     listed.
+   * @throws IOException If the index cannot be read.
+   */
+  public static ImmutableSet<String> readIndex(InputStream in) throws IOException {
+    return new String(in.readAllBytes(), UTF_8)
+        .lines()
+        .map(String::strip)
+        .filter(not(String::isEmpty))
+        .collect(toImmutableSet());
+  }
+
+  /**
+   * Serializes the given bundle entries.
+   *
+   * @param entries The entries to serialize.
+   * @param out The stream to which to write; not closed by this method.
+   * @throws IOException If the bundle cannot be written.
+   */
+  public static void write(List<Entry> entries, OutputStream out) throws IOException {
+    /* Each table is written once, even if shared by multiple entries. */
+    Map<ClassDescriptorTable, Integer> tableIndices = new LinkedHashMap<>();
+    for (Entry entry : entries) {
+      tableIndices.putIfAbsent(entry.classDescriptors(), tableIndices.size());
+    }
+    List<byte[]> tables = new ArrayList<>(tableIndices.size());
+    for (ClassDescriptorTable table : tableIndices.keySet()) {
+      tables.add(table.toByteArray());
+    }
+
+    DataOutputStream output = new DataOutputStream(out);
+    output.writeInt(MAGIC);
+    output.writeInt(FORMAT_VERSION);
+    output.writeInt(entries.size());
+    for (Entry entry : entries) {
+      output.writeUTF(entry.name());
+      RefasterRuleMetadata.write(entry.metadata(), output);
+      output.writeInt(tableIndices.get(entry.classDescriptors()));
+      output.writeLong(entry.codeTransformer().size());
+    }
+    output.writeInt(tables.size());
+    for (byte[] table : tables) {
+      output.writeLong(table.length);
+    }
+    for (byte[] table : tables) {
+      output.write(table);
+    }
+    for (Entry entry : entries) {
+      entry.codeTransformer().copyTo(output);
+    }
+    output.flush();
+  }
+
+  /**
+   * Deserializes a bundle previously serialized using {@link #write(List, OutputStream)}.
+   *
+   * <p>The input is read in full; the serialized {@link CodeTransformer}s and {@link
+   * ClassDescriptorTable}s of the returned entries are views of the data read.
+   *
+   * @param in The stream from which to read; not closed by this method.
+   * @return The entries of the bundle, in the order in which they were written.
+   * @throws IOException If the stream does not contain a bundle in a supported format.
+   */
+  public static ImmutableList<Entry> read(InputStream in) throws IOException {
+    byte[] data = in.readAllBytes();
+    ByteArrayInputStream source = new ByteArrayInputStream(data);
+    DataInputStream input = new DataInputStream(source);
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a Refaster rule bundle");
+    }
+
+    int version = input.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(
+          String.format("Unsupported Refaster rule bundle format version %s", version));
+    }
+
+    int entryCount = input.readInt();
+    ImmutableList.Builder<String> names = ImmutableList.builderWithExpectedSize(entryCount);
+    ImmutableList.Builder<ImmutableList<RefasterRuleMetadata>> metadata =
+        ImmutableList.builderWithExpectedSize(entryCount);
+    int[] tableIndices = new int[entryCount];
+    long[] sizes = new long[entryCount];
+    for (int i = 0; i < entryCount; i++) {
+      names.add(input.readUTF());
+      metadata.add(RefasterRuleMetadata.read(input));
+      tableIndices[i] = input.readInt();
+      sizes[i] = input.readLong();
+    }
+
+    int tableCount = input.readInt();
+    long[] tableSizes = new long[tableCount];
+    for (int i = 0; i < tableCount; i++) {
+      tableSizes[i] = input.readLong();
+    }
+
+    ByteSource blobs = ByteSource.wrap(data);
+    @Var long offset = data.length - (long) source.available();
+    ImmutableList.Builder<ClassDescriptorTable> tables =
+        ImmutableList.builderWithExpectedSize(tableCount);
+    for (int i = 0; i < tableCount; i++) {
+      if (offset + tableSizes[i] > data.length) {
+        throw new IOException("Truncated Refaster rule bundle");
+      }
+      tables.add(ClassDescriptorTable.read(blobs.slice(offset, tableSizes[i])));
+      offset += tableSizes[i];
+    }
+
+    ImmutableList<String> entryNames = names.build();
+    ImmutableList<ImmutableList<RefasterRuleMetadata>> entryMetadata = metadata.build();
+    ImmutableList<ClassDescriptorTable> entryTables = tables.build();
+    ImmutableList.Builder<Entry> entries = ImmutableList.builderWithExpectedSize(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      if (offset + sizes[i] > data.length) {
+        throw new IOException("Truncated Refaster rule bundle");
+      }
+      if (tableIndices[i] < 0 || tableIndices[i] >= tableCount) {
+        throw new IOException("Corrupt Refaster rule bundle");
+      }
+      entries.add(
+          Entry.create(
+              entryNames.get(i),
+              entryMetadata.get(i),
+              blobs.slice(offset, sizes[i]),
+              entryTables.get(tableIndices[i])));
+      offset += sizes[i];
+    }
+    return entries.build();
+  }
+
+  /** A collection of Refaster rules contained in a bundle. */
+  @AutoValue
+  public abstract static class Entry {
+    Entry() {}
+
+    /**
+     * Returns the name of the rule collection.
+     *
+     * @return The fully qualified flat name of the class from which the rules were compiled, such
+     *     that collections compiled from same-named classes in different packages are distinct.
+     */
+    public abstract String name();
+
+    /**
+     * Returns the metadata of the rules in this collection.
+     *
+     * @return The rules' metadata, in the order in which the rules are applied.
+     */
+    public abstract ImmutableList<RefasterRuleMetadata> metadata();
+
+    /**
+     * Returns the serialized form of the {@link CodeTransformer} representing the rules in this
+     * collection.
+     *
+     * @return A source of serialized {@link CodeTransformer} data.
+     */
+    public abstract ByteSource codeTransformer();
+
+    /**
+     * Returns the table of class descriptors with which the {@link #codeTransformer()} was
+     * serialized.
+     *
+     * @return A table that may be shared with other entries.
+     */
+    public abstract ClassDescriptorTable classDescriptors();
+
+    /**
+     * Creates a new bundle entry.
+     *
+     * @param name The fully qualified flat name of the class from which the rules were compiled.
+     * @param metadata The metadata of the rules in this collection.
+     * @param codeTransformer The serialized form of the {@link CodeTransformer} representing the
+     *     rules in this collection.
+     * @param classDescriptors The table of class descriptors with which the {@link CodeTransformer}
+     *     was serialized.
+     * @return A non-{@code null} {@link Entry}.
+     */
+    public static Entry create(
+        String name,
+        ImmutableList<RefasterRuleMetadata> metadata,
+        ByteSource codeTransformer,
+        ClassDescriptorTable classDescriptors) {
+      return new AutoValue_RefasterRuleBundle_Entry(
+          name, metadata, codeTransformer, classDescriptors);
+    }
+  }
+}
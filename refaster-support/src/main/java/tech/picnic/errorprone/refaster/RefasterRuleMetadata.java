@@ -0,0 +1,295 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getBeforeTemplates;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.BugPattern.SeverityLevel;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.refaster.RefasterRule;
+import com.google.errorprone.refaster.Template;
+import com.sun.source.tree.Tree.Kind;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Precomputed properties of a single Refaster rule, which allow rule selection and reporting
+ * decisions to be made without deserializing the associated {@link CodeTransformer}.
+ *
+ * <p>Instances are {@link #extract(AnnotatedCompositeCodeTransformer) extracted} at compile time
+ * and {@link #write(List, OutputStream) persisted} in the index of a {@link RefasterRuleBundle}.
+ */
+@AutoValue
+public abstract class RefasterRuleMetadata {
+  /**
+   * The version of the serialization format produced by {@link #write(List, OutputStream)}. This
+   * value must be incremented on any incompatible format change.
+   */
+  public static final int FORMAT_VERSION = 2;
+
+  private static final int MAGIC = 0x52464d44;
+
+  RefasterRuleMetadata() {}
+
+  /**
+   * Returns the name of the rule, as reported in diagnostics.
+   *
+   * @return The rule name, excluding its package name.
+   */
+  public abstract String name();
+
+  /**
+   * Returns the identifiers required by the rule.
+   *
+   * @return The sets of identifiers, at least one of which must be fully present in a compilation
+   *     unit for the rule to match it.
+   * @see RequiredIdentifiers#extract(CodeTransformer)
+   */
+  public abstract ImmutableSet<ImmutableSet<String>> requiredIdentifiers();
+
+  /**
+   * Returns the types required by the rule.
+   *
+   * @return The sets of fully qualified type names, at least one of which must be fully resolvable
+   *     for the rule to match any code.
+   * @see RequiredIdentifiers#extractTypes(CodeTransformer)
+   */
+  public abstract ImmutableSet<ImmutableSet<String>> requiredTypes();
+
+  /**
+   * Returns the kinds of trees that the rule may match.
+   *
+   * @return The kinds of trees at which a match may be rooted; an empty set if the rule may match
+   *     trees of any kind.
+   */
+  public abstract ImmutableSet<Kind> rootKinds();
+
+  /**
+   * Returns the severity with which the rule reports matches, before any command line overrides.
+   *
+   * @return The rule's declared severity.
+   */
+  public abstract SeverityLevel severity();
+
+  /**
+   * Returns the description with which the rule reports matches.
+   *
+   * @return A non-{@code null} description.
+   */
+  public abstract String description();
+
+  /**
+   * Returns the online documentation of the rule, if any.
+   *
+   * @return The rule's documentation URL, if any.
+   */
+  public abstract Optional<String> link();
+
+  /**
+   * Returns the estimated relative cost of matching the rule.
+   *
+   * @return A non-negative cost estimate.
+   * @see RuleCost#estimate(CodeTransformer)
+   */
+  public abstract int estimatedCost();
+
+  /**
+   * Creates a {@link RefasterRuleMetadata} instance.
+   *
+   * @param name The name of the rule, excluding its package name.
+   * @param requiredIdentifiers The identifier requirements of the rule.
+   * @param requiredTypes The type requirements of the rule.
+   * @param rootKinds The kinds of trees that the rule may match, or an empty set if the rule may
+   *     match trees of any kind.
+   * @param severity The severity with which the rule reports matches.
+   * @param description The description with which the rule reports matches.
+   * @param link The online documentation of the rule, if any.
+   * @param estimatedCost The estimated relative cost of matching the rule.
+   * @return A non-{@code null} {@link RefasterRuleMetadata} instance.
+   */
+  public static RefasterRuleMetadata create(
+      String name,
+      ImmutableSet<ImmutableSet<String>> requiredIdentifiers,
+      ImmutableSet<ImmutableSet<String>> requiredTypes,
+      ImmutableSet<Kind> rootKinds,
+      SeverityLevel severity,
+      String description,
+      Optional<String> link,
+      int estimatedCost) {
+    return new AutoValue_RefasterRuleMetadata(
+        name,
+        requiredIdentifiers,
+        requiredTypes,
+        rootKinds,
+        severity,
+        description,
+        link,
+        estimatedCost);
+  }
+
+  /**
+   * Derives the metadata of each of the rules wrapped by the given {@link
+   * AnnotatedCompositeCodeTransformer}.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @return A list of rule metadata, in the same order as the wrapped {@link CodeTransformer}s.
+   */
+  public static ImmutableList<RefasterRuleMetadata> extract(
+      AnnotatedCompositeCodeTransformer codeTransformer) {
+    return codeTransformer.transformers().stream()
+        .map(delegate -> extractRule(codeTransformer, delegate))
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Serializes the given rule metadata in a compact, versioned binary format.
+   *
+   * @param metadata The rule metadata to serialize.
+   * @param out The stream to which to write; not closed by this method.
+   * @throws IOException If the metadata cannot be written.
+   */
+  public static void write(List<RefasterRuleMetadata> metadata, OutputStream out)
+      throws IOException {
+    DataOutputStream output = new DataOutputStream(out);
+    output.writeInt(MAGIC);
+    output.writeInt(FORMAT_VERSION);
+    output.writeInt(metadata.size());
+    for (RefasterRuleMetadata rule : metadata) {
+      output.writeUTF(rule.name());
+      writeAlternatives(rule.requiredIdentifiers(), output);
+      writeAlternatives(rule.requiredTypes(), output);
+      output.writeInt(rule.rootKinds().size());
+      for (Kind kind : rule.rootKinds()) {
+        output.writeUTF(kind.name());
+      }
+      output.writeUTF(rule.severity().name());
+      output.writeUTF(rule.description());
+      output.writeBoolean(rule.link().isPresent());
+      if (rule.link().isPresent()) {
+        output.writeUTF(rule.link().orElseThrow());
+      }
+      output.writeInt(rule.estimatedCost());
+    }
+    output.flush();
+  }
+
+  /**
+   * Deserializes rule metadata previously serialized using {@link #write(List, OutputStream)}.
+   *
+   * @param in The stream from which to read; not closed by this method.
+   * @return The deserialized rule metadata.
+   * @throws IOException If the stream does not contain rule metadata in a supported format.
+   */
+  public static ImmutableList<RefasterRuleMetadata> read(InputStream in) throws IOException {
+    DataInputStream input = new DataInputStream(in);
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a Refaster rule metadata file");
+    }
+
+    int version = input.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(
+          String.format("Unsupported Refaster rule metadata format version %s", version));
+    }
+
+    int ruleCount = input.readInt();
+    ImmutableList.Builder<RefasterRuleMetadata> metadata =
+        ImmutableList.builderWithExpectedSize(ruleCount);
+    for (int i = 0; i < ruleCount; i++) {
+      String name = input.readUTF();
+      ImmutableSet<ImmutableSet<String>> requiredIdentifiers = readAlternatives(input);
+      ImmutableSet<ImmutableSet<String>> requiredTypes = readAlternatives(input);
+      Set<Kind> rootKinds = EnumSet.noneOf(Kind.class);
+      for (int j = input.readInt(); j > 0; j--) {
+        rootKinds.add(Kind.valueOf(input.readUTF()));
+      }
+      SeverityLevel severity = SeverityLevel.valueOf(input.readUTF());
+      String description = input.readUTF();
+      Optional<String> link = input.readBoolean() ? Optional.of(input.readUTF()) : Optional.empty();
+      int estimatedCost = input.readInt();
+      metadata.add(
+          create(
+              name,
+              requiredIdentifiers,
+              requiredTypes,
+              Sets.immutableEnumSet(rootKinds),
+              severity,
+              description,
+              link,
+              estimatedCost));
+    }
+    return metadata.build();
+  }
+
+  private static RefasterRuleMetadata extractRule(
+      AnnotatedCompositeCodeTransformer composite, CodeTransformer delegate) {
+    String name =
+        delegate instanceof RefasterRule<?, ?> rule
+            ? composite.getShortCheckName(rule.qualifiedTemplateClass())
+            : delegate.toString();
+    return create(
+        name,
+        RequiredIdentifiers.extract(delegate),
+        RequiredIdentifiers.extractTypes(delegate),
+        getRootKinds(delegate),
+        composite.getSeverity(delegate),
+        composite.getDescription(delegate),
+        composite.getLinkPattern(delegate, name),
+        RuleCost.estimate(delegate));
+  }
+
+  private static ImmutableSet<Kind> getRootKinds(CodeTransformer codeTransformer) {
+    if (!(codeTransformer instanceof RefasterRule<?, ?> rule)) {
+      return ImmutableSet.of();
+    }
+
+    Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+    for (Template<?> template : getBeforeTemplates(rule)) {
+      ImmutableSet<Kind> templateKinds = TemplateRoots.getRootKinds(template);
+      if (templateKinds.isEmpty()) {
+        return ImmutableSet.of();
+      }
+      kinds.addAll(templateKinds);
+    }
+    return Sets.immutableEnumSet(kinds);
+  }
+
+  private static void writeAlternatives(
+      ImmutableSet<ImmutableSet<String>> alternatives, DataOutput out) throws IOException {
+    out.writeInt(alternatives.size());
+    for (ImmutableSet<String> alternative : alternatives) {
+      out.writeInt(alternative.size());
+      for (String element : alternative) {
+        out.writeUTF(element);
+      }
+    }
+  }
+
+  private static ImmutableSet<ImmutableSet<String>> readAlternatives(DataInput in)
+      throws IOException {
+    int alternativeCount = in.readInt();
+    ImmutableSet.Builder<ImmutableSet<String>> alternatives =
+        ImmutableSet.builderWithExpectedSize(alternativeCount);
+    for (int i = 0; i < alternativeCount; i++) {
+      int elementCount = in.readInt();
+      ImmutableSet.Builder<String> alternative = ImmutableSet.builderWithExpectedSize(elementCount);
+      for (int j = 0; j < elementCount; j++) {
+        alternative.add(in.readUTF());
+      }
+      alternatives.add(alternative.build());
+    }
+    return alternatives.build();
+  }
+}
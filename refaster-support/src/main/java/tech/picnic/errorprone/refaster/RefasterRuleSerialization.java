@@ -0,0 +1,364 @@
+package tech.picnic.errorprone.refaster;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.function.Function.identity;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getTypeArguments;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.isUClassIdent;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.isUPrimitiveType;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+import com.google.common.primitives.Primitives;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.refaster.StringName;
+import com.google.errorprone.refaster.UClassType;
+import com.google.errorprone.refaster.UMethodType;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility class that (de)serializes compiled Refaster rules.
+ *
+ * <p>Rules are serialized in a compact, versioned format, which differs from plain Java
+ * serialization in two ways:
+ *
+ * <ul>
+ *   <li>Equal strings, names, class identifiers and (type variable-free) types are interned, such
+ *       that each is written only once.
+ *   <li>Class descriptors are not written as part of the rule, but are instead stored in a {@link
+ *       ClassDescriptorTable} that may be shared by many rules, such as all rules in a {@link
+ *       RefasterRuleBundle}. Each descriptor is thus written only once for all of these rules.
+ * </ul>
+ *
+ * <p>The class descriptors themselves, including the name and type of each serialized field, are
+ * written as with plain Java serialization. As such, rules may be deserialized against versions of
+ * Error Prone and other libraries that differ from those with which they were compiled: fields are
+ * matched by name, and fields added or removed in the interim are tolerated to the same extent as
+ * with plain Java serialization.
+ *
+ * <p>The serialized form is not compressed, trading size for cheaper deserialization.
+ *
+ * <p>For compatibility, {@link #deserialize(InputStream, ClassDescriptorTable)} also accepts rules
+ * serialized using plain Java serialization.
+ *
+ * <p>Upon deserialization the aforementioned immutable values are {@link #canonicalize(Object)
+ * canonicalized}, such that the many identical types and names referenced by different rules are
+ * shared between all rules loaded by the same class loader.
+ */
+public final class RefasterRuleSerialization {
+  /**
+   * The version of the serialization format produced by {@link #serialize(CodeTransformer,
+   * ClassDescriptorTable)}. This value must be incremented on any incompatible format change.
+   */
+  public static final int FORMAT_VERSION = 2;
+
+  private static final int MAGIC = 0x52465354;
+  private static final ImmutableMap<String, Class<?>> PRIMITIVE_TYPES =
+      Maps.uniqueIndex(Primitives.allPrimitiveTypes(), Class::getName);
+  private static final Interner<Object> CANONICAL_VALUES = Interners.newWeakInterner();
+
+  private RefasterRuleSerialization() {}
+
+  /**
+   * Serializes the given {@link CodeTransformer} in the compact format described above.
+   *
+   * @param codeTransformer The code transformer to serialize; must be {@link java.io.Serializable}.
+   * @param classDescriptors The table to which to add the descriptors of the serialized classes;
+   *     the same table must be passed to {@link #deserialize(InputStream, ClassDescriptorTable)}.
+   * @return The serialized form of the given {@link CodeTransformer}.
+   * @throws IOException If the {@link CodeTransformer} cannot be serialized.
+   */
+  public static byte[] serialize(
+      CodeTransformer codeTransformer, ClassDescriptorTable classDescriptors) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(FORMAT_VERSION);
+    header.flush();
+
+    try (CompactObjectOutputStream output = new CompactObjectOutputStream(out, classDescriptors)) {
+      output.writeObject(codeTransformer);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Deserializes a {@link CodeTransformer} serialized using either {@link
+   * #serialize(CodeTransformer, ClassDescriptorTable)} or plain Java serialization.
+   *
+   * @param in The stream from which to read; not closed by this method.
+   * @param classDescriptors The table with which the {@link CodeTransformer} was serialized;
+   *     ignored in case of plain Java serialization.
+   * @return The deserialized {@link CodeTransformer}.
+   * @throws IOException If the stream does not contain a supported serialized form.
+   * @throws java.io.ObjectStreamException If the serialized form is incompatible with the classes
+   *     on the classpath, for example because a class's serial version UID changed.
+   * @throws ClassNotFoundException If a class referenced by the serialized form cannot be found.
+   * @throws ClassCastException If the stream does not represent a {@link CodeTransformer}.
+   */
+  @SuppressWarnings("BanSerializableRead" /* Part of the Refaster API. */)
+  public static CodeTransformer deserialize(InputStream in, ClassDescriptorTable classDescriptors)
+      throws IOException, ClassNotFoundException {
+    BufferedInputStream input = new BufferedInputStream(in);
+    input.mark(Integer.BYTES);
+    if (new DataInputStream(input).readInt() != MAGIC) {
+      /* Assume plain Java serialization. */
+      input.reset();
+      return (CodeTransformer) new CanonicalizingObjectInputStream(input).readObject();
+    }
+
+    int version = new DataInputStream(input).readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(
+          String.format("Unsupported Refaster rule serialization format version %s", version));
+    }
+
+    return (CodeTransformer) new CompactObjectInputStream(input, classDescriptors).readObject();
+  }
+
+  /**
+   * A table of class descriptors, referenced by index from the rules serialized using it.
+   *
+   * <p>A table is either created empty, in which case {@link
+   * RefasterRuleSerialization#serialize(CodeTransformer, ClassDescriptorTable)} adds descriptors to
+   * it, or {@link #read(ByteSource) read} from a previously {@link #toByteArray() serialized} form.
+   * In the latter case the descriptors are only read once first needed, such that tables of which
+   * no rule is deserialized remain cheap.
+   *
+   * <p>Instances of this class are thread-safe.
+   */
+  public static final class ClassDescriptorTable {
+    private final List<ObjectStreamClass> descriptors = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private @Nullable ByteSource source;
+    private boolean loaded;
+
+    /** Creates an empty table. */
+    public ClassDescriptorTable() {
+      this.source = null;
+      this.loaded = true;
+    }
+
+    private ClassDescriptorTable(ByteSource source) {
+      this.source = source;
+      this.loaded = false;
+    }
+
+    /**
+     * Creates a table from its serialized form.
+     *
+     * @param source The serialized form of the table, as produced by {@link #toByteArray()}; read
+     *     once the first descriptor is looked up.
+     * @return A non-{@code null} table.
+     */
+    public static ClassDescriptorTable read(ByteSource source) {
+      return new ClassDescriptorTable(source);
+    }
+
+    /**
+     * Serializes this table.
+     *
+     * @return The serialized form of this table.
+     * @throws IOException If the table cannot be serialized.
+     */
+    public synchronized byte[] toByteArray() throws IOException {
+      if (source != null) {
+        return source.read();
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (ObjectOutputStream output = new ObjectOutputStream(out)) {
+        output.writeInt(descriptors.size());
+        for (ObjectStreamClass descriptor : descriptors) {
+          output.writeObject(descriptor);
+        }
+      }
+      return out.toByteArray();
+    }
+
+    synchronized int indexOf(ObjectStreamClass descriptor) throws IOException {
+      load();
+      Integer index = indices.get(descriptor.getName());
+      if (index != null) {
+        return index;
+      }
+
+      /* The table no longer matches its serialized form. */
+      source = null;
+      descriptors.add(descriptor);
+      indices.put(descriptor.getName(), descriptors.size() - 1);
+      return descriptors.size() - 1;
+    }
+
+    synchronized ObjectStreamClass get(int index) throws IOException {
+      load();
+      if (index < 0 || index >= descriptors.size()) {
+        throw new StreamCorruptedException("Invalid class descriptor index " + index);
+      }
+      return descriptors.get(index);
+    }
+
+    @SuppressWarnings("BanSerializableRead" /* Part of the Refaster API. */)
+    private void load() throws IOException {
+      if (loaded) {
+        return;
+      }
+
+      ByteSource serializedForm = requireNonNull(source, "source");
+      try (InputStream in = serializedForm.openStream();
+          ObjectInputStream input = new ClassResolvingObjectInputStream(in)) {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+          ObjectStreamClass descriptor = (ObjectStreamClass) input.readObject();
+          descriptors.add(descriptor);
+          indices.put(descriptor.getName(), i);
+        }
+      } catch (ClassCastException | ClassNotFoundException e) {
+        throw new IOException("Invalid class descriptor table", e);
+      }
+      loaded = true;
+    }
+  }
+
+  /**
+   * An {@link ObjectOutputStream} that interns equal immutable values, and that writes class
+   * descriptors to a {@link ClassDescriptorTable}.
+   */
+  private static final class CompactObjectOutputStream extends ObjectOutputStream {
+    private final Map<Object, Object> interned = new HashMap<>();
+    private final ClassDescriptorTable classDescriptors;
+
+    CompactObjectOutputStream(OutputStream out, ClassDescriptorTable classDescriptors)
+        throws IOException {
+      super(out);
+      this.classDescriptors = classDescriptors;
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected @Nullable Object replaceObject(@Nullable Object obj) {
+      return obj != null && isImmutableValue(obj) ? interned.computeIfAbsent(obj, identity()) : obj;
+    }
+
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+      writeInt(classDescriptors.indexOf(desc));
+    }
+  }
+
+  /**
+   * Returns the canonical instance of the given value, if it is an immutable value that may be
+   * shared between Refaster rules.
+   *
+   * @param obj The object of interest.
+   * @return The canonical instance equal to the given object, or the object itself if it cannot be
+   *     shared.
+   */
+  static Object canonicalize(Object obj) {
+    return isImmutableValue(obj) ? CANONICAL_VALUES.intern(obj) : obj;
+  }
+
+  /**
+   * Tells whether the given object is a string, name, class identifier or type that does not
+   * (transitively) reference any mutable type variables.
+   */
+  private static boolean isImmutableValue(Object obj) {
+    return obj instanceof String
+        || obj instanceof StringName
+        || isUClassIdent(obj)
+        || isClosedType(obj);
+  }
+
+  private static boolean isClosedType(Object obj) {
+    if (isUPrimitiveType(obj)) {
+      return true;
+    }
+
+    if (obj instanceof UClassType classType) {
+      return getTypeArguments(classType).stream().allMatch(RefasterRuleSerialization::isClosedType);
+    }
+
+    return obj instanceof UMethodType methodType
+        && isClosedType(methodType.getReturnType())
+        && methodType.getParameterTypes().stream()
+            .allMatch(RefasterRuleSerialization::isClosedType);
+  }
+
+  /** An {@link ObjectInputStream} that {@link #canonicalize(Object) canonicalizes} values read. */
+  private static class CanonicalizingObjectInputStream extends ObjectInputStream {
+    CanonicalizingObjectInputStream(InputStream in) throws IOException {
+      super(in);
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected final @Nullable Object resolveObject(@Nullable Object obj) {
+      return obj == null ? null : canonicalize(obj);
+    }
+  }
+
+  /**
+   * A {@link CanonicalizingObjectInputStream} that reads the data written by {@link
+   * CompactObjectOutputStream}, resolving classes using the class loader that loaded this class.
+   */
+  private static final class CompactObjectInputStream extends CanonicalizingObjectInputStream {
+    private final ClassDescriptorTable classDescriptors;
+
+    CompactObjectInputStream(InputStream in, ClassDescriptorTable classDescriptors)
+        throws IOException {
+      super(in);
+      this.classDescriptors = classDescriptors;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException {
+      return classDescriptors.get(readInt());
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+      return RefasterRuleSerialization.resolveClass(desc);
+    }
+  }
+
+  /**
+   * An {@link ObjectInputStream} that resolves classes using the class loader that loaded this
+   * class.
+   */
+  private static final class ClassResolvingObjectInputStream extends ObjectInputStream {
+    ClassResolvingObjectInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+      return RefasterRuleSerialization.resolveClass(desc);
+    }
+  }
+
+  private static Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+    String name = desc.getName();
+    Class<?> primitiveType = PRIMITIVE_TYPES.get(name);
+    return primitiveType != null
+        ? primitiveType
+        : Class.forName(
+            name, /* initialize= */ false, RefasterRuleSerialization.class.getClassLoader());
+  }
+}
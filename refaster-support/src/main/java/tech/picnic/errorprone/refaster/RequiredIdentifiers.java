@@ -0,0 +1,327 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getAlternatives;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getBeforeTemplates;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getExpression;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getOwnerClassName;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getTemplateStatements;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.isUClassIdent;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.CompositeCodeTransformer;
+import com.google.errorprone.refaster.BlockTemplate;
+import com.google.errorprone.refaster.ExpressionTemplate;
+import com.google.errorprone.refaster.RefasterRule;
+import com.google.errorprone.refaster.Template;
+import com.google.errorprone.refaster.UAnyOf;
+import com.google.errorprone.refaster.UExpression;
+import com.google.errorprone.refaster.UMemberSelect;
+import com.google.errorprone.refaster.UMethodIdent;
+import com.google.errorprone.refaster.UStaticIdent;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility class that determines which identifiers must be present in a compilation unit for a
+ * Refaster rule to possibly match it.
+ *
+ * <p>The requirements of a rule are expressed as a set of alternatives: a rule can only match code
+ * that contains all identifiers of at least one of these alternatives. Distinct alternatives arise
+ * from rules with multiple {@code @BeforeTemplate} methods and from {@code Refaster.anyOf}
+ * expressions.
+ *
+ * <p>The extracted requirements are conservative: identifiers are only required if Refaster cannot
+ * match the template without them, such as method names and the names of referenced types. Names of
+ * template parameters, local variables and type variables are never required.
+ *
+ * <p>In the same manner, the fully qualified names of the types that must be resolvable for a rule
+ * to match can be {@link #extractTypes(CodeTransformer) extracted}.
+ */
+// XXX: Also require operators, such as the `==` in `a.length == 0`.
+public final class RequiredIdentifiers {
+  /**
+   * The maximum number of alternatives tracked for a single template; larger sets are collapsed
+   * into a single alternative comprising the identifiers shared by all of them.
+   */
+  private static final int MAX_ALTERNATIVES = 256;
+
+  private static final ImmutableSet<ImmutableSet<String>> UNCONSTRAINED =
+      ImmutableSet.of(ImmutableSet.of());
+
+  private RequiredIdentifiers() {}
+
+  /**
+   * Returns the sets of identifiers, at least one of which must be fully present in a compilation
+   * unit for the given {@link CodeTransformer} to possibly match it.
+   *
+   * <p>If the given {@link CodeTransformer} is not a (composite of) Refaster rule(s), then no
+   * requirements are imposed.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @return A non-empty set of alternative identifier requirements. If this set contains an empty
+   *     set, then the {@link CodeTransformer} may match any code.
+   */
+  public static ImmutableSet<ImmutableSet<String>> extract(CodeTransformer codeTransformer) {
+    return extractRequirements(codeTransformer, RequirementKind.IDENTIFIER);
+  }
+
+  /**
+   * Returns the sets of fully qualified type names, at least one of which must be fully resolvable
+   * for the given {@link CodeTransformer} to possibly match any code.
+   *
+   * <p>If the given {@link CodeTransformer} is not a (composite of) Refaster rule(s), then no
+   * requirements are imposed.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @return A non-empty set of alternative type requirements. If this set contains an empty set,
+   *     then the {@link CodeTransformer} does not reference any types that must be resolvable.
+   */
+  public static ImmutableSet<ImmutableSet<String>> extractTypes(CodeTransformer codeTransformer) {
+    return extractRequirements(codeTransformer, RequirementKind.TYPE);
+  }
+
+  /**
+   * Collects the identifiers present in the given tree, in a form that can be compared against the
+   * requirements returned by {@link #extract(CodeTransformer)}.
+   *
+   * @param tree The tree of interest; typically a compilation unit.
+   * @return The set of simple names, member names and member reference names found in the tree.
+   */
+  public static ImmutableSet<String> collect(Tree tree) {
+    Set<String> identifiers = new HashSet<>();
+    new TreeScanner<@Nullable Void, @Nullable Void>() {
+      @Override
+      public @Nullable Void visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+        identifiers.add(node.getName().toString());
+        return null;
+      }
+
+      @Override
+      public @Nullable Void visitMemberSelect(MemberSelectTree node, @Nullable Void unused) {
+        identifiers.add(node.getIdentifier().toString());
+        return super.visitMemberSelect(node, null);
+      }
+
+      @Override
+      public @Nullable Void visitMemberReference(MemberReferenceTree node, @Nullable Void unused) {
+        identifiers.add(node.getName().toString());
+        return super.visitMemberReference(node, null);
+      }
+    }.scan(tree, null);
+    return ImmutableSet.copyOf(identifiers);
+  }
+
+  private static ImmutableSet<ImmutableSet<String>> extractRequirements(
+      CodeTransformer codeTransformer, RequirementKind kind) {
+    if (codeTransformer instanceof AnnotatedCompositeCodeTransformer annotatedComposite) {
+      return extractAny(annotatedComposite.transformers().stream(), kind);
+    }
+
+    if (codeTransformer instanceof CompositeCodeTransformer composite) {
+      return extractAny(composite.transformers().stream(), kind);
+    }
+
+    if (codeTransformer instanceof RefasterRule<?, ?> rule) {
+      return minimize(
+          getBeforeTemplates(rule).stream()
+              .flatMap(template -> extractFromTemplate(template, kind).stream())
+              .collect(toImmutableSet()));
+    }
+
+    return UNCONSTRAINED;
+  }
+
+  private static ImmutableSet<ImmutableSet<String>> extractAny(
+      Stream<CodeTransformer> codeTransformers, RequirementKind kind) {
+    return minimize(
+        codeTransformers
+            .flatMap(transformer -> extractRequirements(transformer, kind).stream())
+            .collect(toImmutableSet()));
+  }
+
+  private static ImmutableSet<ImmutableSet<String>> extractFromTemplate(
+      Template<?> template, RequirementKind kind) {
+    List<Set<String>> alternatives = new ArrayList<>();
+    alternatives.add(new HashSet<>());
+
+    if (template instanceof ExpressionTemplate expressionTemplate) {
+      new TemplateIdentifierCollector(kind).scan(getExpression(expressionTemplate), alternatives);
+    } else if (template instanceof BlockTemplate blockTemplate) {
+      new TemplateIdentifierCollector(kind)
+          .scan(getTemplateStatements(blockTemplate), alternatives);
+    } else {
+      return UNCONSTRAINED;
+    }
+
+    return minimize(alternatives.stream().map(ImmutableSet::copyOf).collect(toImmutableSet()));
+  }
+
+  /**
+   * Drops alternatives that are supersets of other alternatives, as those impose strictly stronger
+   * requirements.
+   */
+  private static ImmutableSet<ImmutableSet<String>> minimize(
+      ImmutableSet<ImmutableSet<String>> alternatives) {
+    return alternatives.stream()
+        .filter(
+            candidate ->
+                alternatives.stream()
+                    .noneMatch(
+                        other -> other.size() < candidate.size() && candidate.containsAll(other)))
+        .collect(toImmutableSet());
+  }
+
+  private static String getSimpleName(String qualifiedName) {
+    return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+  }
+
+  /** The kinds of requirements that can be extracted from a Refaster template. */
+  private enum RequirementKind {
+    /** Simple names, member names and member reference names. */
+    IDENTIFIER,
+    /** Fully qualified names of referenced types. */
+    TYPE
+  }
+
+  /**
+   * A {@link TreeScanner} that adds the identifiers or types required by a Refaster template to
+   * each of the alternatives tracked.
+   */
+  private static final class TemplateIdentifierCollector
+      extends TreeScanner<@Nullable Void, List<Set<String>>> {
+    private final RequirementKind kind;
+
+    TemplateIdentifierCollector(RequirementKind kind) {
+      this.kind = kind;
+    }
+
+    @Override
+    public @Nullable Void scan(@Nullable Tree tree, List<Set<String>> alternatives) {
+      if (tree instanceof UAnyOf anyOf) {
+        scanAlternatives(getAlternatives(anyOf), alternatives);
+        return null;
+      }
+
+      return super.scan(tree, alternatives);
+    }
+
+    @Override
+    public @Nullable Void visitIdentifier(IdentifierTree node, List<Set<String>> alternatives) {
+      if (isUClassIdent(node)) {
+        String typeName = node.getName().toString();
+        require(kind == RequirementKind.TYPE ? typeName : getSimpleName(typeName), alternatives);
+      } else if (node instanceof UStaticIdent staticIdent) {
+        /*
+         * Static members may be statically imported, so only the type declaring the member is
+         * required to be present on the classpath; not its simple name in the source code.
+         */
+        require(
+            kind == RequirementKind.TYPE
+                ? getOwnerClassName(staticIdent)
+                : staticIdent.getName().toString(),
+            alternatives);
+      } else if (kind == RequirementKind.IDENTIFIER && node instanceof UMethodIdent) {
+        require(node.getName().toString(), alternatives);
+      }
+
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitMemberSelect(MemberSelectTree node, List<Set<String>> alternatives) {
+      String identifier = node.getIdentifier().toString();
+      if (kind == RequirementKind.IDENTIFIER
+          && !UMemberSelect.CONVERT_TO_IDENT.equals(identifier)) {
+        require(identifier, alternatives);
+      }
+
+      return super.visitMemberSelect(node, alternatives);
+    }
+
+    @Override
+    public @Nullable Void visitMemberReference(
+        MemberReferenceTree node, List<Set<String>> alternatives) {
+      if (kind == RequirementKind.IDENTIFIER) {
+        require(node.getName().toString(), alternatives);
+      }
+      return super.visitMemberReference(node, alternatives);
+    }
+
+    @Override
+    public @Nullable Void visitVariable(VariableTree node, List<Set<String>> alternatives) {
+      /* Matching code may declare the variable's type implicitly, so it is not considered. */
+      return scan(node.getInitializer(), alternatives);
+    }
+
+    @Override
+    public @Nullable Void visitMethodInvocation(
+        MethodInvocationTree node, List<Set<String>> alternatives) {
+      /* Matching code may omit explicit type arguments, so they are not considered. */
+      scan(node.getMethodSelect(), alternatives);
+      return scan(node.getArguments(), alternatives);
+    }
+
+    @Override
+    public @Nullable Void visitNewClass(NewClassTree node, List<Set<String>> alternatives) {
+      /* Matching code may omit explicit type arguments, so they are not considered. */
+      scan(node.getEnclosingExpression(), alternatives);
+      scan(node.getIdentifier(), alternatives);
+      scan(node.getArguments(), alternatives);
+      return scan(node.getClassBody(), alternatives);
+    }
+
+    @Override
+    public @Nullable Void visitParameterizedType(
+        ParameterizedTypeTree node, List<Set<String>> alternatives) {
+      /* Matching code may use the diamond operator, so type arguments are not considered. */
+      return scan(node.getType(), alternatives);
+    }
+
+    private void scanAlternatives(List<UExpression> expressions, List<Set<String>> alternatives) {
+      List<Set<String>> base = copy(alternatives);
+      alternatives.clear();
+      for (UExpression expression : expressions) {
+        List<Set<String>> branch = copy(base);
+        scan(expression, branch);
+        alternatives.addAll(branch);
+      }
+
+      if (alternatives.size() > MAX_ALTERNATIVES) {
+        Set<String> shared = new HashSet<>(alternatives.get(0));
+        alternatives.forEach(shared::retainAll);
+        alternatives.clear();
+        alternatives.add(shared);
+      }
+    }
+
+    private static void require(String identifier, List<Set<String>> alternatives) {
+      for (Set<String> alternative : alternatives) {
+        alternative.add(identifier);
+      }
+    }
+
+    private static List<Set<String>> copy(List<Set<String>> alternatives) {
+      List<Set<String>> copy = new ArrayList<>(alternatives.size());
+      for (Set<String> alternative : alternatives) {
+        copy.add(Sets.newHashSet(alternative));
+      }
+      return copy;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package tech.picnic.errorprone.refaster;
+
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getAlternatives;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getBeforeTemplates;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getExpression;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getTemplateStatements;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getTypeVariables;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.isUMatches;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.CompositeCodeTransformer;
+import com.google.errorprone.refaster.BlockTemplate;
+import com.google.errorprone.refaster.ExpressionTemplate;
+import com.google.errorprone.refaster.RefasterRule;
+import com.google.errorprone.refaster.Template;
+import com.google.errorprone.refaster.UAnyOf;
+import com.google.errorprone.refaster.UExpression;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility class that statically estimates the relative cost of matching a Refaster rule.
+ *
+ * <p>The estimate is derived from the rule's {@code @BeforeTemplate}s, and accounts for:
+ *
+ * <ul>
+ *   <li>the number of template nodes, as each must be unified with the matched code;
+ *   <li>the fan-out of {@code Refaster.anyOf} expressions, as each alternative is tried in turn;
+ *   <li>the number of {@code @Matches} and {@code @NotMatches} constraints, as the associated
+ *       matchers may perform arbitrarily expensive analyses; and
+ *   <li>the number of type variables declared by the rule and its templates, as these require type
+ *       inference.
+ * </ul>
+ *
+ * <p>The estimate is meant for relative comparisons only; it does not correspond to any unit.
+ */
+// XXX: Calibrate the weights below against `Refaster:Profile` measurements.
+public final class RuleCost {
+  private static final int ANY_OF_ALTERNATIVE_WEIGHT = 5;
+  private static final int MATCHER_WEIGHT = 20;
+  private static final int TYPE_VARIABLE_WEIGHT = 10;
+
+  private RuleCost() {}
+
+  /**
+   * Estimates the cost of matching the given {@link CodeTransformer}.
+   *
+   * <p>The estimate of a composite {@link CodeTransformer} is the sum of the estimates of its
+   * delegates. {@link CodeTransformer}s other than (composites of) Refaster rules are assigned an
+   * estimate of zero, as nothing is known about them.
+   *
+   * @param codeTransformer The code transformer of interest.
+   * @return A non-negative cost estimate.
+   */
+  public static int estimate(CodeTransformer codeTransformer) {
+    if (codeTransformer instanceof AnnotatedCompositeCodeTransformer annotatedComposite) {
+      return estimateAll(annotatedComposite.transformers());
+    }
+
+    if (codeTransformer instanceof CompositeCodeTransformer composite) {
+      return estimateAll(composite.transformers());
+    }
+
+    if (codeTransformer instanceof RefasterRule<?, ?> rule) {
+      int templateCost =
+          getBeforeTemplates(rule).stream().mapToInt(RuleCost::estimateTemplate).sum();
+      return templateCost + TYPE_VARIABLE_WEIGHT * getTypeVariables(rule).size();
+    }
+
+    return 0;
+  }
+
+  private static int estimateAll(List<CodeTransformer> codeTransformers) {
+    return codeTransformers.stream().mapToInt(RuleCost::estimate).sum();
+  }
+
+  private static int estimateTemplate(Template<?> template) {
+    CostAccumulator accumulator = new CostAccumulator();
+    if (template instanceof ExpressionTemplate expressionTemplate) {
+      accumulator.scan(getExpression(expressionTemplate), null);
+    } else if (template instanceof BlockTemplate blockTemplate) {
+      accumulator.scan(getTemplateStatements(blockTemplate), null);
+    }
+    return accumulator.cost + TYPE_VARIABLE_WEIGHT * template.templateTypeVariables().size();
+  }
+
+  /** A {@link TreeScanner} that accumulates the estimated cost of matching a template tree. */
+  private static final class CostAccumulator extends TreeScanner<@Nullable Void, @Nullable Void> {
+    private int cost;
+
+    @Override
+    public @Nullable Void scan(@Nullable Tree tree, @Nullable Void unused) {
+      if (tree == null) {
+        return null;
+      }
+
+      cost++;
+      if (isUMatches(tree)) {
+        cost += MATCHER_WEIGHT;
+      }
+
+      if (tree instanceof UAnyOf anyOf) {
+        ImmutableList<UExpression> alternatives = getAlternatives(anyOf);
+        cost += ANY_OF_ALTERNATIVE_WEIGHT * alternatives.size();
+        return scan(alternatives, null);
+      }
+
+      return super.scan(tree, null);
+    }
+  }
+}
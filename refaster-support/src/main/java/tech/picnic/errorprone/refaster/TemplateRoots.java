@@ -0,0 +1,150 @@
+package tech.picnic.errorprone.refaster;
+
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getAlternatives;
+import static tech.picnic.errorprone.refaster.RefasterIntrospection.getExpression;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.refaster.BlockTemplate;
+import com.google.errorprone.refaster.ExpressionTemplate;
+import com.google.errorprone.refaster.Template;
+import com.google.errorprone.refaster.UExpression;
+import com.google.errorprone.refaster.UFreeIdent;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.util.SimpleTreeVisitor;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility class that determines at which trees a match of a Refaster template may be rooted.
+ *
+ * <p>This information allows Refaster templates to be tried only against trees that they may
+ * possibly match.
+ */
+final class TemplateRoots {
+  private static final ImmutableSet<Kind> IDENTIFIER_KINDS =
+      Sets.immutableEnumSet(Kind.IDENTIFIER, Kind.MEMBER_SELECT);
+  private static final ImmutableSet<Kind> LITERAL_KINDS =
+      Sets.immutableEnumSet(
+          EnumSet.of(
+              Kind.BOOLEAN_LITERAL,
+              Kind.CHAR_LITERAL,
+              Kind.DOUBLE_LITERAL,
+              Kind.FLOAT_LITERAL,
+              Kind.INT_LITERAL,
+              Kind.LONG_LITERAL,
+              Kind.NULL_LITERAL,
+              Kind.STRING_LITERAL));
+
+  private TemplateRoots() {}
+
+  /**
+   * Returns the kinds of trees that the given template may match.
+   *
+   * @param template The template of interest.
+   * @return The kinds of trees at which a match may be rooted; an empty set if the template may
+   *     match trees of any kind.
+   */
+  static ImmutableSet<Kind> getRootKinds(Template<?> template) {
+    if (template instanceof ExpressionTemplate expressionTemplate) {
+      return getExpressionRootKinds(getExpression(expressionTemplate));
+    }
+
+    /* Block templates are matched against the statements of a block. */
+    return template instanceof BlockTemplate ? ImmutableSet.of(Kind.BLOCK) : ImmutableSet.of();
+  }
+
+  /**
+   * Returns the names of the methods that the given template may match, if it matches method
+   * invocations.
+   *
+   * @param template The template of interest.
+   * @return The names of the methods whose invocations may be matched; an empty set if invocations
+   *     of any method may be matched.
+   */
+  static ImmutableSet<String> getRootMethodNames(Template<?> template) {
+    if (!(template instanceof ExpressionTemplate expressionTemplate)) {
+      return ImmutableSet.of();
+    }
+
+    Set<String> names = new HashSet<>();
+    for (UExpression alternative : getAlternatives(getExpression(expressionTemplate))) {
+      if (alternative instanceof MethodInvocationTree invocation) {
+        Optional<String> name = getMethodName(invocation.getMethodSelect());
+        if (name.isEmpty()) {
+          return ImmutableSet.of();
+        }
+        names.add(name.orElseThrow());
+      }
+    }
+    return ImmutableSet.copyOf(names);
+  }
+
+  private static ImmutableSet<Kind> getExpressionRootKinds(UExpression expression) {
+    Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+    for (UExpression alternative : getAlternatives(expression)) {
+      ImmutableSet<Kind> alternativeKinds = alternative.accept(RootKindVisitor.INSTANCE, null);
+      if (alternativeKinds.isEmpty()) {
+        return ImmutableSet.of();
+      }
+      kinds.addAll(alternativeKinds);
+    }
+    return Sets.immutableEnumSet(kinds);
+  }
+
+  private static Optional<String> getMethodName(Tree methodSelect) {
+    if (methodSelect instanceof MemberSelectTree memberSelect) {
+      return Optional.of(memberSelect.getIdentifier().toString());
+    }
+
+    /* Other method selects, such as template parameters, are not tied to a specific name. */
+    return methodSelect instanceof IdentifierTree identifier && !(identifier instanceof UFreeIdent)
+        ? Optional.of(identifier.getName().toString())
+        : Optional.empty();
+  }
+
+  /**
+   * A visitor that determines the kinds of trees that may be matched by a Refaster template
+   * expression. An empty set indicates that trees of any kind may be matched.
+   */
+  private static final class RootKindVisitor
+      extends SimpleTreeVisitor<ImmutableSet<Kind>, @Nullable Void> {
+    private static final RootKindVisitor INSTANCE = new RootKindVisitor();
+
+    @Override
+    protected ImmutableSet<Kind> defaultAction(Tree node, @Nullable Void unused) {
+      return Sets.immutableEnumSet(node.getKind());
+    }
+
+    @Override
+    public ImmutableSet<Kind> visitIdentifier(IdentifierTree node, @Nullable Void unused) {
+      /* Template parameters match arbitrary expressions. */
+      return node instanceof UFreeIdent ? ImmutableSet.of() : IDENTIFIER_KINDS;
+    }
+
+    @Override
+    public ImmutableSet<Kind> visitMemberSelect(MemberSelectTree node, @Nullable Void unused) {
+      /* Member selects may also match statically imported members. */
+      return IDENTIFIER_KINDS;
+    }
+
+    @Override
+    public ImmutableSet<Kind> visitLiteral(LiteralTree node, @Nullable Void unused) {
+      return LITERAL_KINDS;
+    }
+
+    @Override
+    public ImmutableSet<Kind> visitOther(Tree node, @Nullable Void unused) {
+      /* Placeholder method invocations match arbitrary expressions. */
+      return ImmutableSet.of();
+    }
+  }
+}
@@ -112,6 +112,10 @@ public final class IsEmpty implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree tree, VisitorState state) {
+    return MatcherResultCache.matches(IsEmpty.class, tree, state, this::isEmpty);
+  }
+
+  private boolean isEmpty(ExpressionTree tree, VisitorState state) {
     return isEmptyArrayCreation(tree)
         || EMPTY_INSTANCE_FACTORY.matches(tree, state)
         || isEmptyCollectionConstructor(tree, state);
@@ -0,0 +1,78 @@
+package tech.picnic.errorprone.refaster.matchers;
+
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Matcher;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.util.Context;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of the results of {@link Matcher}s referenced by Refaster's {@link
+ * com.google.errorprone.refaster.annotation.Matches @Matches} and {@link
+ * com.google.errorprone.refaster.annotation.NotMatches @NotMatches} annotations.
+ *
+ * <p>When many Refaster rules are applied to the same compilation unit, the same expression is
+ * often bound by the templates of many rules, each of which may invoke the same (relatively
+ * expensive) matcher on it. Matchers can opt into memoization of their results by delegating to
+ * {@link #matches(Class, ExpressionTree, VisitorState, Matcher)}, in which case results are shared
+ * across all instances of the matcher's class. Results are cached only if a cache is {@link
+ * #register(Context) registered} with the {@link Context} in which the matcher is invoked; each
+ * cache should be scoped to a single compilation unit.
+ */
+public final class MatcherResultCache {
+  private static final Context.Key<MatcherResultCache> KEY = new Context.Key<>();
+
+  /* Trees are keyed by identity, as `JCTree` does not override `Object#equals`. */
+  private final Map<Class<?>, Map<Tree, Boolean>> results = new ConcurrentHashMap<>();
+
+  private MatcherResultCache() {}
+
+  /**
+   * Registers a new, empty cache with the given context.
+   *
+   * @param context The context with which to associate the cache; this context, or a descendant
+   *     thereof, should be used to match the trees of a single compilation unit only.
+   */
+  public static void register(Context context) {
+    context.put(KEY, new MatcherResultCache());
+  }
+
+  /**
+   * Tells whether the given matcher matches the given tree, reusing a previously computed result
+   * for the same tree and matcher class if available.
+   *
+   * @param matcherClass The class of the matcher of interest; all instances of this class must
+   *     produce the same results.
+   * @param tree The tree to match.
+   * @param state The state in which to match the tree.
+   * @param matcher The matcher used to compute the result, if not already cached.
+   * @return Whether the given matcher matches the given tree.
+   */
+  public static boolean matches(
+      Class<? extends Matcher<?>> matcherClass,
+      ExpressionTree tree,
+      VisitorState state,
+      Matcher<? super ExpressionTree> matcher) {
+    MatcherResultCache cache = state.context.get(KEY);
+    if (cache == null) {
+      return matcher.matches(tree, state);
+    }
+
+    /*
+     * The result is not computed using `Map#computeIfAbsent`, as matchers may recursively match
+     * subtrees.
+     */
+    Map<Tree, Boolean> matcherResults =
+        cache.results.computeIfAbsent(matcherClass, k -> new ConcurrentHashMap<>());
+    Boolean result = matcherResults.get(tree);
+    if (result != null) {
+      return result;
+    }
+
+    boolean matches = matcher.matches(tree, state);
+    matcherResults.put(tree, matches);
+    return matches;
+  }
+}
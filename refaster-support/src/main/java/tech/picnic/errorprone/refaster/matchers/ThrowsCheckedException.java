@@ -23,6 +23,11 @@ public final class ThrowsCheckedException implements Matcher<ExpressionTree> {
 
   @Override
   public boolean matches(ExpressionTree tree, VisitorState state) {
+    return MatcherResultCache.matches(
+        ThrowsCheckedException.class, tree, state, ThrowsCheckedException::throwsCheckedException);
+  }
+
+  private static boolean throwsCheckedException(ExpressionTree tree, VisitorState state) {
     if (tree instanceof LambdaExpressionTree lambdaExpression) {
       return throwsCheckedException(lambdaExpression, state);
     }
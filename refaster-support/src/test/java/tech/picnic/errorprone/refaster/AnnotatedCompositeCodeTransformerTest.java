@@ -182,7 +182,7 @@ final class AnnotatedCompositeCodeTransformerTest {
 
   private static Context context() {
     // XXX: Use `ErrorProneOptions#processArgs` to test the
-    // `AnnotatedCompositeCodeTransformer#overrideSeverity` logic.
+    // `AnnotatedCompositeCodeTransformer.SeverityBounds` logic.
     Context context = mock();
     when(context.get(ErrorProneOptions.class)).thenReturn(ErrorProneOptions.empty());
     return context;
@@ -0,0 +1,194 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.ErrorProneVersion;
+import com.google.errorprone.SubContext;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
+import com.google.errorprone.refaster.UTemplater;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class MultiRuleScannerTest {
+  /**
+   * Verifies that Refaster rules are applied in a single traversal, such that a change to the Error
+   * Prone version or internals is not silently met with a fallback to per-rule application.
+   */
+  @Test
+  void isIntrospectionSupported() {
+    assertThat(MultiRuleScanner.isIntrospectionSupported())
+        .as(
+            "`RefasterIntrospection` must be verified against Error Prone %s",
+            ErrorProneVersion.loadVersionFromPom().or("(unknown version)"))
+        .isTrue();
+  }
+
+  @Test
+  void scan() {
+    CompilationTestHelper.newInstance(TestChecker.class, getClass())
+        .addSourceLines(
+            "A.java",
+            "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "import java.util.Collections;",
+            "import java.util.List;",
+            "",
+            "class A {",
+            "  static final class StringIsEmpty {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return string.length() == 0;",
+            "    }",
+            "",
+            "    @AfterTemplate",
+            "    boolean after(String string) {",
+            "      return string.isEmpty();",
+            "    }",
+            "  }",
+            "",
+            "  static final class EmptyList {",
+            "    @BeforeTemplate",
+            "    List<String> before() {",
+            "      return Collections.emptyList();",
+            "    }",
+            "  }",
+            "",
+            "  static final class DoubleClear {",
+            "    @BeforeTemplate",
+            "    void before(List<String> list) {",
+            "      list.clear();",
+            "      list.clear();",
+            "    }",
+            "",
+            "    @AfterTemplate",
+            "    void after(List<String> list) {",
+            "      list.clear();",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: EmptyList",
+            "  private final List<String> field = Collections.emptyList();",
+            "",
+            "  void m(String string, List<String> list) {",
+            "    // BUG: Diagnostic contains: StringIsEmpty",
+            "    if ((string.length() == 0)) {}",
+            "    // BUG: Diagnostic contains: StringIsEmpty",
+            "    while (string.length() == 0) {}",
+            "    // BUG: Diagnostic contains: StringIsEmpty",
+            "    boolean b = string.length() == 0 || string.length() > 1;",
+            "    // BUG: Diagnostic contains: DoubleClear",
+            "    list.clear();",
+            "    list.clear();",
+            "    // BUG: Diagnostic contains: EmptyList",
+            "    list = Collections.emptyList();",
+            "  }",
+            "",
+            "  @SuppressWarnings(\"all\")",
+            "  void suppressed(String string) {",
+            "    boolean b = string.length() == 0;",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  /**
+   * A {@link BugChecker} that applies the Refaster rules defined in a compilation unit to said
+   * compilation unit using a {@link MultiRuleScanner}, and reports the resultant matches. Any
+   * deviation from the matches produced by applying the rules one by one is reported as well, both
+   * for rules applied in a single traversal and for rules applied as-is, as happens if {@link
+   * RefasterIntrospection} is not supported.
+   */
+  @BugPattern(summary = "Flags Refaster rule matches", severity = ERROR)
+  public static final class TestChecker extends BugChecker implements CompilationUnitTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+      ImmutableList<CodeTransformer> transformers =
+          tree.getTypeDecls().stream()
+              .flatMap(type -> ((ClassTree) type).getMembers().stream())
+              .filter(ClassTree.class::isInstance)
+              .map(ClassTree.class::cast)
+              .map(
+                  type ->
+                      AnnotatedCompositeCodeTransformer.create(
+                          "",
+                          ImmutableList.copyOf(
+                              RefasterRuleBuilderScanner.extractRules(type, state.context)),
+                          UTemplater.annotationMap(ASTHelpers.getSymbol(type))))
+              .collect(toImmutableList());
+
+      List<Description> expected = new ArrayList<>();
+      for (CodeTransformer transformer : transformers) {
+        transformer.apply(state.getPath(), new SubContext(state.context), expected::add);
+      }
+
+      List<Description> actual = scan(transformers, /* introspect= */ true, state);
+      EndPosTable endPositions = ((JCCompilationUnit) tree).endPositions;
+      ImmutableList<String> renderedExpected = render(expected, endPositions);
+      if (!renderedExpected.equals(render(actual, endPositions))
+          || !renderedExpected.equals(
+              render(scan(transformers, /* introspect= */ false, state), endPositions))) {
+        return buildDescription(tree).setMessage("Inconsistent matches").build();
+      }
+
+      for (Description description : actual) {
+        state.reportMatch(
+            buildDescription((Tree) description.position)
+                .setMessage(description.checkName)
+                .build());
+      }
+      return Description.NO_MATCH;
+    }
+
+    private static List<Description> scan(
+        ImmutableList<CodeTransformer> transformers, boolean introspect, VisitorState state) {
+      List<Description> matches = new ArrayList<>();
+      MultiRuleScanner.scan(
+          transformers.stream()
+              .map(
+                  transformer ->
+                      MultiRuleScanner.prepare(transformer, ImmutableList.of(), introspect))
+              .collect(toImmutableList()),
+          state.getPath(),
+          new SubContext(state.context),
+          matches::add);
+      return matches;
+    }
+
+    private static ImmutableList<String> render(
+        List<Description> descriptions, EndPosTable endPositions) {
+      return descriptions.stream()
+          .map(
+              d ->
+                  String.join(
+                      ":",
+                      String.valueOf(d.position.getStartPosition()),
+                      d.checkName,
+                      d.getRawMessage(),
+                      String.valueOf(d.severity()),
+                      d.fixes.stream()
+                          .map(fix -> fix.getReplacements(endPositions).toString())
+                          .toList()
+                          .toString()))
+          .collect(toImmutableList());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization.ClassDescriptorTable;
+
+final class RefasterRuleBundleTest {
+  @Test
+  void writeAndRead() throws IOException {
+    RefasterRuleMetadata metadata =
+        RefasterRuleMetadata.create(
+            "Foo.Bar",
+            ImmutableSet.of(ImmutableSet.of("a")),
+            ImmutableSet.of(ImmutableSet.of()),
+            ImmutableSet.of(),
+            WARNING,
+            "Description",
+            Optional.empty(),
+            1);
+    ClassDescriptorTable sharedTable = new ClassDescriptorTable();
+    ClassDescriptorTable otherTable = new ClassDescriptorTable();
+    ImmutableList<RefasterRuleBundle.Entry> entries =
+        ImmutableList.of(
+            RefasterRuleBundle.Entry.create(
+                "Foo",
+                ImmutableList.of(metadata),
+                ByteSource.wrap("foo".getBytes(UTF_8)),
+                sharedTable),
+            RefasterRuleBundle.Entry.create(
+                "Bar", ImmutableList.of(), ByteSource.empty(), otherTable),
+            RefasterRuleBundle.Entry.create(
+                "Baz",
+                ImmutableList.of(metadata, metadata),
+                ByteSource.wrap(new byte[] {1, 2}),
+                sharedTable));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(entries, out);
+    ImmutableList<RefasterRuleBundle.Entry> result =
+        RefasterRuleBundle.read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertThat(result)
+        .extracting(RefasterRuleBundle.Entry::name, RefasterRuleBundle.Entry::metadata)
+        .containsExactly(
+            tuple("Foo", ImmutableList.of(metadata)),
+            tuple("Bar", ImmutableList.of()),
+            tuple("Baz", ImmutableList.of(metadata, metadata)));
+    assertThat(result.get(0).codeTransformer().asCharSource(UTF_8).read()).isEqualTo("foo");
+    assertThat(result.get(1).codeTransformer().isEmpty()).isTrue();
+    assertThat(result.get(2).codeTransformer().read()).containsExactly(1, 2);
+    assertThat(result.get(0).classDescriptors())
+        .isSameAs(result.get(2).classDescriptors())
+        .isNotSameAs(result.get(1).classDescriptors());
+    assertThat(result.get(0).classDescriptors().toByteArray()).isEqualTo(sharedTable.toByteArray());
+  }
+
+  @Test
+  void readTruncatedInput() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.write(
+        ImmutableList.of(
+            RefasterRuleBundle.Entry.create(
+                "Foo",
+                ImmutableList.of(),
+                ByteSource.wrap("foo".getBytes(UTF_8)),
+                new ClassDescriptorTable())),
+        out);
+    byte[] data = out.toByteArray();
+
+    assertThatThrownBy(
+            () ->
+                RefasterRuleBundle.read(
+                    new ByteArrayInputStream(Arrays.copyOf(data, data.length - 1))))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Truncated Refaster rule bundle");
+  }
+
+  @Test
+  void readUnsupportedInput() {
+    assertThatThrownBy(
+            () -> RefasterRuleBundle.read(new ByteArrayInputStream("foobar".getBytes(UTF_8))))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Not a Refaster rule bundle");
+  }
+
+  @Test
+  void writeAndReadIndex() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RefasterRuleBundle.writeIndex(ImmutableList.of("foo.bin", "bar.bin"), out);
+    /* Concatenated indices, as produced when merging the resources of multiple artifacts. */
+    RefasterRuleBundle.writeIndex(ImmutableList.of("baz.bin", "foo.bin"), out);
+
+    assertThat(RefasterRuleBundle.readIndex(new ByteArrayInputStream(out.toByteArray())))
+        .containsExactly("foo.bin", "bar.bin", "baz.bin");
+  }
+
+  @Test
+  void getResourceName() {
+    byte[] bundle = "foo".getBytes(UTF_8);
+
+    assertThat(RefasterRuleBundle.getResourceName(bundle))
+        .matches("rules-[0-9a-f]{16}\\.bin")
+        .isEqualTo(RefasterRuleBundle.getResourceName(bundle.clone()))
+        .isNotEqualTo(RefasterRuleBundle.getResourceName("bar".getBytes(UTF_8)));
+  }
+}
@@ -0,0 +1,202 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
+import com.google.errorprone.refaster.UTemplater;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.Tree.Kind;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+final class RefasterRuleMetadataTest {
+  @Test
+  void extract() {
+    CompilationTestHelper.newInstance(TestChecker.class, getClass())
+        .expectErrorMessage(
+            "PLAIN",
+            m ->
+                m.contains(
+                    "A.Plain [[EMPTY_LIST], [emptyList]] [[java.util.Collections]] [MEMBER_SELECT, IDENTIFIER, METHOD_INVOCATION] SUGGESTION Refactoring opportunity Optional.empty"))
+        .expectErrorMessage(
+            "ANNOTATED",
+            m ->
+                m.contains(
+                    "A.Annotated [[isEmpty]] [[]] [METHOD_INVOCATION] ERROR Custom Optional[https://example.com/A#Annotated] 3"))
+        .expectErrorMessage(
+            "UNCONSTRAINED",
+            m ->
+                m.contains(
+                    "A.Unconstrained [[]] [[]] [] SUGGESTION Refactoring opportunity Optional.empty 11"))
+        .addSourceLines(
+            "pkg/A.java",
+            "package pkg;",
+            "",
+            "import com.google.errorprone.BugPattern.SeverityLevel;",
+            "import com.google.errorprone.refaster.Refaster;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "import java.util.ArrayList;",
+            "import java.util.Collections;",
+            "import java.util.List;",
+            "import tech.picnic.errorprone.refaster.annotation.Description;",
+            "import tech.picnic.errorprone.refaster.annotation.OnlineDocumentation;",
+            "import tech.picnic.errorprone.refaster.annotation.Severity;",
+            "",
+            "class A {",
+            "  // BUG: Diagnostic matches: PLAIN",
+            "  static final class Plain {",
+            "    @BeforeTemplate",
+            "    List<String> before() {",
+            "      return Refaster.anyOf(Collections.emptyList(), Collections.EMPTY_LIST);",
+            "    }",
+            "  }",
+            "",
+            "  @Description(\"Custom\")",
+            "  @OnlineDocumentation(\"https://example.com/${topLevelClassName}#${nestedClassName}\")",
+            "  @Severity(SeverityLevel.ERROR)",
+            "  // BUG: Diagnostic matches: ANNOTATED",
+            "  static final class Annotated {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return string.isEmpty();",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: A.Typed [[ArrayList]] [[java.util.ArrayList]] [NEW_CLASS]",
+            "  static final class Typed {",
+            "    @BeforeTemplate",
+            "    List<String> before() {",
+            "      return new ArrayList<String>();",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic matches: UNCONSTRAINED",
+            "  static final class Unconstrained {",
+            "    @BeforeTemplate",
+            "    <T> T before(T value) {",
+            "      return value;",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  void writeAndRead() throws IOException {
+    ImmutableList<RefasterRuleMetadata> metadata =
+        ImmutableList.of(
+            RefasterRuleMetadata.create(
+                "Foo.Bar",
+                ImmutableSet.of(ImmutableSet.of("a", "b"), ImmutableSet.of("c")),
+                ImmutableSet.of(ImmutableSet.of(String.class.getCanonicalName())),
+                Sets.immutableEnumSet(Kind.IDENTIFIER, Kind.MEMBER_SELECT),
+                WARNING,
+                "Some description",
+                Optional.of("https://example.com"),
+                42),
+            RefasterRuleMetadata.create(
+                "Foo.Baz",
+                ImmutableSet.of(ImmutableSet.of()),
+                ImmutableSet.of(ImmutableSet.of()),
+                ImmutableSet.of(),
+                ERROR,
+                "Other description",
+                Optional.empty(),
+                0));
+
+    assertThat(RefasterRuleMetadata.read(new ByteArrayInputStream(serialize(metadata))))
+        .containsExactlyElementsOf(metadata);
+  }
+
+  @Test
+  void readUnsupportedInput() {
+    assertThatThrownBy(
+            () -> RefasterRuleMetadata.read(new ByteArrayInputStream("foo".getBytes(UTF_8))))
+        .isInstanceOf(IOException.class);
+  }
+
+  private static byte[] serialize(ImmutableList<RefasterRuleMetadata> metadata) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      RefasterRuleMetadata.write(metadata, out);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to serialize Refaster rule metadata", e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * A {@link BugChecker} that compiles each Refaster rule it encounters and flags it with a
+   * rendering of the rule's {@link RefasterRuleMetadata}, after a serialization round trip.
+   */
+  @BugPattern(summary = "Flags Refaster rules with their metadata", severity = ERROR)
+  public static final class TestChecker extends BugChecker implements ClassTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Description matchClass(ClassTree tree, VisitorState state) {
+      ImmutableList<CodeTransformer> rules =
+          ImmutableList.copyOf(RefasterRuleBuilderScanner.extractRules(tree, state.context));
+      if (rules.isEmpty()) {
+        return Description.NO_MATCH;
+      }
+
+      AnnotatedCompositeCodeTransformer transformer =
+          AnnotatedCompositeCodeTransformer.create(
+              "pkg", rules, UTemplater.annotationMap(ASTHelpers.getSymbol(tree)));
+      ImmutableList<RefasterRuleMetadata> metadata;
+      try {
+        metadata =
+            RefasterRuleMetadata.read(
+                new ByteArrayInputStream(serialize(RefasterRuleMetadata.extract(transformer))));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to deserialize Refaster rule metadata", e);
+      }
+
+      return buildDescription(tree)
+          .setMessage(metadata.stream().map(TestChecker::render).collect(joining(", ")))
+          .build();
+    }
+
+    private static String render(RefasterRuleMetadata metadata) {
+      return String.join(
+          " ",
+          metadata.name(),
+          render(metadata.requiredIdentifiers()),
+          render(metadata.requiredTypes()),
+          ImmutableSortedSet.copyOf(metadata.rootKinds()).toString(),
+          metadata.severity().name(),
+          metadata.description(),
+          metadata.link().toString(),
+          String.valueOf(metadata.estimatedCost()));
+    }
+
+    private static String render(ImmutableSet<ImmutableSet<String>> alternatives) {
+      return alternatives.stream()
+          .map(alternative -> ImmutableSortedSet.copyOf(alternative).toString())
+          .sorted()
+          .collect(joining(", ", "[", "]"));
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
+import com.google.errorprone.refaster.StringName;
+import com.google.errorprone.refaster.UClassType;
+import com.google.errorprone.refaster.UMethodType;
+import com.google.errorprone.refaster.UTemplater;
+import com.google.errorprone.refaster.UTypeVar;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import tech.picnic.errorprone.refaster.RefasterRuleSerialization.ClassDescriptorTable;
+
+final class RefasterRuleSerializationTest {
+  @Test
+  void roundTrip() {
+    CompilationTestHelper.newInstance(TestChecker.class, getClass())
+        .addSourceLines(
+            "A.java",
+            "import com.google.errorprone.refaster.Refaster;",
+            "import com.google.errorprone.refaster.annotation.AfterTemplate;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "import com.google.errorprone.refaster.annotation.Matches;",
+            "import java.util.Collections;",
+            "import java.util.List;",
+            "import java.util.Map;",
+            "import tech.picnic.errorprone.refaster.matchers.IsEmpty;",
+            "",
+            "class A {",
+            "  // BUG: Diagnostic contains: Compact form round trip succeeded",
+            "  static final class StringIsEmpty {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return Refaster.anyOf(string.length() == 0, string.equals(\"\"));",
+            "    }",
+            "",
+            "    @AfterTemplate",
+            "    boolean after(String string) {",
+            "      return string.isEmpty();",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: Compact form round trip succeeded",
+            "  static final class EmptyMap<K, V> {",
+            "    @BeforeTemplate",
+            "    Map<K, V> before(@Matches(IsEmpty.class) Map<K, V> map) {",
+            "      return Collections.unmodifiableMap(map);",
+            "    }",
+            "",
+            "    @AfterTemplate",
+            "    Map<K, V> after() {",
+            "      return Collections.emptyMap();",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: Compact form round trip succeeded",
+            "  static final class FirstElement<T extends Comparable<? super T>> {",
+            "    @BeforeTemplate",
+            "    T before(List<T> list) {",
+            "      return list.get(0);",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  void canonicalize() {
+    UTypeVar typeVar = UTypeVar.create("T");
+    UClassType listOfT = UClassType.create(List.class.getCanonicalName(), typeVar);
+
+    assertThat(RefasterRuleSerialization.canonicalize(StringName.of("foo")))
+        .isSameAs(RefasterRuleSerialization.canonicalize(StringName.of("foo")));
+    assertThat(RefasterRuleSerialization.canonicalize(listOf(String.class.getCanonicalName())))
+        .isSameAs(RefasterRuleSerialization.canonicalize(listOf(String.class.getCanonicalName())))
+        .isNotSameAs(
+            RefasterRuleSerialization.canonicalize(listOf(Integer.class.getCanonicalName())));
+    assertThat(
+            RefasterRuleSerialization.canonicalize(
+                UMethodType.create(
+                    listOf(String.class.getCanonicalName()),
+                    listOf(Integer.class.getCanonicalName()))))
+        .isSameAs(
+            RefasterRuleSerialization.canonicalize(
+                UMethodType.create(
+                    listOf(String.class.getCanonicalName()),
+                    listOf(Integer.class.getCanonicalName()))));
+    assertThat(RefasterRuleSerialization.canonicalize(typeVar)).isSameAs(typeVar);
+    assertThat(RefasterRuleSerialization.canonicalize(listOfT)).isSameAs(listOfT);
+  }
+
+  @Test
+  void deserializeUnsupportedInput() {
+    assertThatThrownBy(
+            () ->
+                RefasterRuleSerialization.deserialize(
+                    new ByteArrayInputStream("foobar".getBytes(UTF_8)), new ClassDescriptorTable()))
+        .isInstanceOf(IOException.class);
+  }
+
+  private static UClassType listOf(String elementType) {
+    return UClassType.create(List.class.getCanonicalName(), UClassType.create(elementType));
+  }
+
+  /**
+   * A {@link BugChecker} that compiles each Refaster rule it encounters, serializes it in both the
+   * compact and plain Java serialization format, and flags it iff deserialization of both yields an
+   * equivalent rule, and the compact form (excluding the shareable class descriptor table) is
+   * smaller.
+   */
+  @BugPattern(
+      summary = "Flags Refaster rules that survive a serialization round trip",
+      severity = ERROR)
+  public static final class TestChecker extends BugChecker implements ClassTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Description matchClass(ClassTree tree, VisitorState state) {
+      ImmutableList<CodeTransformer> rules =
+          ImmutableList.copyOf(RefasterRuleBuilderScanner.extractRules(tree, state.context));
+      if (rules.isEmpty()) {
+        return Description.NO_MATCH;
+      }
+
+      AnnotatedCompositeCodeTransformer original =
+          AnnotatedCompositeCodeTransformer.create(
+              "", rules, UTemplater.annotationMap(ASTHelpers.getSymbol(tree)));
+      try {
+        ClassDescriptorTable classDescriptors = new ClassDescriptorTable();
+        byte[] compactForm = RefasterRuleSerialization.serialize(original, classDescriptors);
+        byte[] plainForm = serializePlain(original);
+        CodeTransformer fromCompactForm =
+            RefasterRuleSerialization.deserialize(
+                new ByteArrayInputStream(compactForm),
+                ClassDescriptorTable.read(ByteSource.wrap(classDescriptors.toByteArray())));
+        CodeTransformer fromPlainForm =
+            RefasterRuleSerialization.deserialize(
+                new ByteArrayInputStream(plainForm), new ClassDescriptorTable());
+
+        if (compactForm.length >= plainForm.length
+            || !(fromCompactForm instanceof AnnotatedCompositeCodeTransformer compact)
+            || !(fromPlainForm instanceof AnnotatedCompositeCodeTransformer plain)
+            || !RefasterRuleMetadata.extract(compact).equals(RefasterRuleMetadata.extract(original))
+            || !RefasterRuleMetadata.extract(plain)
+                .equals(RefasterRuleMetadata.extract(original))) {
+          return Description.NO_MATCH;
+        }
+      } catch (ClassNotFoundException | IOException e) {
+        throw new IllegalStateException("Failed to (de)serialize Refaster rules", e);
+      }
+
+      return buildDescription(tree).setMessage("Compact form round trip succeeded").build();
+    }
+
+    private static byte[] serializePlain(CodeTransformer codeTransformer) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (ObjectOutputStream output = new ObjectOutputStream(out)) {
+        output.writeObject(codeTransformer);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to serialize Refaster rules", e);
+      }
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CodeTransformer;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
+import com.sun.source.tree.ClassTree;
+import org.junit.jupiter.api.Test;
+
+final class RequiredIdentifiersTest {
+  @Test
+  void extract() {
+    CompilationTestHelper.newInstance(TestChecker.class, getClass())
+        .addSourceLines(
+            "A.java",
+            "import com.google.errorprone.refaster.Refaster;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "import java.util.ArrayList;",
+            "import java.util.Collections;",
+            "import java.util.List;",
+            "import java.util.function.Function;",
+            "",
+            "class A {",
+            "  // BUG: Diagnostic contains: [[length, toCharArray]]",
+            "  static final class MemberSelects {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return string.toCharArray().length == 0;",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: [[isEmpty], [length]]",
+            "  static final class AnyOf {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return Refaster.anyOf(string.isEmpty(), string.length() == 0);",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: [[ArrayList], [emptyList]]",
+            "  static final class MultipleBeforeTemplates {",
+            "    @BeforeTemplate",
+            "    List<String> before1() {",
+            "      return Collections.emptyList();",
+            "    }",
+            "",
+            "    @BeforeTemplate",
+            "    List<String> before2() {",
+            "      return new ArrayList<String>();",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: [[String, valueOf]]",
+            "  static final class MemberReference {",
+            "    @BeforeTemplate",
+            "    Function<Object, String> before() {",
+            "      return String::valueOf;",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: [[concat, trim]]",
+            "  static final class Block {",
+            "    @BeforeTemplate",
+            "    void before(String first, String second) {",
+            "      String trimmed = first.trim();",
+            "      trimmed.concat(second);",
+            "    }",
+            "  }",
+            "",
+            "  // BUG: Diagnostic contains: [[]]",
+            "  static final class Unconstrained {",
+            "    @BeforeTemplate",
+            "    <T> T before(T value) {",
+            "      return value;",
+            "    }",
+            "  }",
+            "",
+            "  static final class NoRule {}",
+            "}")
+        .doTest();
+  }
+
+  /**
+   * A {@link BugChecker} that compiles each Refaster rule it encounters and flags it with a
+   * rendering of the rule's {@link RequiredIdentifiers}.
+   */
+  @BugPattern(summary = "Flags Refaster rules with their required identifiers", severity = ERROR)
+  public static final class TestChecker extends BugChecker implements ClassTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Description matchClass(ClassTree tree, VisitorState state) {
+      ImmutableList<CodeTransformer> rules =
+          ImmutableList.copyOf(RefasterRuleBuilderScanner.extractRules(tree, state.context));
+      if (rules.isEmpty()) {
+        return Description.NO_MATCH;
+      }
+
+      return buildDescription(tree)
+          .setMessage(
+              rules.stream()
+                  .flatMap(rule -> RequiredIdentifiers.extract(rule).stream())
+                  .map(alternative -> ImmutableSortedSet.copyOf(alternative).toString())
+                  .sorted()
+                  .collect(joining(", ", "[", "]")))
+          .build();
+    }
+  }
+}
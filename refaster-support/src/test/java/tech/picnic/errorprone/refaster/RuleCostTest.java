@@ -0,0 +1,101 @@
+package tech.picnic.errorprone.refaster;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
+
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.refaster.RefasterRuleBuilderScanner;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class RuleCostTest {
+  @Test
+  void estimate() {
+    CompilationTestHelper.newInstance(TestChecker.class, getClass())
+        .addSourceLines(
+            "pkg/A.java",
+            "package pkg;",
+            "",
+            "import com.google.errorprone.refaster.Refaster;",
+            "import com.google.errorprone.refaster.annotation.BeforeTemplate;",
+            "import com.google.errorprone.refaster.annotation.NotMatches;",
+            "import tech.picnic.errorprone.refaster.matchers.RequiresComputation;",
+            "",
+            "// BUG: Diagnostic contains: Simple=3, Matched=23, AnyOf=17, NonGeneric=3, Generic=13",
+            "class A {",
+            "  static final class Simple {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return string.isEmpty();",
+            "    }",
+            "  }",
+            "",
+            "  static final class Matched {",
+            "    @BeforeTemplate",
+            "    boolean before(@NotMatches(RequiresComputation.class) String string) {",
+            "      return string.isEmpty();",
+            "    }",
+            "  }",
+            "",
+            "  static final class AnyOf {",
+            "    @BeforeTemplate",
+            "    boolean before(String string) {",
+            "      return Refaster.anyOf(string.isEmpty(), string.isBlank());",
+            "    }",
+            "  }",
+            "",
+            "  static final class NonGeneric {",
+            "    @BeforeTemplate",
+            "    boolean before(Object value) {",
+            "      return value == null;",
+            "    }",
+            "  }",
+            "",
+            "  static final class Generic {",
+            "    @BeforeTemplate",
+            "    <T> boolean before(T value) {",
+            "      return value == null;",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  /**
+   * A {@link BugChecker} that flags each top-level class with the estimated cost of each Refaster
+   * rule nested in it.
+   */
+  @BugPattern(summary = "Flags classes with the estimated cost of nested rules", severity = ERROR)
+  public static final class TestChecker extends BugChecker implements ClassTreeMatcher {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Description matchClass(ClassTree tree, VisitorState state) {
+      if (!(state.getPath().getParentPath().getLeaf() instanceof CompilationUnitTree)) {
+        return Description.NO_MATCH;
+      }
+
+      List<String> estimates = new ArrayList<>();
+      for (Tree member : tree.getMembers()) {
+        if (member instanceof ClassTree nestedClass) {
+          estimates.add(
+              nestedClass.getSimpleName()
+                  + "="
+                  + RefasterRuleBuilderScanner.extractRules(nestedClass, state.context).stream()
+                      .mapToInt(RuleCost::estimate)
+                      .sum());
+        }
+      }
+
+      return buildDescription(tree).setMessage(String.join(", ", estimates)).build();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package tech.picnic.errorprone.refaster.matchers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Matcher;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class MatcherResultCacheTest {
+  @Test
+  void matchesWithoutCache() {
+    ExpressionTree tree = mock();
+    RecordingMatcher matcher = new RecordingMatcher(tree);
+    VisitorState state = createState(new Context());
+
+    assertThat(MatcherResultCache.matches(RecordingMatcher.class, tree, state, matcher)).isTrue();
+    assertThat(MatcherResultCache.matches(RecordingMatcher.class, tree, state, matcher)).isTrue();
+    assertThat(matcher.matchedTrees).containsExactly(tree, tree);
+  }
+
+  @Test
+  void matchesWithCache() {
+    ExpressionTree tree1 = mock();
+    ExpressionTree tree2 = mock();
+    RecordingMatcher matcher1 = new RecordingMatcher(tree1);
+    RecordingMatcher matcher2 = new RecordingMatcher(tree1);
+    Context context = new Context();
+    MatcherResultCache.register(context);
+    VisitorState state = createState(context);
+
+    assertThat(MatcherResultCache.matches(RecordingMatcher.class, tree1, state, matcher1)).isTrue();
+    assertThat(MatcherResultCache.matches(RecordingMatcher.class, tree2, state, matcher1))
+        .isFalse();
+    assertThat(MatcherResultCache.matches(RecordingMatcher.class, tree1, state, matcher2)).isTrue();
+    assertThat(MatcherResultCache.matches(RecordingMatcher.class, tree2, state, matcher2))
+        .isFalse();
+    assertThat(matcher1.matchedTrees).containsExactly(tree1, tree2);
+    assertThat(matcher2.matchedTrees).isEmpty();
+  }
+
+  private static VisitorState createState(Context context) {
+    JavacFileManager.preRegister(context);
+    return VisitorState.createForUtilityPurposes(context);
+  }
+
+  /** A {@link Matcher} that matches a single tree, and records each tree it is asked to match. */
+  private static final class RecordingMatcher implements Matcher<ExpressionTree> {
+    private static final long serialVersionUID = 1L;
+
+    private final ExpressionTree matchingTree;
+    private final List<ExpressionTree> matchedTrees = new ArrayList<>();
+
+    RecordingMatcher(ExpressionTree matchingTree) {
+      this.matchingTree = matchingTree;
+    }
+
+    @Override
+    public boolean matches(ExpressionTree tree, VisitorState state) {
+      matchedTrees.add(tree);
+      return tree == matchingTree;
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package tech.picnic.errorprone.refaster.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.ErrorProneOptions;
+import com.google.errorprone.annotations.Var;
+import com.google.errorprone.apply.DescriptionBasedDiff;
+import com.google.errorprone.apply.ImportOrganizer;
+import com.google.errorprone.apply.SourceFile;
+import com.google.errorprone.matchers.Description;
+import com.google.googlejavaformat.java.Formatter;
+import com.google.googlejavaformat.java.FormatterException;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import tech.picnic.errorprone.refaster.runner.AnalyzedCompilation;
+
+/**
+ * Validates many Refaster rule collections at once, by compiling all associated test input files
+ * using a single compiler instance.
+ *
+ * <p>Each test input file is validated by a {@link RefasterRuleCollection} instance dedicated to
+ * the associated rule collection, such that rules from one collection cannot affect the validation
+ * of another. All these instances share the Refaster rules loaded from the classpath. As with
+ * {@link RefasterRuleCollection#validate(Class)}, the refactored code must compile; this is
+ * verified using a second compilation of all refactored sources.
+ */
+final class BatchValidator {
+  private static final ImmutableList<String> JAVAC_OPTIONS =
+      ImmutableList.of(
+          "--add-exports=jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED",
+          "-encoding",
+          UTF_8.name(),
+          "-proc:none",
+          "-XDshould-stop.ifError=FLOW");
+
+  private BatchValidator() {}
+
+  /**
+   * Validates the given Refaster rule collections.
+   *
+   * @param ruleCollections The Refaster rule collections under test.
+   * @return The problems identified, by rule collection.
+   */
+  static ImmutableSetMultimap<Class<?>, String> validate(ImmutableList<Class<?>> ruleCollections) {
+    ImmutableMap<URI, Class<?>> ruleCollectionsBySource =
+        Maps.uniqueIndex(ruleCollections, c -> ResourceSource.getUri(c, "TestInput.java"));
+    ImmutableList<JavaFileObject> inputs =
+        ruleCollections.stream()
+            .map(c -> ResourceSource.load(c, "TestInput.java"))
+            .collect(toImmutableList());
+
+    ImmutableSetMultimap.Builder<Class<?>, String> problems = ImmutableSetMultimap.builder();
+    Map<Class<?>, JavaFileObject> outputs = new LinkedHashMap<>();
+    try (AnalyzedCompilation compilation =
+        AnalyzedCompilation.create(
+            JAVAC_OPTIONS, fileManager -> inputs, ErrorProneOptions.empty())) {
+      reportErrors(compilation, ruleCollectionsBySource, "Compilation error", problems);
+
+      ImmutableSetMultimap<Class<?>, String> compilationProblems = problems.build();
+      for (CompilationUnitTree compilationUnit : compilation.compilationUnits()) {
+        Class<?> ruleCollection =
+            ruleCollectionsBySource.get(compilationUnit.getSourceFile().toUri());
+        if (ruleCollection != null && !compilationProblems.containsKey(ruleCollection)) {
+          String actual = refactor(ruleCollection, compilationUnit, compilation);
+          String expected =
+              ResourceSource.load(ruleCollection, "TestOutput.java").getCharContent(false);
+          describeDifference(ruleCollection.getSimpleName() + "TestOutput.java", expected, actual)
+              .ifPresent(problem -> problems.put(ruleCollection, problem));
+          outputs.put(
+              ruleCollection,
+              new ResourceSource(ResourceSource.getUri(ruleCollection, "TestOutput.java"), actual));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to validate Refaster rule collections", e);
+    }
+
+    /*
+     * Like `BugCheckerRefactoringTestHelper`, require that the refactored code compiles. All
+     * refactored sources are compiled at once, for the same reason the test inputs are.
+     */
+    if (!outputs.isEmpty()) {
+      ImmutableMap<URI, Class<?>> ruleCollectionsByOutput =
+          outputs.entrySet().stream()
+              .collect(toImmutableMap(e -> e.getValue().toUri(), Map.Entry::getKey));
+      try (AnalyzedCompilation compilation =
+          AnalyzedCompilation.create(
+              JAVAC_OPTIONS,
+              fileManager -> ImmutableList.copyOf(outputs.values()),
+              ErrorProneOptions.empty())) {
+        reportErrors(
+            compilation, ruleCollectionsByOutput, "Refactored code does not compile", problems);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to compile refactored Refaster test inputs", e);
+      }
+    }
+
+    return problems.build();
+  }
+
+  /**
+   * Reports the given compilation's errors as problems of the rule collection associated with the
+   * erroneous source file, or of all rule collections if there is no such association.
+   */
+  private static void reportErrors(
+      AnalyzedCompilation compilation,
+      ImmutableMap<URI, Class<?>> ruleCollectionsBySource,
+      String description,
+      ImmutableSetMultimap.Builder<Class<?>, String> problems) {
+    for (Diagnostic<? extends JavaFileObject> error : compilation.errors()) {
+      String problem =
+          String.format(
+              "%s on line %s: %s",
+              description, error.getLineNumber(), error.getMessage(Locale.ROOT));
+      JavaFileObject source = error.getSource();
+      Class<?> ruleCollection = source == null ? null : ruleCollectionsBySource.get(source.toUri());
+      if (ruleCollection == null) {
+        ruleCollectionsBySource.values().forEach(c -> problems.put(c, problem));
+      } else {
+        problems.put(ruleCollection, problem);
+      }
+    }
+  }
+
+  /**
+   * Applies the given rule collection to the given compilation unit, and returns the resultant
+   * source code, including any violations reported by {@link RefasterRuleCollection}.
+   */
+  private static String refactor(
+      Class<?> ruleCollection, CompilationUnitTree compilationUnit, AnalyzedCompilation compilation)
+      throws IOException {
+    RefasterRuleCollection checker =
+        new RefasterRuleCollection(
+            ErrorProneFlags.fromMap(
+                ImmutableMap.of(
+                    RefasterRuleCollection.RULE_COLLECTION_FLAG, ruleCollection.getSimpleName())));
+    DescriptionBasedDiff diff =
+        DescriptionBasedDiff.create(
+            (JCCompilationUnit) compilationUnit, ImportOrganizer.STATIC_FIRST_ORGANIZER);
+    Description unused =
+        checker.matchCompilationUnit(
+            compilationUnit, compilation.createState(compilationUnit, diff));
+
+    SourceFile sourceFile = SourceFile.create(compilationUnit.getSourceFile());
+    diff.applyDifferences(sourceFile);
+    return sourceFile.getSourceText();
+  }
+
+  /**
+   * Describes the first difference between the given expected and actual source code, if any.
+   *
+   * <p>Like {@link com.google.errorprone.BugCheckerRefactoringTestHelper.TestMode#TEXT_MATCH}, both
+   * are formatted prior to comparison, if possible.
+   */
+  private static Optional<String> describeDifference(
+      String expectedFileName, String expected, String actual) {
+    List<String> expectedLines = format(expected).lines().toList();
+    List<String> actualLines = format(actual).lines().toList();
+
+    @Var int line = 0;
+    while (line < expectedLines.size()
+        && line < actualLines.size()
+        && expectedLines.get(line).equals(actualLines.get(line))) {
+      line++;
+    }
+
+    if (line == expectedLines.size() && line == actualLines.size()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(
+        String.format(
+            "Refactored code differs from `%s`, starting at line %s:%n"
+                + "  expected: %s%n"
+                + "  actual:   %s",
+            expectedFileName,
+            line + 1,
+            line < expectedLines.size() ? expectedLines.get(line) : "<end of file>",
+            line < actualLines.size() ? actualLines.get(line) : "<end of file>"));
+  }
+
+  private static String format(String source) {
+    try {
+      return new Formatter().formatSource(source);
+    } catch (FormatterException e) {
+      return source;
+    }
+  }
+
+  /** A source file loaded from a classpath resource located next to a rule collection. */
+  private static final class ResourceSource extends SimpleJavaFileObject {
+    private final String content;
+
+    private ResourceSource(URI uri, String content) {
+      super(uri, Kind.SOURCE);
+      this.content = content;
+    }
+
+    static URI getUri(Class<?> ruleCollection, String suffix) {
+      return URI.create(
+          String.format(
+              "string:///%s/%s%s",
+              ruleCollection.getPackageName().replace('.', '/'),
+              ruleCollection.getSimpleName(),
+              suffix));
+    }
+
+    static ResourceSource load(Class<?> ruleCollection, String suffix) {
+      String resourceName = ruleCollection.getSimpleName() + suffix;
+      URL resource = ruleCollection.getResource(resourceName);
+      checkArgument(resource != null, "Resource '%s' not found", resourceName);
+      try {
+        return new ResourceSource(
+            getUri(ruleCollection, suffix), Resources.toString(resource, UTF_8));
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            String.format("Failed to read resource '%s'", resourceName), e);
+      }
+    }
+
+    @Override
+    public String getCharContent(boolean ignoreEncodingErrors) {
+      return content;
+    }
+  }
+}
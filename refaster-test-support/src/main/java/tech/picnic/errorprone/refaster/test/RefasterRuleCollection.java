@@ -1,6 +1,7 @@
 package tech.picnic.errorprone.refaster.test;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
@@ -9,10 +10,12 @@ import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 import static java.util.Comparator.naturalOrder;
 import static tech.picnic.errorprone.refaster.runner.Refaster.INCLUDED_RULES_PATTERN_FLAG;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableRangeMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Range;
@@ -20,6 +23,7 @@ import com.google.common.collect.Sets;
 import com.google.errorprone.BugCheckerRefactoringTestHelper;
 import com.google.errorprone.BugCheckerRefactoringTestHelper.TestMode;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.CodeTransformer;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.SubContext;
 import com.google.errorprone.VisitorState;
@@ -45,6 +49,7 @@ import java.util.Optional;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
 import org.jspecify.annotations.Nullable;
+import tech.picnic.errorprone.refaster.MultiRuleScanner;
 import tech.picnic.errorprone.refaster.runner.CodeTransformers;
 import tech.picnic.errorprone.refaster.runner.Refaster;
 
@@ -57,6 +62,9 @@ import tech.picnic.errorprone.refaster.runner.Refaster;
  * rule collection class. Their names are derived from the rule collection class by suffixing {@code
  * TestInput.java} and {@code TestOutput.java}, respectively. Each test method's name must be
  * derived from the rule that modifies said method by prefixing {@code test}.
+ *
+ * <p>Additionally, this checker validates that the {@link MultiRuleScanner} used by {@link
+ * Refaster} reports the same matches as applying each of the rules under test one by one.
  */
 // XXX: This check currently only validates that one `Refaster.anyOf` branch in one
 // `@BeforeTemplate` method is covered by a test. Review how we can make sure that _all_
@@ -68,12 +76,13 @@ import tech.picnic.errorprone.refaster.runner.Refaster;
 @SuppressWarnings("java:S2160" /* Super class equality definition suffices. */)
 public final class RefasterRuleCollection extends BugChecker implements CompilationUnitTreeMatcher {
   private static final long serialVersionUID = 1L;
-  private static final String RULE_COLLECTION_FLAG = "RefasterRuleCollection:RuleCollection";
+  static final String RULE_COLLECTION_FLAG = "RefasterRuleCollection:RuleCollection";
   private static final String TEST_METHOD_NAME_PREFIX = "test";
 
   private final String ruleCollectionUnderTest;
   private final ImmutableSortedSet<String> rulesUnderTest;
   private final Refaster delegate;
+  private final ImmutableList<CodeTransformer> codeTransformersUnderTest;
 
   /**
    * Instantiates a {@link RefasterRuleCollection} instance.
@@ -85,6 +94,7 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
     ruleCollectionUnderTest = getRuleCollectionUnderTest(flags);
     delegate = createRefasterChecker(ruleCollectionUnderTest);
     rulesUnderTest = getRulesUnderTest(ruleCollectionUnderTest);
+    codeTransformersUnderTest = getCodeTransformersUnderTest(ruleCollectionUnderTest);
   }
 
   private static String getRuleCollectionUnderTest(ErrorProneFlags flags) {
@@ -111,6 +121,14 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
         .collect(toImmutableSortedSet(naturalOrder()));
   }
 
+  private static ImmutableList<CodeTransformer> getCodeTransformersUnderTest(
+      String ruleCollectionUnderTest) {
+    return CodeTransformers.getAllCodeTransformers().entries().stream()
+        .filter(e -> e.getKey().startsWith(ruleCollectionUnderTest))
+        .flatMap(e -> CodeTransformers.resolve(e.getValue()).stream())
+        .collect(toImmutableList());
+  }
+
   /**
    * Verifies that all Refaster rules in the given collection class are covered by precisely one
    * test method, defined explicitly for the purpose of exercising that rule.
@@ -134,6 +152,23 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
         .doTest(TestMode.TEXT_MATCH);
   }
 
+  /**
+   * Verifies the given Refaster rule collections in the manner of {@link #validate(Class)}, but
+   * using a single compilation of all associated test input files.
+   *
+   * <p>This avoids the cost of setting up a compiler and loading the relevant Refaster rules for
+   * each rule collection separately, which dominates the cost of validating many small rule
+   * collections.
+   *
+   * @param ruleCollections The Refaster rule collections under test.
+   * @return The problems identified, by rule collection; rule collections without problems are
+   *     absent.
+   */
+  public static ImmutableSetMultimap<Class<?>, String> validateAll(
+      Iterable<? extends Class<?>> ruleCollections) {
+    return BatchValidator.validate(ImmutableList.copyOf(ruleCollections));
+  }
+
   @Override
   public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
     reportIncorrectClassName(tree, state);
@@ -150,6 +185,7 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
     matches.forEach(state::reportMatch);
     reportMissingMatches(tree, indexedMatches, state);
     reportUnexpectedMatches(tree, indexedMatches, state);
+    reportInconsistentMatches(tree, state);
 
     return Description.NO_MATCH;
   }
@@ -222,6 +258,61 @@ public final class RefasterRuleCollection extends BugChecker implements Compilat
     unexpectedMatchReporter.scan(tree.getTypeDecls(), state);
   }
 
+  /**
+   * Reports any difference between the matches reported by applying the rules under test using a
+   * single {@link MultiRuleScanner} traversal and those reported by applying them one by one.
+   */
+  private void reportInconsistentMatches(CompilationUnitTree tree, VisitorState state) {
+    if (tree.getTypeDecls().isEmpty()) {
+      return;
+    }
+
+    List<Description> expected = new ArrayList<>();
+    for (CodeTransformer transformer : codeTransformersUnderTest) {
+      transformer.apply(state.getPath(), new SubContext(state.context), expected::add);
+    }
+
+    List<Description> actual = new ArrayList<>();
+    MultiRuleScanner.scan(
+        codeTransformersUnderTest.stream()
+            .map(MultiRuleScanner::prepare)
+            .collect(toImmutableList()),
+        state.getPath(),
+        new SubContext(state.context),
+        actual::add);
+
+    ImmutableList<String> expectedMatches = describeMatches(tree, expected);
+    ImmutableList<String> actualMatches = describeMatches(tree, actual);
+    if (!expectedMatches.equals(actualMatches)) {
+      ImmutableSet.Builder<String> violations = ImmutableSet.builder();
+      Sets.difference(ImmutableSet.copyOf(expectedMatches), ImmutableSet.copyOf(actualMatches))
+          .forEach(match -> violations.add("Missing: " + match));
+      Sets.difference(ImmutableSet.copyOf(actualMatches), ImmutableSet.copyOf(expectedMatches))
+          .forEach(match -> violations.add("Unexpected: " + match));
+      reportViolations(
+          tree.getTypeDecls().get(0),
+          "Applying the rules in a single traversal does not yield the same matches, in the same"
+              + " order, as applying them one by one",
+          violations.build(),
+          state);
+    }
+  }
+
+  private static ImmutableList<String> describeMatches(
+      CompilationUnitTree tree, List<Description> matches) {
+    EndPosTable endPositions = ((JCCompilationUnit) tree).endPositions;
+    LineMap lineMap = tree.getLineMap();
+    return matches.stream()
+        .map(
+            d ->
+                String.format(
+                    "Rule `%s` on line %s, with fixes %s",
+                    d.checkName,
+                    lineMap.getLineNumber(d.position.getStartPosition()),
+                    d.fixes.stream().map(f -> f.getReplacements(endPositions)).toList()))
+        .collect(toImmutableList());
+  }
+
   private void reportViolations(
       Tree tree, String message, ImmutableSet<String> violations, VisitorState state) {
     String violationEnumeration = String.join(String.format("%n*  - "), violations);
@@ -0,0 +1,24 @@
+package tech.picnic.errorprone.refaster.test;
+
+import com.google.errorprone.refaster.annotation.AfterTemplate;
+import com.google.errorprone.refaster.annotation.BeforeTemplate;
+
+/**
+ * Refaster rule collection to validate that a test output file that does not reflect the
+ * application of the rules under test is reported.
+ */
+final class MismatchedOutputRules {
+  private MismatchedOutputRules() {}
+
+  static final class StringIsEmpty {
+    @BeforeTemplate
+    boolean before(String string) {
+      return string.equals("");
+    }
+
+    @AfterTemplate
+    boolean after(String string) {
+      return string.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package tech.picnic.errorprone.refaster.test;
+
+import com.google.errorprone.refaster.annotation.AfterTemplate;
+import com.google.errorprone.refaster.annotation.BeforeTemplate;
+
+/**
+ * Refaster rule collection to validate that refactored code that does not compile is reported, even
+ * if it matches the test output file.
+ */
+final class NonCompilingOutputRules {
+  private NonCompilingOutputRules() {}
+
+  static final class StringIsEmpty {
+    @BeforeTemplate
+    boolean before(String string) {
+      return string.equals("");
+    }
+
+    @AfterTemplate
+    boolean after(String string) {
+      return Helper.isEmpty(string);
+    }
+  }
+
+  static final class Helper {
+    private Helper() {}
+
+    private static boolean isEmpty(String string) {
+      return string.isEmpty();
+    }
+  }
+}
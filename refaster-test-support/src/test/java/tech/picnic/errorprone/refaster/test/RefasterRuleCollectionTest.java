@@ -1,7 +1,17 @@
 package tech.picnic.errorprone.refaster.test;
 
+import static org.assertj.core.api.Assertions.as;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.InstanceOfAssertFactories.STRING;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
-import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 /**
  * Validates {@link RefasterRuleCollection} error reporting.
@@ -14,18 +24,54 @@ import org.junit.jupiter.params.provider.ValueSource;
  * normally not present.
  */
 final class RefasterRuleCollectionTest {
+  private static final ImmutableSet<Class<?>> RULE_COLLECTIONS =
+      ImmutableSet.of(
+          MatchInWrongMethodRules.class,
+          MethodWithoutPrefixRules.class,
+          MisnamedTestClassRules.class,
+          MissingTestAndWrongTestRules.class,
+          PartialTestMatchRules.class,
+          RuleWithoutTestRules.class,
+          ValidRules.class);
+
+  private static Stream<Arguments> verifyRefasterRuleCollectionsTestCases() {
+    return RULE_COLLECTIONS.stream().map(Arguments::arguments);
+  }
+
+  @MethodSource("verifyRefasterRuleCollectionsTestCases")
   @ParameterizedTest
-  @ValueSource(
-      classes = {
-        MatchInWrongMethodRules.class,
-        MethodWithoutPrefixRules.class,
-        MisnamedTestClassRules.class,
-        MissingTestAndWrongTestRules.class,
-        PartialTestMatchRules.class,
-        RuleWithoutTestRules.class,
-        ValidRules.class
-      })
   void verifyRefasterRuleCollections(Class<?> clazz) {
     RefasterRuleCollection.validate(clazz);
   }
+
+  @Test
+  void validateAll() {
+    assertThat(RefasterRuleCollection.validateAll(RULE_COLLECTIONS).asMap()).isEmpty();
+  }
+
+  @Test
+  void validateAllReportsProblemsByRuleCollection() {
+    ImmutableSetMultimap<Class<?>, String> problems =
+        RefasterRuleCollection.validateAll(
+            ImmutableList.of(ValidRules.class, MismatchedOutputRules.class));
+
+    assertThat(problems.keySet()).containsExactly(MismatchedOutputRules.class);
+    assertThat(problems.get(MismatchedOutputRules.class))
+        .singleElement(as(STRING))
+        .startsWith("Refactored code differs from `MismatchedOutputRulesTestOutput.java`")
+        .contains("starting at line 6");
+  }
+
+  @Test
+  void validateAllReportsNonCompilingRefactoredCode() {
+    ImmutableSetMultimap<Class<?>, String> problems =
+        RefasterRuleCollection.validateAll(
+            ImmutableList.of(ValidRules.class, NonCompilingOutputRules.class));
+
+    assertThat(problems.keySet()).containsExactly(NonCompilingOutputRules.class);
+    assertThat(problems.get(NonCompilingOutputRules.class))
+        .singleElement(as(STRING))
+        .startsWith("Refactored code does not compile on line 6:")
+        .contains("private access");
+  }
 }
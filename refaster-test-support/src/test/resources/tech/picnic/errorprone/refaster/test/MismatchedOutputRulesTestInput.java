@@ -0,0 +1,8 @@
+package tech.picnic.errorprone.refaster.test;
+
+/** Code to test the Refaster rules from {@link MismatchedOutputRules}. */
+final class MismatchedOutputRulesTest implements RefasterRuleCollectionTestCase {
+  boolean testStringIsEmpty() {
+    return "foo".equals("");
+  }
+}
@@ -0,0 +1,8 @@
+package tech.picnic.errorprone.refaster.test;
+
+/** Code to test the Refaster rules from {@link NonCompilingOutputRules}. */
+final class NonCompilingOutputRulesTest implements RefasterRuleCollectionTestCase {
+  boolean testStringIsEmpty() {
+    return "foo".equals("");
+  }
+}
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+
+# Generates a synthetic Maven project of configurable size, and compiles it
+# both with and without Error Prone Support, recording the wall-clock time of
+# each build. Requires no network access once this project has been installed
+# (`mvn clean install -Pbenchmarks`), as the generated project uses the plugin
+# and dependency versions resolved by this build, which it looks up in the
+# local Maven repository.
+
+set -e -u -o pipefail
+
+if [ "${#}" -lt 3 ] || [ "${#}" -gt 5 ]; then
+  >&2 echo "Usage: ${0} <file_count> <methods_per_file> <rule_density> [<iterations>] [<report_directory>]"
+  exit 1
+fi
+
+file_count="${1}"
+methods_per_file="${2}"
+rule_density="${3}"
+iterations="${4:-3}"
+report_directory="${5:-$(mktemp -d)}"
+
+error_prone_support_root="$(cd "$(dirname -- "${0}")" && pwd)"
+benchmarks_jar="${error_prone_support_root}/benchmarks/target/benchmarks.jar"
+if [ ! -f "${benchmarks_jar}" ]; then
+  >&2 echo "${benchmarks_jar} not found; first run \`mvn clean install -Pbenchmarks\`."
+  exit 1
+fi
+
+project_directory="$(mktemp -d)"
+trap 'rm -rf -- "${project_directory}"' INT TERM HUP EXIT
+
+java -cp "${benchmarks_jar}" \
+  tech.picnic.errorprone.benchmarks.SyntheticProjectGenerator \
+  "${project_directory}" \
+  "${file_count}" \
+  "${methods_per_file}" \
+  "${rule_density}"
+
+build_flags='--offline --batch-mode --quiet'
+
+mkdir -p "${report_directory}"
+timings="${report_directory}/timings.csv"
+echo 'build,iteration,milliseconds' > "${timings}"
+
+for iteration in $(seq 1 "${iterations}"); do
+  for build in baseline error-prone; do
+    profile_flags="$([ "${build}" = baseline ] || echo '-Perror-prone')"
+    start="$(date +%s%N)"
+    mvn -f "${project_directory}" clean compile ${build_flags} ${profile_flags} \
+      > "${report_directory}/${build}-${iteration}.log"
+    end="$(date +%s%N)"
+    echo "${build},${iteration},$(((end - start) / 1000000))" >> "${timings}"
+  done
+done
+
+echo "Timings for ${file_count} files with ${methods_per_file} methods each and rule density ${rule_density}:"
+cat "${timings}"